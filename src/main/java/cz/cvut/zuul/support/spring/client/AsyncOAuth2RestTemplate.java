@@ -0,0 +1,191 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.client.OAuth2ClientContext;
+import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.util.Assert;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.web.context.request.RequestAttributes.SCOPE_REQUEST;
+
+/**
+ * Asynchronous counterpart of {@link OAuth2RestTemplate}. Requests are
+ * executed by the given {@link ExecutorService} and the caller gets
+ * a {@link Future} immediately, so one thread may fan out calls to many
+ * protected resources at once.
+ *
+ * <p>An access token is obtained (or refreshed) at most once at a time for
+ * the client context, i.e. per session with {@link ScopedOAuth2ClientContext},
+ * concurrent requests wait for it instead of asking the authorization
+ * server each on their own. The current request attributes are propagated
+ * to the executing thread, thus this works also for resources with
+ * {@code ScopedOAuth2ClientContext}. However, they're not propagated to
+ * tasks that start after the originating request has completed, so wait
+ * for the futures before completing the request in that case.</p>
+ *
+ * @see OAuth2ResourceDetailsBuilder#buildAsync(ExecutorService)
+ */
+public class AsyncOAuth2RestTemplate {
+
+    private static final String REQUEST_ACTIVE_ATTRIBUTE = AsyncOAuth2RestTemplate.class.getName() + ".REQUEST_ACTIVE";
+
+    private final OAuth2RestTemplate restTemplate;
+    private final ExecutorService executor;
+
+
+    /**
+     * @param restTemplate The template used to perform requests.
+     * @param executor The executor to run requests on.
+     */
+    public AsyncOAuth2RestTemplate(OAuth2RestTemplate restTemplate, ExecutorService executor) {
+        Assert.notNull(restTemplate, "restTemplate must not be null");
+        Assert.notNull(executor, "executor must not be null");
+
+        this.restTemplate = restTemplate;
+        this.executor = executor;
+    }
+
+
+    public <T> Future<ResponseEntity<T>> getForEntity(final String url, final Class<T> responseType,
+                                                      final Object... uriVariables) {
+        return submit(new Callable<ResponseEntity<T>>() {
+            public ResponseEntity<T> call() {
+                return restTemplate.getForEntity(url, responseType, uriVariables);
+            }
+        });
+    }
+
+    public <T> Future<ResponseEntity<T>> postForEntity(final String url, final Object request,
+                                                       final Class<T> responseType, final Object... uriVariables) {
+        return submit(new Callable<ResponseEntity<T>>() {
+            public ResponseEntity<T> call() {
+                return restTemplate.postForEntity(url, request, responseType, uriVariables);
+            }
+        });
+    }
+
+    public <T> Future<ResponseEntity<T>> exchange(final String url, final HttpMethod method,
+                                                  final HttpEntity<?> requestEntity, final Class<T> responseType,
+                                                  final Object... uriVariables) {
+        return submit(new Callable<ResponseEntity<T>>() {
+            public ResponseEntity<T> call() {
+                return restTemplate.exchange(url, method, requestEntity, responseType, uriVariables);
+            }
+        });
+    }
+
+    /**
+     * Obtains an access token in the background, e.g. to have it ready
+     * before the first request.
+     */
+    public Future<OAuth2AccessToken> getAccessToken() {
+        return submit(new Callable<OAuth2AccessToken>() {
+            public OAuth2AccessToken call() {
+                return restTemplate.getOAuth2ClientContext().getAccessToken();
+            }
+        });
+    }
+
+    /**
+     * @return The underlying (blocking) template.
+     */
+    public OAuth2RestTemplate getRestTemplate() {
+        return restTemplate;
+    }
+
+
+    private <T> Future<T> submit(final Callable<T> task) {
+        final RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        final AtomicBoolean requestActive = attributes != null ? requestActiveFlag(attributes) : null;
+
+        return executor.submit(new Callable<T>() {
+            public T call() throws Exception {
+                RequestAttributes previous = RequestContextHolder.getRequestAttributes();
+                // attributes of a completed request may be already recycled by the container
+                RequestContextHolder.setRequestAttributes(
+                        requestActive != null && requestActive.get() ? attributes : null);
+                try {
+                    ensureAccessToken();
+                    return task.call();
+                } finally {
+                    RequestContextHolder.setRequestAttributes(previous);
+                }
+            }
+        });
+    }
+
+    private void ensureAccessToken() {
+        OAuth2ClientContext context = restTemplate.getOAuth2ClientContext();
+        OAuth2AccessToken token = context.getAccessToken();
+
+        if (token == null || token.isExpired()) {
+            synchronized (tokenLockFor(context)) {
+                // obtains a new token only when no other thread did it meanwhile
+                restTemplate.getAccessToken();
+            }
+        }
+    }
+
+    /**
+     * Tokens of {@link ScopedOAuth2ClientContext} belong to the session, so
+     * they're obtained under the session mutex; otherwise the context is
+     * shared by all the threads.
+     */
+    private static Object tokenLockFor(OAuth2ClientContext context) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+
+        return context instanceof ScopedOAuth2ClientContext && attributes != null
+                ? attributes.getSessionMutex() : context;
+    }
+
+    /**
+     * Returns a flag of the request that is cleared when it completes.
+     */
+    private static AtomicBoolean requestActiveFlag(RequestAttributes attributes) {
+        AtomicBoolean flag = (AtomicBoolean) attributes.getAttribute(REQUEST_ACTIVE_ATTRIBUTE, SCOPE_REQUEST);
+
+        if (flag == null) {
+            final AtomicBoolean created = new AtomicBoolean(true);
+            attributes.setAttribute(REQUEST_ACTIVE_ATTRIBUTE, created, SCOPE_REQUEST);
+            attributes.registerDestructionCallback(REQUEST_ACTIVE_ATTRIBUTE, new Runnable() {
+                public void run() {
+                    created.set(false);
+                }
+            }, SCOPE_REQUEST);
+            flag = created;
+        }
+        return flag;
+    }
+}
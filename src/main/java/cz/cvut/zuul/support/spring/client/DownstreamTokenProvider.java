@@ -0,0 +1,58 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client;
+
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * Strategy for obtaining an access token to call a downstream resource on
+ * behalf of the client (and user) of the incoming request, e.g. by relaying
+ * the incoming token as is, or exchanging it for a down-scoped token at
+ * the authorization server.
+ *
+ * @see TokenRelayInterceptor
+ */
+public interface DownstreamTokenProvider {
+
+    /**
+     * The provider that relays the incoming access token as is.
+     */
+    DownstreamTokenProvider ORIGINAL_TOKEN = new DownstreamTokenProvider() {
+        public OAuth2AccessToken obtainToken(String incomingToken, OAuth2Authentication authentication,
+                                             String resourceId) {
+            return new DefaultOAuth2AccessToken(incomingToken);
+        }
+    };
+
+
+    /**
+     * @param incomingToken The access token of the incoming request.
+     * @param authentication The authentication of the incoming request.
+     * @param resourceId ID of the downstream resource.
+     * @return An access token for the downstream resource.
+     */
+    OAuth2AccessToken obtainToken(String incomingToken, OAuth2Authentication authentication, String resourceId);
+}
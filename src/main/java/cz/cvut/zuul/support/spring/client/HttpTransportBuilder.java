@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client;
+
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.security.oauth2.client.OAuth2RestTemplate;
+import org.springframework.security.oauth2.client.token.AccessTokenProvider;
+import org.springframework.security.oauth2.client.token.AccessTokenProviderChain;
+import org.springframework.security.oauth2.client.token.OAuth2AccessTokenSupport;
+import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsAccessTokenProvider;
+import org.springframework.security.oauth2.client.token.grant.code.AuthorizationCodeAccessTokenProvider;
+import org.springframework.security.oauth2.client.token.grant.implicit.ImplicitAccessTokenProvider;
+import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordAccessTokenProvider;
+import org.springframework.util.Assert;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static lombok.AccessLevel.NONE;
+
+/**
+ * Builder used to create a {@link PooledClientHttpRequestFactory}, i.e.
+ * a shared HTTP transport with a pool of persistent connections.
+ *
+ * <pre>
+ * ClientHttpRequestFactory transport = new HttpTransportBuilder()
+ *         .maxConnectionsPerHost( 20 )
+ *         .maxConnectionsPerHost( "https://oaas.example.org", 50 )
+ *         .readTimeout( 2000 )
+ *         .build();
+ * </pre>
+ *
+ * <p>Requires Apache HttpClient 4.3 or newer on the classpath.</p>
+ */
+@Setter @Accessors(fluent=true)
+public final class HttpTransportBuilder {
+
+    private @Setter(NONE) Map<URI, Integer> hostLimits = new LinkedHashMap<>();
+
+    /**
+     * Maximum number of connections in the pool. The default is 200.
+     */
+    private int maxConnections = 200;
+
+    /**
+     * Maximum number of connections per host (route) when not specified
+     * by {@link #maxConnectionsPerHost(String, int)}. The default is 20.
+     */
+    private int maxConnectionsPerHost = 20;
+
+    /**
+     * Timeout in milliseconds until a connection is established; zero is
+     * interpreted as an infinite timeout. The default is 5000.
+     */
+    private int connectTimeout = 5000;
+
+    /**
+     * Timeout in milliseconds for waiting for data; zero is interpreted
+     * as an infinite timeout. The default is 10000.
+     */
+    private int readTimeout = 10000;
+
+    /**
+     * Timeout in milliseconds for waiting for a free connection from the
+     * pool. The default is 1000.
+     */
+    private int connectionRequestTimeout = 1000;
+
+    /**
+     * Maximum time in milliseconds to keep a persistent connection open
+     * (regardless of keep-alive). Zero or less means no limit. The default
+     * is 60000.
+     */
+    private long connectionTimeToLive = 60000;
+
+
+    /**
+     * Maximum number of connections to the given host.
+     *
+     * @param baseUri The base URI of the host, e.g. https://oaas.example.org.
+     * @param limit The maximum number of connections.
+     */
+    public HttpTransportBuilder maxConnectionsPerHost(String baseUri, int limit) {
+        hostLimits.put(URI.create(baseUri), limit);
+        return this;
+    }
+
+    public PooledClientHttpRequestFactory build() {
+        PoolingHttpClientConnectionManager pool =
+                new PoolingHttpClientConnectionManager(connectionTimeToLive, TimeUnit.MILLISECONDS);
+        pool.setMaxTotal(maxConnections);
+        pool.setDefaultMaxPerRoute(maxConnectionsPerHost);
+
+        for (Map.Entry<URI, Integer> entry : hostLimits.entrySet()) {
+            pool.setMaxPerRoute(createRoute(entry.getKey()), entry.getValue());
+        }
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(connectionRequestTimeout)
+                .build();
+
+        // cookies must not leak between templates sharing this transport
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(pool)
+                .setDefaultRequestConfig(requestConfig)
+                .disableCookieManagement()
+                .build();
+
+        return new PooledClientHttpRequestFactory(httpClient, pool, requestConfig);
+    }
+
+
+    /**
+     * Creates the same chain of token providers as {@link OAuth2RestTemplate}
+     * does by default, but using the given request factory for the token
+     * endpoint requests.
+     */
+    public static AccessTokenProvider createAccessTokenProvider(ClientHttpRequestFactory requestFactory) {
+        List<AccessTokenProvider> chain = new ArrayList<>();
+
+        for (OAuth2AccessTokenSupport provider : Arrays.<OAuth2AccessTokenSupport>asList(
+                new AuthorizationCodeAccessTokenProvider(),
+                new ImplicitAccessTokenProvider(),
+                new ResourceOwnerPasswordAccessTokenProvider(),
+                new ClientCredentialsAccessTokenProvider())) {
+
+            provider.setRequestFactory(requestFactory);
+            chain.add((AccessTokenProvider) provider);
+        }
+        return new AccessTokenProviderChain(chain);
+    }
+
+
+    private HttpRoute createRoute(URI uri) {
+        Assert.hasText(uri.getHost(), "Host must be specified: " + uri);
+
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+
+        return new HttpRoute(new HttpHost(uri.getHost(), port, secure ? "https" : "http"), null, secure);
+    }
+}
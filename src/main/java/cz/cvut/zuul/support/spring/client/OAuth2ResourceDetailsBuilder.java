@@ -23,12 +23,14 @@
  */
 package cz.cvut.zuul.support.spring.client;
 
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.security.oauth2.client.DefaultOAuth2ClientContext;
 import org.springframework.security.oauth2.client.OAuth2ClientContext;
 import org.springframework.security.oauth2.client.OAuth2RestTemplate;
 import org.springframework.security.oauth2.client.resource.BaseOAuth2ProtectedResourceDetails;
 import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
 import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsResourceDetails;
+import org.springframework.security.oauth2.client.token.grant.code.AuthorizationCodeAccessTokenProvider;
 import org.springframework.security.oauth2.client.token.grant.code.AuthorizationCodeResourceDetails;
 import org.springframework.security.oauth2.client.token.grant.implicit.ImplicitResourceDetails;
 import org.springframework.security.oauth2.client.token.grant.password.ResourceOwnerPasswordResourceDetails;
@@ -39,6 +41,8 @@ import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Builder(s) used to create {@link OAuth2ProtectedResourceDetails} for a specific
@@ -53,6 +57,7 @@ import java.util.Arrays;
 abstract class OAuth2ResourceDetailsBuilder<B extends OAuth2ResourceDetailsBuilder<B>> {
 
     private final BaseOAuth2ProtectedResourceDetails resourceDetails;
+    private ClientHttpRequestFactory requestFactory;
 
 
     OAuth2ResourceDetailsBuilder(BaseOAuth2ProtectedResourceDetails resourceDetails) {
@@ -94,6 +99,16 @@ abstract class OAuth2ResourceDetailsBuilder<B extends OAuth2ResourceDetailsBuild
         return (B) this;
     }
 
+    /**
+     * The HTTP transport to use for both the resource and the token
+     * endpoint requests, e.g. a shared {@link PooledClientHttpRequestFactory}.
+     * When not specified, a new default one is used for each template.
+     */
+    public B requestFactory(ClientHttpRequestFactory requestFactory) {
+        this.requestFactory = requestFactory;
+        return (B) this;
+    }
+
     /**
      * @return Configured {@code OAuth2ProtectedResourceDetails} instance.
      */
@@ -116,7 +131,21 @@ abstract class OAuth2ResourceDetailsBuilder<B extends OAuth2ResourceDetailsBuild
                     ? new DefaultOAuth2ClientContext()
                     : new ScopedOAuth2ClientContext(resource.getId());
 
-        return new OAuth2RestTemplate(resource, context);
+        OAuth2RestTemplate template = new OAuth2RestTemplate(resource, context);
+
+        if (requestFactory != null) {
+            template.setRequestFactory(requestFactory);
+            template.setAccessTokenProvider(HttpTransportBuilder.createAccessTokenProvider(requestFactory));
+        }
+        return template;
+    }
+
+    /**
+     * @param executor The executor to perform requests on.
+     * @return Configured {@code AsyncOAuth2RestTemplate} instance for this resource.
+     */
+    public AsyncOAuth2RestTemplate buildAsync(ExecutorService executor) {
+        return new AsyncOAuth2RestTemplate(build(), executor);
     }
 
 
@@ -124,6 +153,10 @@ abstract class OAuth2ResourceDetailsBuilder<B extends OAuth2ResourceDetailsBuild
         return resourceDetails;
     }
 
+    protected ClientHttpRequestFactory requestFactory() {
+        return requestFactory;
+    }
+
     protected void validate() {
         Assert.hasText(resourceDetails.getId(), "An id must be supplied");
         Assert.hasText(resourceDetails.getClientId(), "A clientId must be supplied");
@@ -231,6 +264,9 @@ abstract class OAuth2ResourceDetailsBuilder<B extends OAuth2ResourceDetailsBuild
     public static class AuthorizationCodeResourceBuilder
             extends UserAuthorizationResourceBuilder<AuthorizationCodeResourceBuilder> {
 
+        private int refreshAhead = 0;
+        private Executor refreshExecutor;
+
         AuthorizationCodeResourceBuilder() {
             super(new AuthorizationCodeResourceDetails());
         }
@@ -259,6 +295,37 @@ abstract class OAuth2ResourceDetailsBuilder<B extends OAuth2ResourceDetailsBuild
             return this;
         }
 
+        /**
+         * Refresh the user's access token in the background when it's
+         * going to expire in less than the specified number of seconds,
+         * instead of blocking the request that finds it expired.
+         *
+         * @param seconds How long before the expiration to refresh a token.
+         * @param executor The executor to run refreshes on.
+         * @see ScopedOAuth2ClientContext#setRefreshAhead(int, OAuth2ProtectedResourceDetails,
+         *      org.springframework.security.oauth2.client.token.AccessTokenProvider, Executor)
+         */
+        public AuthorizationCodeResourceBuilder refreshAhead(int seconds, Executor executor) {
+            this.refreshAhead = seconds;
+            this.refreshExecutor = executor;
+            return this;
+        }
+
+        @Override
+        public OAuth2RestTemplate build() {
+            OAuth2RestTemplate template = super.build();
+
+            if (refreshAhead > 0) {
+                AuthorizationCodeAccessTokenProvider provider = new AuthorizationCodeAccessTokenProvider();
+                if (requestFactory() != null) {
+                    provider.setRequestFactory(requestFactory());
+                }
+                ((ScopedOAuth2ClientContext) template.getOAuth2ClientContext())
+                        .setRefreshAhead(refreshAhead, template.getResource(), provider, refreshExecutor);
+            }
+            return template;
+        }
+
         @Override
         protected void validate() {
             super.validate();
@@ -45,4 +45,12 @@ public class OAuth2RestTemplateBuilder {
     public ResourceOwnerPasswordResourceBuilder resourceOwnerPasswordGrant() {
         return new ResourceOwnerPasswordResourceBuilder();
     }
+
+    /**
+     * Creates a template that calls a downstream resource with a token
+     * derived from the current OAuth request, instead of its own grant.
+     */
+    public TokenRelayBuilder tokenRelay() {
+        return new TokenRelayBuilder();
+    }
 }
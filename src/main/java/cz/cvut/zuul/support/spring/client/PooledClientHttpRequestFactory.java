@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client;
+
+import cz.cvut.zuul.support.spring.provider.RequestDeadline;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+import java.net.URI;
+
+/**
+ * {@link org.springframework.http.client.ClientHttpRequestFactory} backed
+ * by Apache HttpClient with a pool of persistent (keep-alive) connections.
+ * A single instance is meant to be shared by all templates that talk to
+ * the same hosts, including the token endpoint.
+ *
+ * <p>When the current request has a {@link RequestDeadline}, the connect,
+ * read and pool timeouts are bounded by the remaining time.</p>
+ *
+ * <p>The timeouts can be changed at runtime via {@link #setRequestConfig(RequestConfig)}
+ * and the pool limits via the {@linkplain #getConnectionManager() connection manager};
+ * both apply to the subsequent requests.</p>
+ *
+ * @see HttpTransportBuilder
+ */
+public class PooledClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final RequestConfig defaultRequestConfig;
+    private volatile RequestConfig requestConfig;
+
+
+    PooledClientHttpRequestFactory(HttpClient httpClient, PoolingHttpClientConnectionManager connectionManager,
+                                   RequestConfig defaultRequestConfig) {
+        super(httpClient);
+        this.connectionManager = connectionManager;
+        this.defaultRequestConfig = defaultRequestConfig;
+        this.requestConfig = defaultRequestConfig;
+    }
+
+
+    /**
+     * @return The underlying pool of connections.
+     */
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    /**
+     * @return The current configuration of requests (timeouts).
+     */
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    /**
+     * Replaces the configuration of subsequent requests, e.g. to change
+     * the timeouts.
+     */
+    public void setRequestConfig(RequestConfig requestConfig) {
+        this.requestConfig = requestConfig;
+    }
+
+    @Override
+    protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+        RequestConfig config = requestConfig;
+        long remaining = RequestDeadline.remainingMillis();
+
+        if (remaining == Long.MAX_VALUE) {
+            // the client itself has been built with the default config
+            return config == defaultRequestConfig ? null : createHttpContext(config);
+        }
+        int timeout = (int) Math.max(1, Math.min(remaining, Integer.MAX_VALUE));
+
+        return createHttpContext(RequestConfig.copy(config)
+                .setConnectTimeout(bound(config.getConnectTimeout(), timeout))
+                .setSocketTimeout(bound(config.getSocketTimeout(), timeout))
+                .setConnectionRequestTimeout(bound(config.getConnectionRequestTimeout(), timeout))
+                .build());
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        super.destroy();
+        connectionManager.shutdown();
+    }
+
+
+    private static HttpContext createHttpContext(RequestConfig config) {
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(config);
+        return context;
+    }
+
+    private static int bound(int timeout, int limit) {
+        // zero or negative means infinite
+        return timeout > 0 ? Math.min(timeout, limit) : limit;
+    }
+}
@@ -23,18 +23,27 @@
  */
 package cz.cvut.zuul.support.spring.client;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.security.oauth2.client.OAuth2ClientContext;
+import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
+import org.springframework.security.oauth2.client.token.AccessTokenProvider;
 import org.springframework.security.oauth2.client.token.AccessTokenRequest;
 import org.springframework.security.oauth2.client.token.DefaultAccessTokenRequest;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.util.Assert;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.ServletRequestAttributes;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.springframework.web.context.request.RequestAttributes.SCOPE_REQUEST;
 import static org.springframework.web.context.request.RequestContextHolder.currentRequestAttributes;
@@ -47,10 +56,18 @@ import static org.springframework.web.context.request.RequestContextHolder.curre
  * {@link org.springframework.security.oauth2.config.RestTemplateBeanDefinitionParser}
  * to allow easy use in java-based configuration.</p>
  *
- * TODO unit tests
+ * <p>When {@linkplain #setRefreshAhead(int, OAuth2ProtectedResourceDetails, AccessTokenProvider, Executor)
+ * refresh-ahead} is enabled, an access token that is about to expire is
+ * refreshed in the background, so the user's request doesn't wait for the
+ * token endpoint. There's at most one refresh in progress for a session
+ * and this context (i.e. the resource id); the current token is used
+ * meanwhile. The refreshed token is set to the session attribute again,
+ * so it's replicated by clustered session stores.</p>
  */
 public class ScopedOAuth2ClientContext implements OAuth2ClientContext {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ScopedOAuth2ClientContext.class);
+
     private static final String CLIENT_CONTEXT = "clientContext";
     private static final String TOKEN_REQUEST = "tokenRequest";
 
@@ -76,6 +93,11 @@ public class ScopedOAuth2ClientContext implements OAuth2ClientContext {
 
     private final String id;
 
+    private int refreshAhead = 0;
+    private OAuth2ProtectedResourceDetails resource;
+    private AccessTokenProvider accessTokenProvider;
+    private Executor refreshExecutor;
+
     /**
      * @param id The unique context identifier.
      */
@@ -85,7 +107,13 @@ public class ScopedOAuth2ClientContext implements OAuth2ClientContext {
 
 
     public OAuth2AccessToken getAccessToken() {
-        return getClientContext().accessToken;
+        ClientContextHolder holder = getClientContext();
+        OAuth2AccessToken accessToken = holder.accessToken;
+
+        if (refreshAhead > 0 && isAboutToExpire(accessToken) && holder.startRefresh()) {
+            refreshInBackground(holder, accessToken, getRequest().getSession());
+        }
+        return accessToken;
     }
 
     public void setAccessToken(OAuth2AccessToken accessToken) {
@@ -106,6 +134,79 @@ public class ScopedOAuth2ClientContext implements OAuth2ClientContext {
     }
 
 
+    /**
+     * Enables refresh of access tokens (that have a refresh token) the
+     * specified number of seconds before they expire.
+     *
+     * @param seconds How long before the expiration to refresh a token.
+     * @param resource The resource details of the token.
+     * @param accessTokenProvider The provider to refresh tokens with.
+     * @param executor The executor to run the refresh on.
+     */
+    public void setRefreshAhead(int seconds, OAuth2ProtectedResourceDetails resource,
+                                AccessTokenProvider accessTokenProvider, Executor executor) {
+        Assert.isTrue(seconds > 0, "seconds must be greater than zero");
+        Assert.isTrue(accessTokenProvider.supportsRefresh(resource), "accessTokenProvider must support refresh");
+        Assert.notNull(executor, "executor must not be null");
+
+        this.refreshAhead = seconds;
+        this.resource = resource;
+        this.accessTokenProvider = accessTokenProvider;
+        this.refreshExecutor = executor;
+    }
+
+
+    private boolean isAboutToExpire(OAuth2AccessToken accessToken) {
+        return accessToken != null && accessToken.getRefreshToken() != null
+                && accessToken.getExpiration() != null && !accessToken.isExpired()
+                && accessToken.getExpiresIn() < refreshAhead;
+    }
+
+    private void refreshInBackground(final ClientContextHolder holder, final OAuth2AccessToken accessToken,
+                                     final HttpSession session) {
+        Runnable task = new Runnable() {
+            public void run() {
+                try {
+                    OAuth2AccessToken refreshed = accessTokenProvider.refreshAccessToken(
+                            resource, accessToken.getRefreshToken(), new DefaultAccessTokenRequest());
+
+                    if (refreshed.getRefreshToken() == null) {
+                        // the server may not issue a new refresh token
+                        DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(refreshed);
+                        token.setRefreshToken(accessToken.getRefreshToken());
+                        refreshed = token;
+                    }
+                    if (holder.finishRefresh(accessToken, refreshed)) {
+                        updateSession(session, holder);
+                    }
+                    LOG.debug("Access token for resource {} has been refreshed ahead", id);
+
+                } catch (RuntimeException ex) {
+                    holder.finishRefresh(accessToken, null);
+                    LOG.warn("Failed to refresh access token for resource {} ahead: {}", id, ex.getMessage());
+                }
+            }
+        };
+        try {
+            refreshExecutor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            holder.finishRefresh(accessToken, null);
+            LOG.debug("Refresh of access token for resource {} has been rejected by executor", id);
+        }
+    }
+
+    /**
+     * Sets the holder again, so the change is replicated by session stores
+     * that don't track mutations of attribute values.
+     */
+    private void updateSession(HttpSession session, ClientContextHolder holder) {
+        try {
+            session.setAttribute(prefixKey(CLIENT_CONTEXT), holder);
+        } catch (IllegalStateException ex) {
+            LOG.debug("Session has been invalidated before access token for resource {} was refreshed", id);
+        }
+    }
+
     private ClientContextHolder getClientContext() {
         return sessionAttribute(CLIENT_CONTEXT, clientContextFactory);
     }
@@ -144,7 +245,36 @@ public class ScopedOAuth2ClientContext implements OAuth2ClientContext {
 
 
     private static class ClientContextHolder implements Serializable {
-        OAuth2AccessToken accessToken;
+
+        private static final long RETRY_DELAY = 5000;
+
+        volatile OAuth2AccessToken accessToken;
         Map<String, Object> state = new HashMap<>();
+
+        private transient boolean refreshing;
+        private transient long retryAfter;
+
+        synchronized boolean startRefresh() {
+            if (refreshing || System.currentTimeMillis() < retryAfter) {
+                return false;
+            }
+            return refreshing = true;
+        }
+
+        /**
+         * @return Whether the access token has been replaced.
+         */
+        synchronized boolean finishRefresh(OAuth2AccessToken original, OAuth2AccessToken refreshed) {
+            refreshing = false;
+
+            if (refreshed == null) {
+                retryAfter = System.currentTimeMillis() + RETRY_DELAY;
+            } else if (accessToken == original) {
+                // don't override a token obtained meanwhile by the user's request
+                accessToken = refreshed;
+                return true;
+            }
+            return false;
+        }
     }
 }
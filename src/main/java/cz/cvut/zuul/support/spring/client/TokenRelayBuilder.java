@@ -0,0 +1,105 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client;
+
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Builder used to create a {@link RestTemplate} that calls a downstream
+ * resource on behalf of the current OAuth request, see {@link TokenRelayInterceptor}.
+ *
+ * <pre>
+ * RestTemplate template = new OAuth2RestTemplateBuilder()
+ *         .tokenRelay()
+ *             .resourceId( "people-api" )
+ *             .tokenProvider( tokenExchange )
+ *         .build();
+ * </pre>
+ */
+@Setter @Accessors(fluent=true)
+public final class TokenRelayBuilder {
+
+    /**
+     * ID of the downstream resource, passed to the {@link #tokenProvider(DownstreamTokenProvider)
+     * tokenProvider} and used to separate its cached tokens.
+     */
+    private String resourceId;
+
+    /**
+     * The strategy for obtaining downstream tokens. The default is to
+     * relay the incoming token as is.
+     */
+    private DownstreamTokenProvider tokenProvider = DownstreamTokenProvider.ORIGINAL_TOKEN;
+
+    /**
+     * The maximal number of cached downstream tokens. The default is 10000.
+     */
+    private int maxEntries = 10000;
+
+    /**
+     * The HTTP transport to use, e.g. a shared {@link PooledClientHttpRequestFactory}.
+     * When not specified, the default one of the RestTemplate is used.
+     */
+    private ClientHttpRequestFactory requestFactory;
+
+    /**
+     * Whether to attach the signed token info of the incoming token, when
+     * it's relayed as is. Default is <tt>false</tt>.
+     *
+     * @see TokenRelayInterceptor#setPropagateTokenInfo(boolean)
+     */
+    private boolean propagateTokenInfo = false;
+
+
+    /**
+     * @return The interceptor to add to an existing RestTemplate.
+     */
+    public TokenRelayInterceptor buildInterceptor() {
+        Assert.isTrue(tokenProvider == DownstreamTokenProvider.ORIGINAL_TOKEN || resourceId != null,
+                "A resourceId must be supplied for a custom tokenProvider");
+
+        TokenRelayInterceptor interceptor = new TokenRelayInterceptor(resourceId, tokenProvider, maxEntries);
+        interceptor.setPropagateTokenInfo(propagateTokenInfo);
+
+        return interceptor;
+    }
+
+    /**
+     * @return Configured {@code RestTemplate} instance.
+     */
+    public RestTemplate build() {
+        RestTemplate template = new RestTemplate();
+
+        if (requestFactory != null) {
+            template.setRequestFactory(requestFactory);
+        }
+        template.getInterceptors().add(buildInterceptor());
+
+        return template;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client;
+
+import cz.cvut.zuul.support.spring.provider.TokenFingerprint;
+import cz.cvut.zuul.support.spring.provider.TokenInfoPropagation;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.security.oauth2.common.OAuth2AccessToken.BEARER_TYPE;
+
+/**
+ * {@link ClientHttpRequestInterceptor} that authenticates requests to
+ * a downstream resource on behalf of the current OAuth request. It takes
+ * the access token of the {@link OAuth2Authentication} in the security
+ * context, obtains a downstream token for it via {@link DownstreamTokenProvider}
+ * and puts it into the <tt>Authorization</tt> header.
+ *
+ * <p>Downstream tokens are cached per digest of the incoming token until
+ * they expire, so repeated calls within the same token's lifetime don't
+ * hit the token endpoint; concurrent calls for the same incoming token
+ * wait for a single request. When there are more than <tt>maxEntries</tt>
+ * tokens, the expired ones and then the least recently used ones are
+ * evicted. When there's no OAuth authentication in the context, the
+ * request is sent as is.</p>
+ *
+ * <p>When {@link #setPropagateTokenInfo(boolean) propagateTokenInfo} is
+ * enabled and the incoming token is relayed as is, the signed token info
+ * from {@link TokenInfoPropagation} is attached as well, so the downstream
+ * resource server doesn't need to validate the token again.</p>
+ *
+ * @see TokenRelayBuilder
+ */
+public class TokenRelayInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final long EXPIRATION_SKEW = 10000;
+
+    private final ConcurrentMap<Key, Entry> tokens = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final String resourceId;
+    private final DownstreamTokenProvider tokenProvider;
+    private final int maxEntries;
+
+    private boolean propagateTokenInfo = false;
+
+
+    /**
+     * @param resourceId ID of the downstream resource.
+     * @param tokenProvider The strategy for obtaining downstream tokens.
+     * @param maxEntries The maximal number of cached tokens.
+     */
+    public TokenRelayInterceptor(String resourceId, DownstreamTokenProvider tokenProvider, int maxEntries) {
+        Assert.notNull(tokenProvider, "tokenProvider must not be null");
+
+        this.resourceId = resourceId;
+        this.tokenProvider = tokenProvider;
+        this.maxEntries = maxEntries;
+    }
+
+
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        if (authentication instanceof OAuth2Authentication
+                && authentication.getDetails() instanceof OAuth2AuthenticationDetails) {
+
+            String incomingToken = ((OAuth2AuthenticationDetails) authentication.getDetails()).getTokenValue();
+            OAuth2AccessToken token = downstreamToken(incomingToken, (OAuth2Authentication) authentication);
+
+            String tokenType = token.getTokenType() == null || BEARER_TYPE.equalsIgnoreCase(token.getTokenType())
+                    ? BEARER_TYPE : token.getTokenType();
+
+            request.getHeaders().set("Authorization", tokenType + " " + token.getValue());
+
+            // the signed token info is bound to the incoming token
+            if (propagateTokenInfo && tokenProvider == DownstreamTokenProvider.ORIGINAL_TOKEN
+                    && TokenInfoPropagation.getOutgoing() != null) {
+                request.getHeaders().set(TokenInfoPropagation.HEADER_NAME, TokenInfoPropagation.getOutgoing());
+            }
+        }
+        return execution.execute(request, body);
+    }
+
+
+    /**
+     * Whether to attach the signed token info of the incoming token to
+     * downstream requests. Default is <tt>false</tt>.
+     */
+    public void setPropagateTokenInfo(boolean propagateTokenInfo) {
+        this.propagateTokenInfo = propagateTokenInfo;
+    }
+
+
+    private OAuth2AccessToken downstreamToken(final String incomingToken, final OAuth2Authentication authentication) {
+        if (tokenProvider == DownstreamTokenProvider.ORIGINAL_TOKEN) {
+            return tokenProvider.obtainToken(incomingToken, authentication, resourceId);
+        }
+        Key key = new Key(TokenFingerprint.digest(incomingToken));
+
+        while (true) {
+            Entry entry = tokens.get(key);
+
+            if (entry != null && !entry.isExpired(System.currentTimeMillis())) {
+                entry.lastAccess = System.currentTimeMillis();
+                return entry.await();
+            }
+            Entry created = new Entry(new Callable<OAuth2AccessToken>() {
+                public OAuth2AccessToken call() {
+                    return tokenProvider.obtainToken(incomingToken, authentication, resourceId);
+                }
+            });
+            // only one thread obtains the token, the others wait for it
+            if (entry == null ? tokens.putIfAbsent(key, created) == null : tokens.replace(key, entry, created)) {
+                created.task.run();
+                evictIfNeeded();
+                try {
+                    return created.await();
+                } catch (RuntimeException ex) {
+                    tokens.remove(key, created);
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the expired entries and then the least recently used ones,
+     * down to 90 % of <tt>maxEntries</tt>, so it's not done on each miss.
+     */
+    private void evictIfNeeded() {
+        if (tokens.size() <= maxEntries || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            List<Long> accesses = new ArrayList<>(tokens.size());
+
+            for (Iterator<Entry> it = tokens.values().iterator(); it.hasNext(); ) {
+                Entry entry = it.next();
+                if (entry.isExpired(now)) {
+                    it.remove();
+                } else {
+                    accesses.add(entry.lastAccess);
+                }
+            }
+            int excess = accesses.size() - maxEntries * 9 / 10;
+            if (excess > 0) {
+                Collections.sort(accesses);
+                long threshold = accesses.get(excess - 1);
+
+                for (Iterator<Entry> it = tokens.values().iterator(); it.hasNext(); ) {
+                    if (it.next().lastAccess <= threshold) {
+                        it.remove();
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+
+    /**
+     * Downstream token, possibly being obtained.
+     */
+    private static class Entry {
+
+        final FutureTask<OAuth2AccessToken> task;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Entry(Callable<OAuth2AccessToken> callable) {
+            this.task = new FutureTask<>(callable);
+        }
+
+        boolean isExpired(long now) {
+            if (!task.isDone()) {
+                return false;
+            }
+            try {
+                Date expiration = task.get().getExpiration();
+                return expiration != null && expiration.getTime() - EXPIRATION_SKEW < now;
+            } catch (InterruptedException | ExecutionException ex) {
+                // a failed attempt is removed by the thread that made it
+                return true;
+            }
+        }
+
+        OAuth2AccessToken await() {
+            try {
+                return task.get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while obtaining downstream token");
+            }
+        }
+    }
+
+
+    /**
+     * Cache key; the resource ID is implied by the interceptor instance.
+     */
+    private static class Key {
+
+        final byte[] digest;
+        final int hash;
+
+        Key(byte[] digest) {
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(digest, ((Key) obj).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
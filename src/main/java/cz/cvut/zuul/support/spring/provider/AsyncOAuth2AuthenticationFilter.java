@@ -0,0 +1,231 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.AuthenticationDetailsSource;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
+import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetailsSource;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Counterpart of {@link org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationProcessingFilter}
+ * that validates the access token with {@link AsyncResourceServerTokenServices}
+ * without holding the container thread. The request is put into the
+ * asynchronous mode while the token is being validated and then dispatched
+ * again; on this (ASYNC) pass the resolved authentication is put into the
+ * security context and the request continues down the filter chain.
+ *
+ * <p>This requires the filter chain to be registered with
+ * <tt>async-supported</tt> and the ASYNC dispatcher type. When the request
+ * doesn't support the asynchronous mode, the token is validated
+ * synchronously. The authentication is resolved only once per request, see
+ * {@link DispatchAwareAuthenticationFilter#AUTHENTICATION_ATTRIBUTE}.</p>
+ *
+ * <p>Like the stock filter, it sets the {@link OAuth2AuthenticationDetails}
+ * (with the token value) as details of the authentication, so the token
+ * can be relayed to downstream resources.</p>
+ *
+ * @see OAuth2ResourceServerConfigurer#asyncTokenServices(AsyncResourceServerTokenServices)
+ */
+public class AsyncOAuth2AuthenticationFilter extends GenericFilterBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncOAuth2AuthenticationFilter.class);
+
+    /**
+     * Name of the request attribute that holds the exception of failed validation.
+     */
+    public static final String FAILURE_ATTRIBUTE = AsyncOAuth2AuthenticationFilter.class.getName() + ".FAILURE";
+
+    private static final String AUTHENTICATION_ATTRIBUTE = DispatchAwareAuthenticationFilter.AUTHENTICATION_ATTRIBUTE;
+    private static final String BEARER_TYPE = OAuth2AccessToken.BEARER_TYPE;
+
+    private final AsyncResourceServerTokenServices tokenServices;
+    private final AuthenticationEntryPoint authenticationEntryPoint;
+
+    private AuthenticationDetailsSource<HttpServletRequest, ?> authenticationDetailsSource =
+            new OAuth2AuthenticationDetailsSource();
+
+
+    /**
+     * @param tokenServices The token services to validate tokens with.
+     * @param authenticationEntryPoint The entry point to commence with when
+     *                                 the token is invalid.
+     */
+    public AsyncOAuth2AuthenticationFilter(AsyncResourceServerTokenServices tokenServices,
+                                           AuthenticationEntryPoint authenticationEntryPoint) {
+        Assert.notNull(tokenServices, "tokenServices must not be null");
+        Assert.notNull(authenticationEntryPoint, "authenticationEntryPoint must not be null");
+
+        this.tokenServices = tokenServices;
+        this.authenticationEntryPoint = authenticationEntryPoint;
+    }
+
+
+    public void doFilter(final ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+
+        final HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+
+        Object resolved = request.getAttribute(AUTHENTICATION_ATTRIBUTE);
+        if (resolved instanceof OAuth2Authentication) {
+            SecurityContextHolder.getContext().setAuthentication((OAuth2Authentication) resolved);
+            chain.doFilter(request, response);
+            return;
+        }
+        Object failure = request.getAttribute(FAILURE_ATTRIBUTE);
+        if (failure instanceof RuntimeException) {
+            request.removeAttribute(FAILURE_ATTRIBUTE);
+            fail(request, response, (RuntimeException) failure);
+            return;
+        }
+
+        String token = parseToken(request);
+        if (token == null) {
+            LOG.debug("No token in request, will continue chain");
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // the same as OAuth2AuthenticationProcessingFilter does
+        request.setAttribute(OAuth2AuthenticationDetails.ACCESS_TOKEN_VALUE, token);
+        final Object details = authenticationDetailsSource.buildDetails(request);
+
+        if (!request.isAsyncSupported()) {
+            OAuth2Authentication authentication;
+            try {
+                authentication = loadAuthentication(token);
+            } catch (RuntimeException ex) {
+                fail(request, response, ex);
+                return;
+            }
+            authentication.setDetails(details);
+            request.setAttribute(AUTHENTICATION_ATTRIBUTE, authentication);
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+            chain.doFilter(request, response);
+            return;
+        }
+
+        final AsyncContext asyncContext = request.startAsync(request, response);
+
+        tokenServices.loadAuthentication(token, new AsyncResourceServerTokenServices.Callback() {
+            public void authenticated(OAuth2Authentication authentication) {
+                authentication.setDetails(details);
+                request.setAttribute(AUTHENTICATION_ATTRIBUTE, authentication);
+                asyncContext.dispatch();
+            }
+            public void failed(RuntimeException ex) {
+                request.setAttribute(FAILURE_ATTRIBUTE, ex);
+                asyncContext.dispatch();
+            }
+        });
+    }
+
+
+    /**
+     * The source of details of the authentication, by default
+     * {@link OAuth2AuthenticationDetailsSource}.
+     */
+    public void setAuthenticationDetailsSource(
+            AuthenticationDetailsSource<HttpServletRequest, ?> authenticationDetailsSource) {
+        Assert.notNull(authenticationDetailsSource, "authenticationDetailsSource must not be null");
+        this.authenticationDetailsSource = authenticationDetailsSource;
+    }
+
+
+    private OAuth2Authentication loadAuthentication(String token) {
+        try {
+            return tokenServices.loadAuthentication(token, null).get();
+
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IssuerUnavailableException("Interrupted while validating the token");
+        }
+    }
+
+    private void fail(HttpServletRequest request, HttpServletResponse response, RuntimeException ex)
+            throws IOException, ServletException {
+
+        SecurityContextHolder.clearContext();
+
+        if (ex instanceof OAuth2Exception) {
+            LOG.debug("Authentication request failed: {}", ex.getMessage());
+            // the same as OAuth2AuthenticationProcessingFilter does
+            authenticationEntryPoint.commence(request, response, new BadCredentialsException(ex.getMessage(), ex));
+        } else if (ex instanceof AuthenticationException) {
+            LOG.debug("Authentication request failed: {}", ex.getMessage());
+            authenticationEntryPoint.commence(request, response, (AuthenticationException) ex);
+        } else {
+            throw ex;
+        }
+    }
+
+    /**
+     * Extracts the token from the <tt>Authorization</tt> header or the
+     * <tt>access_token</tt> parameter, the same way as
+     * {@code OAuth2AuthenticationProcessingFilter}.
+     */
+    private String parseToken(HttpServletRequest request) {
+        Enumeration<String> headers = request.getHeaders("Authorization");
+
+        while (headers.hasMoreElements()) {
+            String value = headers.nextElement();
+
+            if (value.toLowerCase().startsWith(BEARER_TYPE.toLowerCase())) {
+                String token = value.substring(BEARER_TYPE.length()).trim();
+                int commaIndex = token.indexOf(',');
+                if (commaIndex > 0) {
+                    token = token.substring(0, commaIndex);
+                }
+                return token;
+            }
+        }
+        return request.getParameter(OAuth2AccessToken.ACCESS_TOKEN);
+    }
+}
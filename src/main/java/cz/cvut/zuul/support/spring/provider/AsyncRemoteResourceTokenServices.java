@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Implementation of {@link AsyncResourceServerTokenServices} that loads
+ * authentications with the given (blocking) token services on the given
+ * {@link Executor}, typically a {@link RemoteResourceTokenServices}, so
+ * the mapping of TokenInfo, the HTTP cache, the revocation feed etc. are
+ * reused as is. The {@link RequestDeadline} and {@link TokenInfoPropagation}
+ * of the calling request are propagated to the executing thread.
+ *
+ * <p>When the executor rejects the task (e.g. its queue is full), the
+ * validation fails with {@link IssuerUnavailableException}.</p>
+ *
+ * @see RemoteResourceTokenServicesBuilder#buildAsync(Executor)
+ */
+public class AsyncRemoteResourceTokenServices implements AsyncResourceServerTokenServices {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncRemoteResourceTokenServices.class);
+
+    private final ResourceServerTokenServices tokenServices;
+    private final Executor executor;
+
+
+    /**
+     * @param tokenServices The token services to load authentications with.
+     * @param executor The executor to run the validations on.
+     */
+    public AsyncRemoteResourceTokenServices(ResourceServerTokenServices tokenServices, Executor executor) {
+        Assert.notNull(tokenServices, "tokenServices must not be null");
+        Assert.notNull(executor, "executor must not be null");
+
+        this.tokenServices = tokenServices;
+        this.executor = executor;
+    }
+
+
+    public Future<OAuth2Authentication> loadAuthentication(final String accessToken, Callback callback) {
+        final Long timeout = remainingTime();
+        final TokenInfoPropagation.Values propagation = TokenInfoPropagation.current();
+        final long submitTime = System.nanoTime();
+
+        ValidationTask task = new ValidationTask(new Callable<OAuth2Authentication>() {
+            public OAuth2Authentication call() {
+                // the executor may run the task on the calling thread
+                Long previousTimeout = remainingTime();
+                TokenInfoPropagation.Values previousPropagation = TokenInfoPropagation.current();
+
+                // time spent in the executor's queue counts as well
+                setRemainingTime(timeout != null
+                        ? timeout - (System.nanoTime() - submitTime) / 1000000L : null);
+                TokenInfoPropagation.bind(propagation);
+                try {
+                    return tokenServices.loadAuthentication(accessToken);
+                } finally {
+                    setRemainingTime(previousTimeout);
+                    TokenInfoPropagation.bind(previousPropagation);
+                }
+            }
+        }, callback);
+
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            task.reject(new IssuerUnavailableException("Too many token validations in progress"));
+        }
+        return task;
+    }
+
+    /**
+     * @return The underlying (blocking) token services.
+     */
+    public ResourceServerTokenServices getTokenServices() {
+        return tokenServices;
+    }
+
+
+    private static Long remainingTime() {
+        return RequestDeadline.isSet() ? RequestDeadline.remainingMillis() : null;
+    }
+
+    private static void setRemainingTime(Long timeout) {
+        if (timeout != null) {
+            RequestDeadline.set(timeout);
+        } else {
+            RequestDeadline.clear();
+        }
+    }
+
+
+    private static class ValidationTask extends FutureTask<OAuth2Authentication> {
+
+        private final Callback callback;
+
+        ValidationTask(Callable<OAuth2Authentication> callable, Callback callback) {
+            super(callable);
+            this.callback = callback;
+        }
+
+        void reject(RuntimeException ex) {
+            setException(ex);
+        }
+
+        @Override
+        protected void done() {
+            if (callback == null || isCancelled()) {
+                return;
+            }
+            OAuth2Authentication authentication;
+            try {
+                authentication = get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                notifyFailed(cause instanceof RuntimeException
+                        ? (RuntimeException) cause : new IllegalStateException(cause));
+                return;
+            } catch (InterruptedException ex) {
+                // cannot happen, the task is done
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                callback.authenticated(authentication);
+            } catch (RuntimeException ex) {
+                LOG.warn("Callback has thrown an exception", ex);
+            }
+        }
+
+        private void notifyFailed(RuntimeException ex) {
+            try {
+                callback.failed(ex);
+            } catch (RuntimeException e) {
+                LOG.warn("Callback has thrown an exception", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import java.util.concurrent.Future;
+
+/**
+ * Non-blocking counterpart of {@link org.springframework.security.oauth2.provider.token.ResourceServerTokenServices}.
+ * The authentication is loaded in the background and the caller is
+ * notified by a {@link Callback}, so it doesn't hold a thread while the
+ * token is being validated.
+ *
+ * @see AsyncRemoteResourceTokenServices
+ * @see AsyncOAuth2AuthenticationFilter
+ */
+public interface AsyncResourceServerTokenServices {
+
+    /**
+     * Starts loading the authentication for the access token and returns
+     * immediately.
+     *
+     * @param accessToken The access token value.
+     * @param callback The callback to be notified when the authentication
+     *                 is loaded or failed, may be <tt>null</tt>.
+     * @return The future of the authentication; when it fails, the cause
+     *         is the exception that the blocking token services would throw,
+     *         e.g. {@link org.springframework.security.oauth2.common.exceptions.InvalidTokenException}.
+     */
+    Future<OAuth2Authentication> loadAuthentication(String accessToken, Callback callback);
+
+
+    /**
+     * Callback of {@link #loadAuthentication(String, Callback)}. It's
+     * called on the thread that has loaded the authentication, so it
+     * should not block.
+     */
+    interface Callback {
+
+        /**
+         * @param authentication The authentication for the token.
+         */
+        void authenticated(OAuth2Authentication authentication);
+
+        /**
+         * @param ex The exception that the blocking token services would
+         *           throw, e.g. {@link org.springframework.security.oauth2.common.exceptions.InvalidTokenException}
+         *           or {@link IssuerUnavailableException}.
+         */
+        void failed(RuntimeException ex);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.util.Assert;
+
+/**
+ * Simple Bloom filter of SHA-256 digests. Since the elements are already
+ * uniformly distributed, the bit positions are derived directly from the
+ * digest using double hashing, no further hashing is needed.
+ *
+ * <p>This class is not thread-safe for writes; it's meant to be filled
+ * once and then only read.</p>
+ */
+final class BloomFilter {
+
+    private final long[] words;
+    private final long size;
+    private final int hashes;
+
+
+    /**
+     * @param expectedInsertions The expected number of elements.
+     * @param falsePositiveProbability The desired probability of false
+     *                                 positives, greater than 0 and less
+     *                                 than 1.
+     */
+    BloomFilter(int expectedInsertions, double falsePositiveProbability) {
+        Assert.isTrue(falsePositiveProbability > 0 && falsePositiveProbability < 1,
+                "falsePositiveProbability must be between 0 and 1");
+
+        int n = Math.max(expectedInsertions, 1);
+        long bits = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+
+        this.words = new long[(int) ((Math.max(bits, 64) + 63) >>> 6)];
+        this.size = words.length * 64L;
+        this.hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+    }
+
+
+    void put(byte[] digest) {
+        long h1 = readLong(digest, 0);
+        long h2 = readLong(digest, 8);
+
+        for (int i = 0; i < hashes; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % size;
+            words[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    boolean mightContain(byte[] digest) {
+        long h1 = readLong(digest, 0);
+        long h2 = readLong(digest, 8);
+
+        for (int i = 0; i < hashes; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % size;
+            if ((words[(int) (index >>> 6)] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static long readLong(byte[] bytes, int offset) {
+        long result = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+}
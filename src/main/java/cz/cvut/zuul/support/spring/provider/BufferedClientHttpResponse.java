@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * {@link ClientHttpResponse} with the body held in memory.
+ */
+class BufferedClientHttpResponse implements ClientHttpResponse {
+
+    private final int statusCode;
+    private final String statusText;
+    private final HttpHeaders headers;
+    private final byte[] body;
+
+
+    BufferedClientHttpResponse(int statusCode, String statusText, HttpHeaders headers, byte[] body) {
+        this.statusCode = statusCode;
+        this.statusText = statusText;
+        this.headers = headers;
+        this.body = body;
+    }
+
+
+    public HttpStatus getStatusCode() {
+        return HttpStatus.valueOf(statusCode);
+    }
+
+    public int getRawStatusCode() {
+        return statusCode;
+    }
+
+    public String getStatusText() {
+        return statusText;
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    public InputStream getBody() {
+        return new ByteArrayInputStream(body);
+    }
+
+    public void close() {
+        // nothing to close
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * Decorator of a caching {@link ClientHttpRequestInterceptor} that skips
+ * it for requests with <tt>Cache-Control: no-cache</tt>, so they always
+ * go to the server. It can also be switched to bypass the cache for all
+ * requests at runtime, see {@link #setBypassAll(boolean)}.
+ */
+public class CacheBypassInterceptor implements ClientHttpRequestInterceptor {
+
+    private final ClientHttpRequestInterceptor cachingInterceptor;
+    private volatile boolean bypassAll = false;
+
+
+    public CacheBypassInterceptor(ClientHttpRequestInterceptor cachingInterceptor) {
+        this.cachingInterceptor = cachingInterceptor;
+    }
+
+
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+
+        String cacheControl = request.getHeaders().getCacheControl();
+
+        if (bypassAll || cacheControl != null && cacheControl.contains("no-cache")) {
+            return execution.execute(request, body);
+        }
+        return cachingInterceptor.intercept(request, body, execution);
+    }
+
+    /**
+     * Whether to bypass the cache for all requests, e.g. during an incident.
+     * Default is <tt>false</tt>.
+     */
+    public void setBypassAll(boolean bypassAll) {
+        this.bypassAll = bypassAll;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Filter that limits rate of requests per OAuth client and, optionally,
+ * the number of concurrently processed requests. Requests over the limits
+ * are rejected with <tt>429 Too Many Requests</tt> before reaching the
+ * application.
+ *
+ * <p>Each client (identified by <tt>client_id</tt> of the authenticated
+ * token) has its own token bucket with capacity of {@link #setBurst(int) burst}
+ * requests that is refilled at {@link #setRequestsPerSecond(double) requestsPerSecond}.
+ * The buckets are kept in a concurrent map without any global lock, each
+ * bucket is synchronized separately. When there are more than
+ * {@link #setMaxClients(int) maxClients} buckets, the least recently
+ * active clients are forgotten in a sweep (by one thread at a time) down
+ * to 90 % of the limit, so it doesn't happen on each new client.</p>
+ *
+ * <p>The concurrency limit is adaptive and it's adjusted after each
+ * {@link #setLatencyWindow(int) latencyWindow} completed requests: it's
+ * decreased by 10 % when more than 10 % of them took longer than the
+ * {@link #setTargetLatency(long) target latency}, otherwise it's increased
+ * by one; but it's never below {@link #setMinConcurrency(int) minConcurrency}.
+ * It's disabled when {@link #setMaxConcurrency(int) maxConcurrency} is
+ * zero (default).</p>
+ *
+ * <p>Each request is admitted only once, i.e. not again on its ERROR
+ * dispatch or the ASYNC dispatch after asynchronous processing. Requests
+ * that are not authenticated by OAuth are passed through.</p>
+ *
+ * @see OAuth2ResourceServerConfigurer#admissionControl(ClientAdmissionFilter)
+ */
+public class ClientAdmissionFilter extends OncePerRequestFilter {
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final byte[] REJECTED_BODY = JsonErrorResponses.render("too_many_requests");
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>(64);
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Object latencyLock = new Object();
+
+    private double requestsPerSecond = 100;
+    private int burst = 100;
+    private int maxClients = 10000;
+
+    private int maxConcurrency = 0;
+    private int minConcurrency = 1;
+    private long targetLatency = TimeUnit.MILLISECONDS.toNanos(500);
+    private int latencyWindow = 100;
+    private volatile int concurrencyLimit;
+
+    // guarded by latencyLock
+    private int windowCompleted = 0;
+    private int windowSlow = 0;
+
+
+    @Override
+    protected void initFilterBean() {
+        Assert.isTrue(requestsPerSecond > 0, "requestsPerSecond must be greater than zero");
+        Assert.isTrue(burst > 0, "burst must be greater than zero");
+        Assert.isTrue(minConcurrency > 0, "minConcurrency must be greater than zero");
+        Assert.isTrue(latencyWindow > 0, "latencyWindow must be greater than zero");
+    }
+
+    /**
+     * The request may reach this filter for the first time on the ASYNC
+     * dispatch, when it's authenticated by {@link AsyncOAuth2AuthenticationFilter}.
+     * A request that has already passed this filter is not admitted again
+     * thanks to the "already filtered" attribute.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        String clientId = resolveClientId();
+
+        if (clientId != null && !bucketFor(clientId).tryAcquire(System.nanoTime())) {
+            reject(response);
+            return;
+        }
+        if (maxConcurrency <= 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        if (inFlight.incrementAndGet() > concurrencyLimit) {
+            inFlight.decrementAndGet();
+            reject(response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            inFlight.decrementAndGet();
+            adjustConcurrencyLimit(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return The current limit of concurrently processed requests.
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+
+    private String resolveClientId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        if (authentication instanceof OAuth2Authentication) {
+            return ((OAuth2Authentication) authentication).getAuthorizationRequest().getClientId();
+        }
+        return null;
+    }
+
+    private TokenBucket bucketFor(String clientId) {
+        TokenBucket bucket = buckets.get(clientId);
+
+        if (bucket == null) {
+            TokenBucket created = new TokenBucket(burst, requestsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            bucket = buckets.putIfAbsent(clientId, created);
+
+            if (bucket == null) {
+                bucket = created;
+                sweepIfNeeded();
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Removes buckets of the least recently active clients, down to 90 %
+     * of <tt>maxClients</tt>.
+     */
+    private void sweepIfNeeded() {
+        if (buckets.size() <= maxClients || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Long> accesses = new ArrayList<>(buckets.size());
+            for (TokenBucket bucket : buckets.values()) {
+                accesses.add(bucket.lastAccess);
+            }
+            int excess = accesses.size() - (maxClients - maxClients / 10);
+            if (excess <= 0) {
+                return;
+            }
+            Collections.sort(accesses);
+            long threshold = accesses.get(excess - 1);
+
+            for (Iterator<TokenBucket> it = buckets.values().iterator(); it.hasNext(); ) {
+                if (it.next().lastAccess <= threshold) {
+                    it.remove();
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private void adjustConcurrencyLimit(long latency) {
+        synchronized (latencyLock) {
+            windowCompleted++;
+            if (latency > targetLatency) {
+                windowSlow++;
+            }
+            if (windowCompleted < latencyWindow) {
+                return;
+            }
+            int limit = concurrencyLimit;
+
+            if (windowSlow * 10 > windowCompleted) {
+                concurrencyLimit = Math.max((int) (limit * 0.9), minConcurrency);
+            } else {
+                concurrencyLimit = Math.min(limit + 1, maxConcurrency);
+            }
+            windowCompleted = 0;
+            windowSlow = 0;
+        }
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setHeader("Retry-After", "1");
+        JsonErrorResponses.write(response, SC_TOO_MANY_REQUESTS, REJECTED_BODY);
+    }
+
+
+    //////////  Accessors  //////////
+
+    /**
+     * The rate at which a client's bucket is refilled. Default is 100.
+     */
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    /**
+     * The capacity of a client's bucket, i.e. how many requests a client
+     * may send at once. Default is 100.
+     */
+    public void setBurst(int burst) {
+        this.burst = burst;
+    }
+
+    /**
+     * The maximal number of tracked clients. When exceeded, the buckets of
+     * the least recently active clients are discarded. Default is 10000.
+     */
+    public void setMaxClients(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    /**
+     * The upper bound of the adaptive concurrency limit, or zero to disable
+     * it. Default is 0.
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        this.concurrencyLimit = maxConcurrency;
+    }
+
+    /**
+     * The lower bound of the adaptive concurrency limit. Default is 1.
+     */
+    public void setMinConcurrency(int minConcurrency) {
+        this.minConcurrency = minConcurrency;
+    }
+
+    /**
+     * The latency (in milliseconds) that at least 90 % of requests in the
+     * window should meet, otherwise the concurrency limit is decreased.
+     * Default is 500.
+     */
+    public void setTargetLatency(long targetLatency) {
+        this.targetLatency = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+    }
+
+    /**
+     * The number of completed requests after which the concurrency limit
+     * is adjusted. Default is 100.
+     */
+    public void setLatencyWindow(int latencyWindow) {
+        this.latencyWindow = latencyWindow;
+    }
+
+
+    static class TokenBucket {
+
+        private final double capacity;
+        private final double refillPerNanos;
+        private double tokens;
+        private long lastRefill;
+
+        // read by the sweep without locking
+        volatile long lastAccess;
+
+        TokenBucket(double capacity, double refillPerNanos) {
+            this.capacity = capacity;
+            this.refillPerNanos = refillPerNanos;
+            this.tokens = capacity;
+            this.lastRefill = this.lastAccess = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire(long now) {
+            lastAccess = now;
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNanos);
+            lastRefill = now;
+
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+    }
+}
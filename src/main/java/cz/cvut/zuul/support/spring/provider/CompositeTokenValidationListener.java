@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link TokenValidationListener} that delegates to multiple listeners,
+ * e.g. a {@link SlowValidationLogger} together with a
+ * {@link ValidationAuditLog}. The listeners are invoked in the given order;
+ * an exception thrown by one of them is logged and doesn't prevent
+ * notifying the others.
+ */
+public class CompositeTokenValidationListener implements TokenValidationListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompositeTokenValidationListener.class);
+
+    private final List<TokenValidationListener> listeners;
+
+
+    public CompositeTokenValidationListener(TokenValidationListener... listeners) {
+        this(Arrays.asList(listeners));
+    }
+
+    public CompositeTokenValidationListener(List<TokenValidationListener> listeners) {
+        Assert.noNullElements(listeners.toArray(), "listeners must not contain null");
+        this.listeners = listeners;
+    }
+
+
+    public void tokenValidated(String accessToken, TokenInfo tokenInfo, Outcome outcome,
+                               boolean cached, long contentLength, long duration) {
+
+        for (TokenValidationListener listener : listeners) {
+            try {
+                listener.tokenValidated(accessToken, tokenInfo, outcome, cached, contentLength, duration);
+            } catch (RuntimeException ex) {
+                LOG.warn("TokenValidationListener {} has thrown an exception", listener, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+
+/**
+ * {@link ClientHttpRequestInterceptor} that revalidates GET responses with
+ * <tt>If-None-Match</tt> and <tt>If-Modified-Since</tt>. It remembers the
+ * validators of the last <tt>200</tt> response for each URI that has an
+ * <tt>ETag</tt> or <tt>Last-Modified</tt> header, along with a soft
+ * reference to its body. When the server replies <tt>304 Not Modified</tt>,
+ * the body is returned with the new headers and an <tt>Age</tt> header
+ * counted from the original fetch, so the <tt>expires_in</tt> in a TokenInfo
+ * is still interpreted correctly.
+ *
+ * <p>The body is held only softly, so it doesn't double the memory held by
+ * the main HTTP cache; when it has been reclaimed, the response is fetched
+ * again without validators. A <tt>304</tt> response to a request that has
+ * nothing to replay (i.e. with validators added by someone else) is
+ * retried without the validators as well.</p>
+ *
+ * <p>It's meant to be placed after the
+ * {@link cz.jirutka.spring.http.client.cache.CachingHttpRequestInterceptor CachingHttpRequestInterceptor},
+ * so it's consulted only when the cached response is missing or stale.</p>
+ */
+public class ConditionalRevalidationInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final String AGE_HEADER = "Age";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String CONTENT_TYPE = "Content-Type";
+
+    private final Cache cache;
+    private final int maxResponseSize;
+
+
+    /**
+     * @param cache The cache for validators of the responses.
+     * @param maxResponseSize The maximal size of a body to store in bytes.
+     */
+    public ConditionalRevalidationInterceptor(Cache cache, int maxResponseSize) {
+        Assert.notNull(cache, "cache must not be null");
+        this.cache = cache;
+        this.maxResponseSize = maxResponseSize;
+    }
+
+
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+
+        if (request.getMethod() != HttpMethod.GET) {
+            return execution.execute(request, body);
+        }
+        String key = request.getURI().toString();
+        ValueWrapper wrapper = cache.get(key);
+        StoredResponse stored = wrapper != null ? (StoredResponse) wrapper.get() : null;
+        byte[] storedBody = stored != null ? stored.body() : null;
+
+        if (storedBody != null) {
+            if (stored.etag != null) {
+                request.getHeaders().set(IF_NONE_MATCH, stored.etag);
+            }
+            if (stored.lastModified != null) {
+                request.getHeaders().set(IF_MODIFIED_SINCE, stored.lastModified);
+            }
+        }
+        ClientHttpResponse response = execution.execute(request, body);
+        int status = response.getRawStatusCode();
+
+        if (status == 304 && storedBody != null) {
+            HttpHeaders headers = new HttpHeaders();
+            if (stored.contentType != null) {
+                headers.set(CONTENT_TYPE, stored.contentType);
+            }
+            headers.putAll(response.getHeaders());
+            headers.setContentLength(storedBody.length);
+            headers.set(AGE_HEADER, String.valueOf((System.currentTimeMillis() - stored.fetchedAt) / 1000));
+            response.close();
+
+            return new BufferedClientHttpResponse(200, "OK", headers, storedBody);
+        }
+        if (status == 304) {
+            // nothing to replay, fetch it again unconditionally
+            response.close();
+            request.getHeaders().remove(IF_NONE_MATCH);
+            request.getHeaders().remove(IF_MODIFIED_SINCE);
+
+            response = execution.execute(request, body);
+            status = response.getRawStatusCode();
+        }
+        if (status != 200) {
+            return response;
+        }
+
+        HttpHeaders headers = response.getHeaders();
+        String etag = headers.getETag();
+        String lastModified = headers.getFirst("Last-Modified");
+        long contentLength = headers.getContentLength();
+
+        // response that has been already aged by a proxy would get a wrong Age on replay
+        if ((etag == null && lastModified == null) || contentLength > maxResponseSize
+                || headers.containsKey(AGE_HEADER)) {
+            if (stored != null) {
+                cache.evict(key);
+            }
+            return response;
+        }
+        String statusText = response.getStatusText();
+        byte[] responseBody;
+        try {
+            responseBody = StreamUtils.copyToByteArray(response.getBody());
+        } finally {
+            response.close();
+        }
+        if (responseBody.length <= maxResponseSize) {
+            cache.put(key, new StoredResponse(etag, lastModified, headers.getFirst(CONTENT_TYPE), responseBody));
+        }
+        return new BufferedClientHttpResponse(status, statusText, headers, responseBody);
+    }
+
+
+    private static class StoredResponse implements Serializable {
+
+        private static final long serialVersionUID = 2L;
+
+        final String etag;
+        final String lastModified;
+        final String contentType;
+        final long fetchedAt = System.currentTimeMillis();
+        private final transient SoftReference<byte[]> body;
+
+        StoredResponse(String etag, String lastModified, String contentType, byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.body = new SoftReference<>(body);
+        }
+
+        /**
+         * @return The body, or <tt>null</tt> if it's been reclaimed.
+         */
+        byte[] body() {
+            return body != null ? body.get() : null;
+        }
+    }
+}
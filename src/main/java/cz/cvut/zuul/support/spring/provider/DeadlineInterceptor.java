@@ -0,0 +1,61 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+/**
+ * {@link ClientHttpRequestInterceptor} that skips the request with
+ * {@link DeadlineExceededException} when less than the {@link #DeadlineInterceptor(long)
+ * minimal time} remains until the {@link RequestDeadline}. It should be
+ * placed after caching interceptors, so cached responses are still served.
+ */
+public class DeadlineInterceptor implements ClientHttpRequestInterceptor {
+
+    private final long minRemaining;
+
+
+    /**
+     * @param minRemaining The minimal remaining time in milliseconds
+     *                     needed to perform the request.
+     */
+    public DeadlineInterceptor(long minRemaining) {
+        this.minRemaining = minRemaining;
+    }
+
+
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+
+        if (RequestDeadline.remainingMillis() < minRemaining) {
+            throw new DeadlineExceededException("Request deadline would be exceeded");
+        }
+        return execution.execute(request, body);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+/**
+ * Decorator of the OAuth authentication filter that authenticates each
+ * request only once, even when it passes through the filter chain
+ * repeatedly due to ASYNC, ERROR or FORWARD dispatches. The resolved
+ * {@link OAuth2Authentication} is stored in a request attribute on the
+ * first pass and put back into the security context on subsequent passes,
+ * so the token is not validated again.
+ *
+ * @see OAuth2ResourceServerConfigurer#reuseAuthentication(boolean)
+ */
+public class DispatchAwareAuthenticationFilter extends GenericFilterBean {
+
+    /**
+     * Name of the request attribute that holds the resolved authentication.
+     */
+    public static final String AUTHENTICATION_ATTRIBUTE = DispatchAwareAuthenticationFilter.class.getName() + ".AUTHENTICATION";
+
+    private final Filter authenticationFilter;
+
+
+    /**
+     * @param authenticationFilter The filter that authenticates requests,
+     *                             typically {@link org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationProcessingFilter}.
+     */
+    public DispatchAwareAuthenticationFilter(Filter authenticationFilter) {
+        Assert.notNull(authenticationFilter, "authenticationFilter must not be null");
+        this.authenticationFilter = authenticationFilter;
+    }
+
+
+    public void doFilter(final ServletRequest request, ServletResponse response, final FilterChain chain)
+            throws IOException, ServletException {
+
+        Object resolved = request.getAttribute(AUTHENTICATION_ATTRIBUTE);
+
+        if (resolved instanceof OAuth2Authentication) {
+            SecurityContextHolder.getContext().setAuthentication((OAuth2Authentication) resolved);
+            chain.doFilter(request, response);
+            return;
+        }
+        authenticationFilter.doFilter(request, response, new FilterChain() {
+            public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+                Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+                if (authentication instanceof OAuth2Authentication) {
+                    request.setAttribute(AUTHENTICATION_ATTRIBUTE, authentication);
+                }
+                chain.doFilter(request, response);
+            }
+        });
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link ClientHttpRequestInterceptor} that asks for gzip compressed
+ * responses and decompresses them. It should be the last interceptor, so
+ * the others (e.g. caches) see the decompressed body.
+ *
+ * <p>Note that the Apache HttpClient does this by itself, so it's not
+ * needed with {@link cz.cvut.zuul.support.spring.client.PooledClientHttpRequestFactory
+ * PooledClientHttpRequestFactory}.</p>
+ */
+public class GzipDecodingInterceptor implements ClientHttpRequestInterceptor {
+
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+
+        if (!request.getHeaders().containsKey("Accept-Encoding")) {
+            request.getHeaders().set("Accept-Encoding", "gzip");
+        }
+        ClientHttpResponse response = execution.execute(request, body);
+
+        if (!"gzip".equalsIgnoreCase(response.getHeaders().getFirst("Content-Encoding"))) {
+            return response;
+        }
+        int status = response.getRawStatusCode();
+        String statusText = response.getStatusText();
+        byte[] decoded;
+        try {
+            decoded = StreamUtils.copyToByteArray(new GZIPInputStream(response.getBody()));
+        } finally {
+            response.close();
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.remove("Content-Encoding");
+        headers.setContentLength(decoded.length);
+
+        return new BufferedClientHttpResponse(status, statusText, headers, decoded);
+    }
+}
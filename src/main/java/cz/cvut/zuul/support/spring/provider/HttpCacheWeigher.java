@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import cz.jirutka.spring.http.client.cache.internal.CacheEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The default {@link WeighedLruCache.Weigher}. It estimates entries cached by
+ * {@link cz.jirutka.spring.http.client.cache.CachingHttpRequestInterceptor
+ * CachingHttpRequestInterceptor} by length of the response body and headers,
+ * byte arrays and strings by their length. Other serializable values are
+ * weighed by size of their Java serialization form; values that are neither
+ * are given a fixed weight and a warning is logged.
+ */
+public class HttpCacheWeigher implements WeighedLruCache.Weigher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpCacheWeigher.class);
+
+    /** Rough heap overhead of an object with a few fields. */
+    static final int OBJECT_OVERHEAD = 32;
+
+    /** The weight of a value of unknown type that cannot be serialized. */
+    static final int DEFAULT_WEIGHT = 1024;
+
+    private volatile boolean unknownReported = false;
+
+
+    public long weigh(Object value) {
+        if (value instanceof CacheEntry) {
+            return 3 * OBJECT_OVERHEAD + weighResponse(((CacheEntry) value).getResponse());
+        }
+        if (value instanceof ClientHttpResponse) {
+            return weighResponse((ClientHttpResponse) value);
+        }
+        if (value instanceof byte[]) {
+            return OBJECT_OVERHEAD + ((byte[]) value).length;
+        }
+        if (value instanceof String) {
+            return weighString((String) value);
+        }
+        if (value instanceof Serializable) {
+            long weight = weighSerialized(value);
+            if (weight >= 0) {
+                return weight;
+            }
+        }
+        if (!unknownReported) {
+            unknownReported = true;
+            LOG.warn("Cannot weigh values of type {}, using fixed weight of {} bytes; " +
+                    "supply a custom Weigher to WeighedLruCache", value.getClass().getName(), DEFAULT_WEIGHT);
+        }
+        return DEFAULT_WEIGHT;
+    }
+
+
+    private long weighResponse(ClientHttpResponse response) {
+        long weight = OBJECT_OVERHEAD + weighHeaders(response.getHeaders());
+
+        // the cached response is in memory, so available() is the body length
+        try (InputStream body = response.getBody()) {
+            weight += OBJECT_OVERHEAD + body.available();
+        } catch (IOException ex) {
+            LOG.trace("Cannot determine body length of cached response", ex);
+        }
+        return weight;
+    }
+
+    private long weighHeaders(HttpHeaders headers) {
+        long weight = OBJECT_OVERHEAD;
+
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            weight += OBJECT_OVERHEAD + weighString(header.getKey());
+            for (String value : header.getValue()) {
+                weight += weighString(value);
+            }
+        }
+        return weight;
+    }
+
+    private long weighString(String value) {
+        return OBJECT_OVERHEAD + value.length() * 2;
+    }
+
+    /**
+     * @return Size of the value's serialization form, or -1 if it cannot be
+     *         serialized.
+     */
+    private long weighSerialized(Object value) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            out.writeObject(value);
+        } catch (IOException | RuntimeException ex) {
+            LOG.trace("Cannot serialize value of type {}", value.getClass().getName(), ex);
+            return -1;
+        }
+        return counter.count;
+    }
+
+
+    private static class CountingOutputStream extends OutputStream {
+
+        long count = 0;
+
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
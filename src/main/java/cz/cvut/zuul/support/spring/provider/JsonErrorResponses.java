@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Utility for writing error responses with a small JSON body, i.e.
+ * <tt>{"error":"&lt;code&gt;"}</tt>, rendered in advance. It's shared by
+ * the filters and handlers that reject requests without message converters.
+ */
+final class JsonErrorResponses {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+
+    private JsonErrorResponses() {}
+
+
+    /**
+     * @param error The error code.
+     * @return The JSON body with the error code, encoded in UTF-8.
+     */
+    static byte[] render(String error) {
+        return ("{\"error\":\"" + escape(error) + "\"}").getBytes(UTF_8);
+    }
+
+    /**
+     * Sets the status and writes the rendered body to the response.
+     */
+    static void write(HttpServletResponse response, int status, byte[] body) throws IOException {
+        response.setStatus(status);
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * Escapes the value to be put into a JSON string or a quoted-string of
+     * a HTTP header.
+     */
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
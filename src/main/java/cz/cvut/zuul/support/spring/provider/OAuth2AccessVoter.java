@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.security.access.AccessDecisionVoter;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.provider.AuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Votes on OAuth 2.0 scope and client authority requirements without
+ * evaluating any expressions. This is a lightweight alternative to
+ * {@code #oauth2.hasScope('...')} and {@code #oauth2.clientHasAnyRole('...')}
+ * expressions used with {@link org.springframework.security.oauth2.provider.expression.OAuth2WebSecurityExpressionHandler}.
+ *
+ * <p>Supported attributes are:</p>
+ * <ul>
+ *     <li><tt>SCOPE_</tt><i>scope</i> &ndash; the token has the given scope,</li>
+ *     <li><tt>CLIENT_</tt><i>authority</i> &ndash; the client has the given authority.</li>
+ * </ul>
+ *
+ * <p>Access is granted if any of the supported attributes is satisfied,
+ * otherwise denied. Attributes are parsed once, when checked by
+ * {@link #supports(ConfigAttribute)} during the startup, and then only
+ * looked up; their scopes are registered in the {@link ScopeDictionary}
+ * (if provided) at that time. Attributes that haven't been checked are
+ * parsed on each vote, without changing the dictionary. When the token's
+ * scope is a {@link ScopeSet} encoded by the dictionary, then scope is
+ * checked just by a bit test.</p>
+ *
+ * @see OAuth2ResourceServerConfigurer
+ */
+public class OAuth2AccessVoter implements AccessDecisionVoter<Object> {
+
+    public static final String SCOPE_PREFIX = "SCOPE_";
+    public static final String CLIENT_AUTHORITY_PREFIX = "CLIENT_";
+
+    private final ConcurrentMap<String, Requirement> requirements = new ConcurrentHashMap<>();
+    private final ScopeDictionary scopeDictionary;
+
+
+    public OAuth2AccessVoter() {
+        this(null);
+    }
+
+    /**
+     * @param scopeDictionary The dictionary used to encode scopes of tokens,
+     *                        or <tt>null</tt>.
+     */
+    public OAuth2AccessVoter(ScopeDictionary scopeDictionary) {
+        this.scopeDictionary = scopeDictionary;
+    }
+
+
+    public boolean supports(ConfigAttribute attribute) {
+        String value = attribute.getAttribute();
+        if (value == null) {
+            return false;
+        }
+        Requirement requirement = requirements.get(value);
+
+        if (requirement == null) {
+            requirement = compile(value, true);
+            if (requirement == null) {
+                return false;
+            }
+            requirements.putIfAbsent(value, requirement);
+        }
+        return true;
+    }
+
+    public boolean supports(Class<?> clazz) {
+        return true;
+    }
+
+    public int vote(Authentication authentication, Object object, Collection<ConfigAttribute> attributes) {
+        int result = ACCESS_ABSTAIN;
+
+        for (ConfigAttribute attribute : attributes) {
+            Requirement requirement = resolve(attribute);
+            if (requirement == null) {
+                continue;
+            }
+            result = ACCESS_DENIED;
+
+            if (authentication instanceof OAuth2Authentication
+                    && requirement.isSatisfiedBy(((OAuth2Authentication) authentication).getAuthorizationRequest())) {
+                return ACCESS_GRANTED;
+            }
+        }
+        return result;
+    }
+
+
+    private Requirement resolve(ConfigAttribute attribute) {
+        String value = attribute.getAttribute();
+        if (value == null) {
+            return null;
+        }
+        Requirement requirement = requirements.get(value);
+
+        return requirement != null ? requirement : compile(value, false);
+    }
+
+    /**
+     * @param register Whether to add the scope to the dictionary, or just
+     *                 look it up.
+     */
+    private Requirement compile(String value, boolean register) {
+        if (value.startsWith(SCOPE_PREFIX)) {
+            String scope = value.substring(SCOPE_PREFIX.length());
+            int scopeId = scopeDictionary == null ? -1
+                    : register ? scopeDictionary.register(scope) : scopeDictionary.lookup(scope);
+
+            return new Requirement(true, scope, scopeDictionary, scopeId);
+        }
+        if (value.startsWith(CLIENT_AUTHORITY_PREFIX)) {
+            return new Requirement(false, value.substring(CLIENT_AUTHORITY_PREFIX.length()), null, -1);
+        }
+        return null;
+    }
+
+
+    private static class Requirement {
+
+        final boolean scope;
+        final String value;
+        final ScopeDictionary dictionary;
+        final int valueId;
+
+        Requirement(boolean scope, String value, ScopeDictionary dictionary, int valueId) {
+            this.scope = scope;
+            this.value = value;
+            this.dictionary = dictionary;
+            this.valueId = valueId;
+        }
+
+        boolean isSatisfiedBy(AuthorizationRequest request) {
+            if (scope) {
+                Set<String> scopes = request.getScope();
+
+                if (valueId >= 0 && scopes instanceof ScopeSet && ((ScopeSet) scopes).getDictionary() == dictionary) {
+                    return ((ScopeSet) scopes).containsId(valueId);
+                }
+                return scopes.contains(value);
+            }
+            for (GrantedAuthority authority : request.getAuthorities()) {
+                if (value.equals(authority.getAuthority())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
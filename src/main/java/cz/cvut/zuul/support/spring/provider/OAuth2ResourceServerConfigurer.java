@@ -23,31 +23,64 @@
  */
 package cz.cvut.zuul.support.spring.provider;
 
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.access.AccessDecisionVoter;
 import org.springframework.security.access.expression.SecurityExpressionHandler;
+import org.springframework.security.access.vote.AffirmativeBased;
+import org.springframework.security.access.vote.AuthenticatedVoter;
+import org.springframework.security.access.vote.RoleVoter;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.ExpressionUrlAuthorizationConfigurer;
+import org.springframework.security.config.annotation.web.configurers.UrlAuthorizationConfigurer;
 import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationProcessingFilter;
+import org.springframework.security.oauth2.provider.error.OAuth2AuthenticationEntryPoint;
 import org.springframework.security.oauth2.provider.expression.OAuth2WebSecurityExpressionHandler;
+import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.DefaultSecurityFilterChain;
 import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.access.intercept.FilterSecurityInterceptor;
 import org.springframework.security.web.authentication.preauth.AbstractPreAuthenticatedProcessingFilter;
+import org.springframework.security.web.authentication.preauth.x509.X509AuthenticationFilter;
+import org.springframework.security.web.context.request.async.WebAsyncManagerIntegrationFilter;
+
+import javax.servlet.Filter;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Adds support for OAuth 2.0 authorization (resource server).
  *
  * <h2>Security Filters</h2>
  *
- * The following Filters are populated
+ * The following Filters are populated; the ones around the authentication
+ * filter are placed between {@link X509AuthenticationFilter} and
+ * {@link AbstractPreAuthenticatedProcessingFilter}, in this order:
  *
  * <ul>
- *     <li>{@link OAuth2AuthenticationProcessingFilter}</li>
+ *     <li>{@link TokenInfoPropagationFilter} when {@link #tokenInfoPropagation(TokenInfoPropagationFilter)}
+ *         is used</li>
+ *     <li>{@link RequestDeadlineFilter} when {@link #requestDeadline(RequestDeadlineFilter)} is used</li>
+ *     <li>{@link OAuth2AuthenticationProcessingFilter}, decorated by
+ *         {@link DispatchAwareAuthenticationFilter} when {@link #reuseAuthentication(boolean)}
+ *         is enabled, or {@link AsyncOAuth2AuthenticationFilter} instead when
+ *         {@link #asyncTokenServices(AsyncResourceServerTokenServices)} is used</li>
+ *     <li>{@link ClientAdmissionFilter} when {@link #admissionControl(ClientAdmissionFilter)} is used</li>
  * </ul>
  *
+ * <p>Further, {@link WebAsyncManagerIntegrationFilter} is added when
+ * {@link #reuseAuthentication(boolean)} is enabled or the async token
+ * services are used, and {@link FilterSecurityInterceptor} when
+ * {@link #accessRules()} are used.</p>
+ *
  * <h2>Shared Objects Created</h2>
  *
- * No shared objects are created.
+ * The following shared objects are populated when {@link #accessRules()} are used:
+ *
+ * <ul>
+ *     <li>{@link FilterSecurityInterceptor}</li>
+ * </ul>
  *
  * <h2>Shared Objects Used</h2>
  *
@@ -63,6 +96,17 @@ import org.springframework.security.web.authentication.preauth.AbstractPreAuthen
  * The {@link ExpressionUrlAuthorizationConfigurer} is affected - {@link SecurityExpressionHandler}
  * is changed to {@link OAuth2WebSecurityExpressionHandler}.
  *
+ * <p>The {@link UrlAuthorizationConfigurer} is affected - {@link AccessDecisionManager}
+ * is changed to {@link AffirmativeBased} with {@link OAuth2AccessVoter}, {@link RoleVoter}
+ * and {@link AuthenticatedVoter}. This allows to use attributes like
+ * <tt>SCOPE_urn:zuul:oauth:sample.read</tt> that are checked without
+ * evaluating SpEL expressions on each request:</p>
+ *
+ * <pre>
+ * http.apply(new UrlAuthorizationConfigurer&lt;HttpSecurity&gt;()).getRegistry()
+ *     .antMatchers("/api/**").access("SCOPE_urn:zuul:oauth:sample.read");
+ * </pre>
+ *
  *
  * <h2>Note for Groovy</h2>
  *
@@ -79,6 +123,14 @@ public class OAuth2ResourceServerConfigurer extends SecurityConfigurerAdapter<De
 
     private SecurityExpressionHandler<FilterInvocation> expressionHandler = new OAuth2WebSecurityExpressionHandler();
     private AuthenticationManager authenticationManager;
+    private AuthenticationEntryPoint authenticationEntryPoint;
+    private ScopeDictionary scopeDictionary;
+    private PathTrieSecurityMetadataSource accessRules;
+    private ClientAdmissionFilter admissionFilter;
+    private boolean reuseAuthentication = false;
+    private RequestDeadlineFilter deadlineFilter;
+    private TokenInfoPropagationFilter propagationFilter;
+    private AsyncResourceServerTokenServices asyncTokenServices;
 
     /**
      * The {@code AuthenticationManager} to be used by {@link OAuth2AuthenticationProcessingFilter},
@@ -90,20 +142,186 @@ public class OAuth2ResourceServerConfigurer extends SecurityConfigurerAdapter<De
         return this;
     }
 
+    /**
+     * The {@code AuthenticationEntryPoint} to be used by {@link OAuth2AuthenticationProcessingFilter}
+     * when the token is invalid. When not provided, the default
+     * {@link org.springframework.security.oauth2.provider.error.OAuth2AuthenticationEntryPoint}
+     * is used.
+     */
+    public OAuth2ResourceServerConfigurer authenticationEntryPoint(AuthenticationEntryPoint authenticationEntryPoint) {
+        this.authenticationEntryPoint = authenticationEntryPoint;
+        return this;
+    }
+
+    /**
+     * The {@code ScopeDictionary} used by {@link OAuth2AccessVoter}; it
+     * should be the same one as used by the token services.
+     *
+     * @see RemoteResourceTokenServices#setScopeDictionary(ScopeDictionary)
+     */
+    public OAuth2ResourceServerConfigurer scopeDictionary(ScopeDictionary scopeDictionary) {
+        this.scopeDictionary = scopeDictionary;
+        return this;
+    }
+
+    /**
+     * Returns the indexed access rules that are checked by
+     * a {@link FilterSecurityInterceptor} created by this configurer. This
+     * is intended for a large number of rules and should be used
+     * <i>instead of</i> {@link HttpSecurity#authorizeRequests()}.
+     *
+     * <pre>
+     * http.getConfigurer(OAuth2ResourceServerConfigurer.class).accessRules()
+     *     .rule(HttpMethod.GET, "/api/v1/people/**", "SCOPE_urn:zuul:oauth:people.read")
+     *     .rule("/api/**", "IS_AUTHENTICATED_FULLY");
+     * </pre>
+     *
+     * <p>The rules are evaluated with {@link OAuth2AccessVoter}, {@link RoleVoter}
+     * and {@link AuthenticatedVoter}.</p>
+     */
+    public PathTrieSecurityMetadataSource accessRules() {
+        if (accessRules == null) {
+            accessRules = new PathTrieSecurityMetadataSource();
+        }
+        return accessRules;
+    }
+
+    /**
+     * Adds the given {@link ClientAdmissionFilter} right after the
+     * {@link OAuth2AuthenticationProcessingFilter} to limit requests per
+     * client before any further processing.
+     */
+    public OAuth2ResourceServerConfigurer admissionControl(ClientAdmissionFilter admissionFilter) {
+        this.admissionFilter = admissionFilter;
+        return this;
+    }
+
+    /**
+     * Whether to authenticate each request only once, even when it passes
+     * through the filter chain repeatedly due to ASYNC or ERROR dispatches.
+     * When enabled, the {@link OAuth2AuthenticationProcessingFilter} is
+     * decorated by {@link DispatchAwareAuthenticationFilter} and
+     * {@link WebAsyncManagerIntegrationFilter} is added to propagate the
+     * authentication to async continuations. Default is <tt>false</tt>.
+     */
+    public OAuth2ResourceServerConfigurer reuseAuthentication(boolean reuseAuthentication) {
+        this.reuseAuthentication = reuseAuthentication;
+        return this;
+    }
+
+    /**
+     * Adds the given {@link RequestDeadlineFilter} right before the OAuth
+     * authentication filter (after the {@link TokenInfoPropagationFilter}),
+     * so the token validation is bounded by the deadline of the request.
+     */
+    public OAuth2ResourceServerConfigurer requestDeadline(RequestDeadlineFilter deadlineFilter) {
+        this.deadlineFilter = deadlineFilter;
+        return this;
+    }
+
+    /**
+     * Adds the given {@link TokenInfoPropagationFilter} before the
+     * {@link RequestDeadlineFilter} and the OAuth authentication filter,
+     * so the token services with a
+     * {@link SignedTokenInfoCodec} can accept and propagate signed token info.
+     */
+    public OAuth2ResourceServerConfigurer tokenInfoPropagation(TokenInfoPropagationFilter propagationFilter) {
+        this.propagationFilter = propagationFilter;
+        return this;
+    }
+
+    /**
+     * Validates tokens with the given non-blocking token services using
+     * {@link AsyncOAuth2AuthenticationFilter} instead of
+     * {@link OAuth2AuthenticationProcessingFilter}, so the container thread
+     * is not held while the token is being validated. The
+     * {@link #oauthAuthenticationManager(AuthenticationManager) authenticationManager}
+     * is not used for authentication then and the resolved authentication
+     * is always reused across dispatches of the request;
+     * {@link WebAsyncManagerIntegrationFilter} is added to propagate it to
+     * async continuations.
+     *
+     * @see RemoteResourceTokenServicesBuilder#buildAsync(java.util.concurrent.Executor)
+     */
+    public OAuth2ResourceServerConfigurer asyncTokenServices(AsyncResourceServerTokenServices asyncTokenServices) {
+        this.asyncTokenServices = asyncTokenServices;
+        return this;
+    }
+
     @Override
     public void configure(HttpSecurity http) throws Exception {
 
-        http.getConfigurer(ExpressionUrlAuthorizationConfigurer.class)
-            .getRegistry()
+        ExpressionUrlAuthorizationConfigurer<?> expressionConfigurer =
+                http.getConfigurer(ExpressionUrlAuthorizationConfigurer.class);
+        if (expressionConfigurer != null) {
+            expressionConfigurer.getRegistry()
                 .expressionHandler(expressionHandler);
+        }
+
+        UrlAuthorizationConfigurer<?> urlConfigurer = http.getConfigurer(UrlAuthorizationConfigurer.class);
+        if (urlConfigurer != null) {
+            urlConfigurer.getRegistry()
+                .accessDecisionManager(createAccessDecisionManager());
+        }
 
-        OAuth2AuthenticationProcessingFilter resourcesServerFilter = new OAuth2AuthenticationProcessingFilter();
-        resourcesServerFilter.setAuthenticationManager(getAuthenticationManager(http));
+        Filter authenticationFilter;
+        if (asyncTokenServices != null) {
+            authenticationFilter = postProcess(new AsyncOAuth2AuthenticationFilter(asyncTokenServices,
+                    authenticationEntryPoint != null ? authenticationEntryPoint : new OAuth2AuthenticationEntryPoint()));
 
-        http.addFilterBefore(postProcess(resourcesServerFilter), AbstractPreAuthenticatedProcessingFilter.class);
+        } else {
+            OAuth2AuthenticationProcessingFilter resourcesServerFilter = new OAuth2AuthenticationProcessingFilter();
+            resourcesServerFilter.setAuthenticationManager(getAuthenticationManager(http));
+            if (authenticationEntryPoint != null) {
+                resourcesServerFilter.setAuthenticationEntryPoint(authenticationEntryPoint);
+            }
+            authenticationFilter = postProcess(resourcesServerFilter);
+        }
+        if (reuseAuthentication && asyncTokenServices == null) {
+            authenticationFilter = postProcess(new DispatchAwareAuthenticationFilter(authenticationFilter));
+        }
+        if (reuseAuthentication || asyncTokenServices != null) {
+            http.addFilter(new WebAsyncManagerIntegrationFilter());
+        }
+
+        // each filter gets its own position, right after the previous one
+        Class<? extends Filter> previous = X509AuthenticationFilter.class;
+
+        if (propagationFilter != null) {
+            http.addFilterAfter(postProcess(propagationFilter), previous);
+            previous = propagationFilter.getClass();
+        }
+        if (deadlineFilter != null) {
+            http.addFilterAfter(postProcess(deadlineFilter), previous);
+            previous = deadlineFilter.getClass();
+        }
+        http.addFilterAfter(authenticationFilter, previous);
+
+        if (admissionFilter != null) {
+            http.addFilterAfter(postProcess(admissionFilter), authenticationFilter.getClass());
+        }
+
+        if (accessRules != null) {
+            FilterSecurityInterceptor securityInterceptor = new FilterSecurityInterceptor();
+            securityInterceptor.setSecurityMetadataSource(accessRules);
+            securityInterceptor.setAccessDecisionManager(createAccessDecisionManager());
+            securityInterceptor.setAuthenticationManager(getAuthenticationManager(http));
+
+            securityInterceptor = postProcess(securityInterceptor);
+            http.addFilter(securityInterceptor);
+            http.setSharedObject(FilterSecurityInterceptor.class, securityInterceptor);
+        }
     }
 
 
+    @SuppressWarnings("unchecked")
+    private AccessDecisionManager createAccessDecisionManager() {
+        List<AccessDecisionVoter> voters = Arrays.<AccessDecisionVoter>asList(
+                new OAuth2AccessVoter(scopeDictionary), new RoleVoter(), new AuthenticatedVoter());
+
+        return postProcess(new AffirmativeBased(voters));
+    }
+
     private AuthenticationManager getAuthenticationManager(HttpSecurity http) {
         if (authenticationManager == null) {
 
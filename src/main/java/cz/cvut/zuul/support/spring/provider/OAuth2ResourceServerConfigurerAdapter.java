@@ -42,7 +42,12 @@ import org.springframework.security.oauth2.provider.error.OAuth2AuthenticationEn
 import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.access.AccessDeniedHandler;
+import org.springframework.security.web.access.channel.ChannelProcessingFilter;
 import org.springframework.security.web.access.intercept.FilterSecurityInterceptor;
+import org.springframework.security.web.context.NullSecurityContextRepository;
+import org.springframework.security.web.savedrequest.NullRequestCache;
+import org.springframework.security.web.savedrequest.RequestCache;
+import org.springframework.util.Assert;
 import org.springframework.web.accept.ContentNegotiationStrategy;
 import org.springframework.web.accept.HeaderContentNegotiationStrategy;
 
@@ -77,6 +82,7 @@ public abstract class OAuth2ResourceServerConfigurerAdapter implements WebSecuri
 
     private HttpSecurity http;
     private boolean disableDefaults;
+    private boolean lean;
 
 
     /**
@@ -97,7 +103,40 @@ public abstract class OAuth2ResourceServerConfigurerAdapter implements WebSecuri
      *            else false
      */
     protected OAuth2ResourceServerConfigurerAdapter(boolean disableDefaults) {
+        this(disableDefaults, false);
+    }
+
+    /**
+     * Creates an instance which allows specifying if the lean configuration
+     * should be used instead of the default one. The lean configuration is
+     * intended for stateless APIs accessed only with access tokens; it
+     * contains only filters needed to authenticate and authorize requests:
+     *
+     * <pre>
+     * http.apply(new OAuth2ResourceServerConfigurer()
+     *         .authenticationEntryPoint(errorHandler)).and()
+     *     .securityContext()
+     *         .securityContextRepository(new NullSecurityContextRepository()).and()
+     *     .exceptionHandling()
+     *         .authenticationEntryPoint(errorHandler)
+     *         .accessDeniedHandler(errorHandler);
+     * </pre>
+     *
+     * <p>where {@code errorHandler} is {@link PrerenderedErrorHandler}.
+     * Since there's no anonymous authentication, requests without a token
+     * are always rejected; use {@link WebSecurity#ignoring()} for public
+     * resources.</p>
+     *
+     * @param disableDefaults
+     *            true if the default configuration should be enabled,
+     *            else false
+     * @param lean
+     *            true if the lean configuration should be used instead
+     *            of the default one, else false
+     */
+    protected OAuth2ResourceServerConfigurerAdapter(boolean disableDefaults, boolean lean) {
         this.disableDefaults = disableDefaults;
+        this.lean = lean;
     }
 
 
@@ -164,6 +203,17 @@ public abstract class OAuth2ResourceServerConfigurerAdapter implements WebSecuri
         return context.getBean(ResourceServerTokenServices.class);
     }
 
+    /**
+     * Override this method to reject requests with <tt>503</tt> until the
+     * warm-up of the {@link RemoteResourceTokenServices} is completed, see
+     * {@link WarmUpGateFilter}. The warm-up itself is configured by
+     * {@link RemoteResourceTokenServicesBuilder#warmUp()}. Default is
+     * <tt>false</tt>.
+     */
+    protected boolean isWarmUpGated() {
+        return false;
+    }
+
     /**
      * Creates the {@link HttpSecurity} or returns the current instance.
      */
@@ -181,7 +231,19 @@ public abstract class OAuth2ResourceServerConfigurerAdapter implements WebSecuri
         http.setSharedObject(ContentNegotiationStrategy.class, contentNegotiationStrategy);
         http.setSharedObject(AuthenticationTrustResolver.class, trustResolver);
 
-        if (!disableDefaults) {
+        if (!disableDefaults && lean) {
+            PrerenderedErrorHandler errorHandler = new PrerenderedErrorHandler();
+            http.setSharedObject(RequestCache.class, new NullRequestCache());
+
+            http.apply(new OAuth2ResourceServerConfigurer()
+                    .authenticationEntryPoint(errorHandler)).and()
+                .securityContext()
+                    .securityContextRepository(new NullSecurityContextRepository()).and()
+                .exceptionHandling()
+                    .authenticationEntryPoint(errorHandler)
+                    .accessDeniedHandler(errorHandler);
+
+        } else if (!disableDefaults) {
             http.apply(new OAuth2ResourceServerConfigurer()).and()
                 .exceptionHandling()
                     .authenticationEntryPoint(authenticationEntryPoint)
@@ -193,6 +255,14 @@ public abstract class OAuth2ResourceServerConfigurerAdapter implements WebSecuri
                 .anonymous().and()
                 .servletApi();
         }
+        if (isWarmUpGated()) {
+            ResourceServerTokenServices tokenServices = getResourceServerTokenServices();
+            Assert.state(tokenServices instanceof RemoteResourceTokenServices,
+                    "Warm-up gate requires RemoteResourceTokenServices");
+
+            http.addFilterBefore(new WarmUpGateFilter((RemoteResourceTokenServices) tokenServices),
+                    ChannelProcessingFilter.class);
+        }
         configure(http);
 
         return http;
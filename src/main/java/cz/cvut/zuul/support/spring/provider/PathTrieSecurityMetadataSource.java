@@ -0,0 +1,322 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.security.access.ConfigAttribute;
+import org.springframework.security.access.SecurityConfig;
+import org.springframework.security.web.FilterInvocation;
+import org.springframework.security.web.access.intercept.FilterInvocationSecurityMetadataSource;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.Assert;
+import org.springframework.util.PathMatcher;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link FilterInvocationSecurityMetadataSource} with Ant-style URL
+ * patterns indexed in a trie of path segments. Lookup of the matching rule
+ * takes time proportional to the depth of the request path rather than to
+ * the number of rules, so it's suitable for resource servers with hundreds
+ * of rules.
+ *
+ * <p>The rules have the same semantics as in
+ * {@link org.springframework.security.config.annotation.web.configurers.UrlAuthorizationConfigurer UrlAuthorizationConfigurer}:
+ * the first declared rule that matches the request wins. Patterns may
+ * contain <tt>**</tt>, <tt>*</tt> and <tt>{variable}</tt> as whole
+ * segments; other wildcards inside a segment (e.g. <tt>*.json</tt>) are
+ * supported too, but they're matched one by one at their position in the
+ * trie.</p>
+ *
+ * <p>The segments are split like by {@link AntPathMatcher}: they're
+ * trimmed and empty ones are ignored, so <tt>/a//b</tt> is the same as
+ * <tt>/a/b</tt>. A trailing slash is significant for patterns without
+ * <tt>**</tt>, i.e. <tt>/a/</tt> doesn't match <tt>/a</tt> and vice
+ * versa, but <tt>/a/*</tt> matches <tt>/a/</tt>.</p>
+ *
+ * <p>Like {@link org.springframework.security.web.util.AntPathRequestMatcher
+ * AntPathRequestMatcher}, the patterns are matched case-insensitively;
+ * both the patterns and the request paths are converted to lower case.</p>
+ *
+ * <pre>
+ * new PathTrieSecurityMetadataSource()
+ *     .rule(HttpMethod.GET, "/api/v1/people/**", "SCOPE_urn:zuul:oauth:people.read")
+ *     .rule("/api/**", "IS_AUTHENTICATED_FULLY");
+ * </pre>
+ *
+ * @see OAuth2ResourceServerConfigurer#accessRules()
+ */
+public class PathTrieSecurityMetadataSource implements FilterInvocationSecurityMetadataSource {
+
+    private static final String ANY_SEGMENTS = "**";
+
+    private final PathMatcher segmentMatcher = new AntPathMatcher();
+    private final Node root = new Node();
+    private final Set<ConfigAttribute> allAttributes = new LinkedHashSet<>();
+    private int rulesCount = 0;
+
+
+    /**
+     * Adds a rule for requests with any HTTP method.
+     *
+     * @param pattern The Ant-style pattern of the request path.
+     * @param attributes The security attributes of the matching requests.
+     */
+    public PathTrieSecurityMetadataSource rule(String pattern, String... attributes) {
+        return rule(null, pattern, attributes);
+    }
+
+    /**
+     * Adds a rule for requests with the specified HTTP method.
+     *
+     * @param method The HTTP method, or <tt>null</tt> for any.
+     * @param pattern The Ant-style pattern of the request path.
+     * @param attributes The security attributes of the matching requests.
+     */
+    public PathTrieSecurityMetadataSource rule(HttpMethod method, String pattern, String... attributes) {
+        Assert.hasText(pattern, "pattern must not be blank");
+        Assert.notEmpty(attributes, "at least one attribute must be specified");
+
+        String[] segments = split(pattern.toLowerCase(Locale.ENGLISH));
+        List<ConfigAttribute> configAttributes = SecurityConfig.createList(attributes);
+        Rule rule = new Rule(rulesCount++, method, configAttributes, pattern.endsWith("/"),
+                Arrays.asList(segments).contains(ANY_SEGMENTS),
+                segments.length > 0 && "*".equals(segments[segments.length - 1]));
+
+        Node node = root;
+        node.minOrder = Math.min(node.minOrder, rule.order);
+
+        for (String segment : segments) {
+            node = node.child(segment);
+            node.minOrder = Math.min(node.minOrder, rule.order);
+        }
+        node.rules.add(rule);
+        allAttributes.addAll(configAttributes);
+
+        return this;
+    }
+
+    public Collection<ConfigAttribute> getAttributes(Object object) {
+        HttpServletRequest request = ((FilterInvocation) object).getRequest();
+
+        String path = request.getServletPath();
+        if (request.getPathInfo() != null) {
+            path += request.getPathInfo();
+        }
+        Rule rule = match(root, split(path.toLowerCase(Locale.ENGLISH)), 0,
+                new Query(request.getMethod(), path.endsWith("/")), null);
+
+        return rule != null ? rule.attributes : null;
+    }
+
+    public Collection<ConfigAttribute> getAllConfigAttributes() {
+        return allAttributes;
+    }
+
+    public boolean supports(Class<?> clazz) {
+        return FilterInvocation.class.isAssignableFrom(clazz);
+    }
+
+
+    /**
+     * Finds the first declared rule that matches the given segments
+     * starting at the specified position, or returns <tt>best</tt> if it's
+     * declared before any such rule. Subtrees with only rules declared
+     * after <tt>best</tt> are skipped.
+     */
+    private Rule match(Node node, String[] segments, int position, Query query, Rule best) {
+        if (best != null && best.order < node.minOrder) {
+            return best;
+        }
+        if (position == segments.length) {
+            best = node.firstRule(query, false, best);
+
+            if (query.trailingSlash && node.anySegment != null) {
+                // "/a/*" matches "/a/"
+                best = node.anySegment.firstRule(query, true, best);
+            }
+        } else {
+            String segment = segments[position];
+
+            Node child = node.literals.get(segment);
+            if (child != null) {
+                best = match(child, segments, position + 1, query, best);
+            }
+            if (node.anySegment != null) {
+                best = match(node.anySegment, segments, position + 1, query, best);
+            }
+            for (Map.Entry<String, Node> entry : node.patterns.entrySet()) {
+                if (segmentMatcher.match(entry.getKey(), segment)) {
+                    best = match(entry.getValue(), segments, position + 1, query, best);
+                }
+            }
+        }
+        Node anySegments = node.anySegments;
+        if (anySegments != null) {
+            // "**" matches zero or more segments, but only the positions
+            // where the rest of a pattern may continue are tried
+            if (anySegments.hasWildcardChildren()) {
+                for (int i = position; i <= segments.length; i++) {
+                    best = match(anySegments, segments, i, query, best);
+                }
+            } else {
+                for (int i = position; i < segments.length; i++) {
+                    if (anySegments.literals.containsKey(segments[i])) {
+                        best = match(anySegments, segments, i, query, best);
+                    }
+                }
+                best = match(anySegments, segments, segments.length, query, best);
+            }
+        }
+        return best;
+    }
+
+    private static String[] split(String path) {
+        List<String> segments = new ArrayList<>();
+
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/') {
+                String segment = path.substring(start, i).trim();
+                if (!segment.isEmpty()) {
+                    segments.add(segment);
+                }
+                start = i + 1;
+            }
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+
+    private static class Node {
+
+        final Map<String, Node> literals = new HashMap<>();
+        final Map<String, Node> patterns = new HashMap<>();
+        final List<Rule> rules = new ArrayList<>();
+        Node anySegment;
+        Node anySegments;
+
+        // the order of the first declared rule in this subtree
+        int minOrder = Integer.MAX_VALUE;
+
+        Node child(String segment) {
+            if (ANY_SEGMENTS.equals(segment)) {
+                return anySegments != null ? anySegments : (anySegments = new Node());
+            }
+            if ("*".equals(segment) || isVariable(segment)) {
+                return anySegment != null ? anySegment : (anySegment = new Node());
+            }
+            Map<String, Node> children = segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0
+                    || segment.indexOf('{') >= 0 ? patterns : literals;
+
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        /**
+         * @param emptySegment Whether this node is matched by the empty
+         *                     last segment of a path with trailing slash.
+         */
+        Rule firstRule(Query query, boolean emptySegment, Rule best) {
+            for (Rule rule : rules) {
+                if (best != null && best.order < rule.order) {
+                    break;
+                }
+                if (rule.matches(query, emptySegment)) {
+                    return rule;
+                }
+            }
+            return best;
+        }
+
+        boolean hasWildcardChildren() {
+            return anySegment != null || anySegments != null || !patterns.isEmpty();
+        }
+
+        private static boolean isVariable(String segment) {
+            return segment.startsWith("{") && segment.endsWith("}")
+                    && segment.indexOf(':') < 0 && segment.indexOf('{', 1) < 0;
+        }
+    }
+
+
+    private static class Rule {
+
+        final int order;
+        final HttpMethod method;
+        final Collection<ConfigAttribute> attributes;
+        final boolean trailingSlash;
+        final boolean anySegments;
+        final boolean lastAnySegment;
+
+        Rule(int order, HttpMethod method, Collection<ConfigAttribute> attributes,
+             boolean trailingSlash, boolean anySegments, boolean lastAnySegment) {
+            this.order = order;
+            this.method = method;
+            this.attributes = attributes;
+            this.trailingSlash = trailingSlash;
+            this.anySegments = anySegments;
+            this.lastAnySegment = lastAnySegment;
+        }
+
+        /**
+         * Checks the method and the trailing slash like {@link AntPathMatcher}
+         * does once the path segments have been matched.
+         */
+        boolean matches(Query query, boolean emptySegment) {
+            if (method != null && !method.name().equals(query.method)) {
+                return false;
+            }
+            if (emptySegment) {
+                return lastAnySegment && !anySegments;
+            }
+            return anySegments || trailingSlash == query.trailingSlash;
+        }
+    }
+
+
+    private static class Query {
+
+        final String method;
+        final boolean trailingSlash;
+
+        Query(String method, boolean trailingSlash) {
+            this.method = method;
+            this.trailingSlash = trailingSlash;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.security.web.access.AccessDeniedHandler;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link AuthenticationEntryPoint} and {@link AccessDeniedHandler} that
+ * writes OAuth 2.0 error responses rendered in advance. Unlike
+ * {@link org.springframework.security.oauth2.provider.error.OAuth2AuthenticationEntryPoint}
+ * it doesn't use message converters, so the response doesn't contain the
+ * error description.
+ *
+ * <ul>
+ *     <li>401 with bare <tt>WWW-Authenticate: Bearer</tt> and no body when
+ *         no token has been provided (RFC 6750, section 3.1),</li>
+ *     <li>status and error code of the {@link OAuth2Exception} that has
+ *         caused the authentication error, unless it's an invalid token;
+ *         e.g. 503 <tt>temporarily_unavailable</tt> when the token cannot be
+ *         validated right now,</li>
+ *     <li>401 with <tt>error="invalid_token"</tt> for other authentication errors,</li>
+ *     <li>403 with <tt>error="access_denied"</tt> when access is denied.</li>
+ * </ul>
+ *
+ * <p>The bodies and headers of all the error codes defined by RFC 6749 and
+ * RFC 6750 are rendered in the constructor; only an unknown error code
+ * of a custom {@link OAuth2Exception} is rendered per response.</p>
+ */
+public class PrerenderedErrorHandler implements AuthenticationEntryPoint, AccessDeniedHandler {
+
+    private static final String WWW_AUTHENTICATE = "WWW-Authenticate";
+
+    private static final String[] ERROR_CODES = {
+            "invalid_request", "invalid_client", "invalid_grant", "unauthorized_client",
+            "unsupported_grant_type", "unsupported_response_type", "invalid_scope", "insufficient_scope",
+            "invalid_token", "redirect_uri_mismatch", "access_denied", "server_error", "temporarily_unavailable"
+    };
+
+    private final String unauthorizedHeader;
+    private final Map<String, byte[]> bodies = new HashMap<>();
+    private final Map<String, String> headers = new HashMap<>();
+
+
+    public PrerenderedErrorHandler() {
+        this("oauth");
+    }
+
+    /**
+     * @param realm The realm name to put into the WWW-Authenticate header.
+     */
+    public PrerenderedErrorHandler(String realm) {
+        this.unauthorizedHeader = "Bearer realm=\"" + realm + "\"";
+
+        for (String error : ERROR_CODES) {
+            bodies.put(error, JsonErrorResponses.render(error));
+            headers.put(error, errorHeader(error));
+        }
+    }
+
+
+    public void commence(HttpServletRequest request, HttpServletResponse response, AuthenticationException ex)
+            throws IOException, ServletException {
+
+        // OAuth2AuthenticationProcessingFilter wraps OAuth2Exception into BadCredentialsException
+        Throwable cause = ex.getCause();
+
+        if (ex instanceof AuthenticationCredentialsNotFoundException) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            response.setHeader(WWW_AUTHENTICATE, unauthorizedHeader);
+            response.setContentLength(0);
+
+        } else if (cause instanceof OAuth2Exception && !(cause instanceof InvalidTokenException)) {
+            OAuth2Exception error = (OAuth2Exception) cause;
+            int status = error.getHttpErrorCode();
+            String code = error.getOAuth2ErrorCode();
+
+            if (status < HttpServletResponse.SC_INTERNAL_SERVER_ERROR) {
+                String header = headers.get(code);
+                response.setHeader(WWW_AUTHENTICATE, header != null ? header : errorHeader(code));
+            }
+            byte[] body = bodies.get(code);
+            JsonErrorResponses.write(response, status, body != null ? body : JsonErrorResponses.render(code));
+
+        } else {
+            response.setHeader(WWW_AUTHENTICATE, headers.get("invalid_token"));
+            JsonErrorResponses.write(response, HttpServletResponse.SC_UNAUTHORIZED, bodies.get("invalid_token"));
+        }
+    }
+
+    public void handle(HttpServletRequest request, HttpServletResponse response, AccessDeniedException ex)
+            throws IOException, ServletException {
+
+        JsonErrorResponses.write(response, HttpServletResponse.SC_FORBIDDEN, bodies.get("access_denied"));
+    }
+
+
+    private String errorHeader(String error) {
+        return unauthorizedHeader + ", error=\"" + JsonErrorResponses.escape(error) + "\"";
+    }
+}
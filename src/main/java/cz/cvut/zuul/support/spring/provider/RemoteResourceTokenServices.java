@@ -27,26 +27,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Required;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.client.OAuth2RestTemplate;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
-import org.springframework.security.oauth2.provider.AuthorizationRequest;
-import org.springframework.security.oauth2.provider.BaseClientDetails;
-import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
 import org.springframework.util.Assert;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import java.util.HashSet;
-import java.util.Set;
-
-import static java.util.Arrays.asList;
+import static cz.cvut.zuul.support.spring.provider.TokenValidationListener.Outcome;
 
 
 /**
@@ -63,14 +58,23 @@ public class RemoteResourceTokenServices implements ResourceServerTokenServices,
 
     private static final Logger LOG = LoggerFactory.getLogger(RemoteResourceTokenServices.class);
 
-    private static final GrantedAuthority DEFAULT_USER_AUTHORITY = new SimpleGrantedAuthority("ROLE_USER");
     private static final String AGE_HEADER = "Age";
+    private static final long WARM_UP_RETRY_DELAY = 5000;
+
+    private final TokenInfoAuthenticationConverter authenticationConverter = new TokenInfoAuthenticationConverter();
 
-    private String tokenInfoEndpointUrl;
+    private volatile String tokenInfoEndpointUrl;
     private String tokenParameterName = "token";
     private RestTemplate restTemplate;
     private boolean decorateErrorHandler = true;
+    private String probeToken;
+    private int warmUpIterations = 1;
+    private TokenValidationListener validationListener;
+    private RevocationFeed revocationFeed;
+    private SignedTokenInfoCodec tokenInfoCodec;
+    private TokenServicesTuning tuning;
 
+    private volatile boolean ready = true;
 
 
     public void afterPropertiesSet() {
@@ -80,72 +84,213 @@ public class RemoteResourceTokenServices implements ResourceServerTokenServices,
         if (decorateErrorHandler) {
             restTemplate.setErrorHandler(new TokenValidationErrorHandler(restTemplate.getErrorHandler()));
         }
-        //add query parameter with placeholder for token value
-        tokenInfoEndpointUrl = UriComponentsBuilder.fromUriString(tokenInfoEndpointUrl)
-                .queryParam(tokenParameterName, "{value}")
-                .build().toUriString();
+        tokenInfoEndpointUrl = withTokenParameter(tokenInfoEndpointUrl);
     }
 
 
     public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException {
-        LOG.debug("Verifying access token {} on authorization server: {}", accessToken, tokenInfoEndpointUrl);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Verifying access token {} on authorization server: {}",
+                    TokenFingerprint.of(accessToken), tokenInfoEndpointUrl);
+        }
 
-        TokenInfo tokenInfo = requestTokenInfo(accessToken);
+        long startTime = System.nanoTime();
+        ResponseEntity<TokenInfo> response = null;
+        Outcome outcome = Outcome.ERROR;
+        try {
+            response = tokenInfoCodec != null ? decodePropagatedTokenInfo(accessToken) : null;
+            if (response == null) {
+                response = requestTokenInfo(accessToken);
+            }
+            TokenInfo tokenInfo = response.getBody();
 
-        LOG.debug("Server returned: {}", tokenInfo);
+            LOG.debug("Server returned token info for token {}", TokenFingerprint.of(accessToken));
 
-        Assert.state(tokenInfo.getClientId() != null, "Client id must be present in response from auth server");
+            assertNotExpired(response, accessToken);
+            OAuth2Authentication authentication = authenticationConverter.convert(tokenInfo);
 
-        AuthorizationRequest clientAuthentication = createClientAuthentication(tokenInfo);
-        Authentication userAuthentication = createUserAuthentication(tokenInfo);
+            if (tokenInfoCodec != null && TokenInfoPropagation.isActive()) {
+                // encoded only when it's attached to a downstream request
+                TokenInfoPropagation.setOutgoing(tokenInfoCodec, tokenInfo, accessToken);
+            }
 
-        return new OAuth2Authentication(clientAuthentication, userAuthentication);
+            outcome = Outcome.VALID;
+            return authentication;
+
+        } catch (InvalidTokenException ex) {
+            outcome = Outcome.INVALID_TOKEN;
+            throw ex;
+        } catch (IllegalStateException ex) {
+            outcome = Outcome.INVALID_RESPONSE;
+            throw ex;
+        } finally {
+            if (validationListener != null) {
+                notifyListener(accessToken, response, outcome, System.nanoTime() - startTime);
+            }
+        }
     }
 
     public OAuth2AccessToken readAccessToken(String accessToken) {
         throw new UnsupportedOperationException("Not supported: read access token");
     }
 
+    /**
+     * Prepares this service for the incoming traffic: obtains an access
+     * token for the TokenInfo Endpoint (when secured with OAuth) and then
+     * validates the {@linkplain #setProbeToken(String) probe token} to open
+     * connections and initialize the whole validation path. The probe token
+     * doesn't need to be valid, an invalid token response is fine as well.
+     * Validations of the probe token are not reported to the
+     * {@linkplain #setValidationListener(TokenValidationListener) listener}.
+     *
+     * <p>The service is {@linkplain #isReady() ready} when this method
+     * completes successfully.</p>
+     *
+     * @return <tt>true</tt> if the warm-up was successful.
+     */
+    public boolean warmUp() {
+        ready = false;
+        try {
+            if (restTemplate instanceof OAuth2RestTemplate) {
+                ((OAuth2RestTemplate) restTemplate).getAccessToken();
+            }
+            for (int i = 0; probeToken != null && i < warmUpIterations; i++) {
+                try {
+                    authenticationConverter.convert(requestTokenInfo(probeToken).getBody());
+                } catch (InvalidTokenException | IllegalStateException ex) {
+                    LOG.trace("Probe token is not valid: {}", ex.getMessage());
+                }
+            }
+            ready = true;
+            LOG.info("Warm-up of token services has been completed");
 
-    private AuthorizationRequest createClientAuthentication(TokenInfo tokenInfo) {
-        DefaultAuthorizationRequest auth = new DefaultAuthorizationRequest(tokenInfo.getClientId(), tokenInfo.getScope());
+        } catch (RuntimeException ex) {
+            LOG.warn("Warm-up of token services has failed", ex);
+        }
+        return ready;
+    }
 
-        if (!tokenInfo.getAudience().isEmpty() || !tokenInfo.getClientAuthorities().isEmpty()) {
-            BaseClientDetails details = new BaseClientDetails();
+    /**
+     * Marks the service as not {@linkplain #isReady() ready} until
+     * {@link #warmUp()} is called and succeeds.
+     */
+    void requireWarmUp() {
+        ready = false;
+    }
 
-            details.setClientId(tokenInfo.getClientId());
-            details.setResourceIds(tokenInfo.getAudience());
-            details.setAuthorities(tokenInfo.getClientAuthorities());
+    /**
+     * Runs {@link #warmUp()} in a background thread, repeatedly until it
+     * succeeds. The service is not {@linkplain #isReady() ready} meanwhile.
+     */
+    public void warmUpAsync() {
+        ready = false;
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (!warmUp()) {
+                        Thread.sleep(WARM_UP_RETRY_DELAY);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "token-services-warm-up");
 
-            auth.addClientDetails(details);
-            auth.setApproved(true);
-        }
-        return auth;
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Changes URL of the TokenInfo Endpoint of the initialized service;
+     * subsequent validations use the new URL.
+     *
+     * @param tokenInfoEndpointUrl URL of the TokenInfo Endpoint
+     */
+    public void changeTokenInfoEndpointUrl(String tokenInfoEndpointUrl) {
+        Assert.hasText(tokenInfoEndpointUrl, "tokenInfoEndpointUrl must not be blank");
+        this.tokenInfoEndpointUrl = withTokenParameter(tokenInfoEndpointUrl);
+    }
+
+    /**
+     * @return The handle for changing parameters of this service at
+     *         runtime, or <tt>null</tt> if it was not created by
+     *         {@link RemoteResourceTokenServicesBuilder}.
+     */
+    public TokenServicesTuning getTuning() {
+        return tuning;
     }
 
-    private Authentication createUserAuthentication(TokenInfo tokenInfo) {
-        if (tokenInfo.isClientOnly()) return null;
+    /**
+     * @return <tt>false</tt> when the warm-up has been requested and not
+     *         yet completed, <tt>true</tt> otherwise.
+     */
+    public boolean isReady() {
+        return ready;
+    }
 
-        Set<GrantedAuthority> authorities = tokenInfo.getUserAuthorities();
-        if (authorities.isEmpty()) {
-            // User authorities had better not be empty or we might mistake user for unauthenticated
-            authorities = new HashSet<>(asList(DEFAULT_USER_AUTHORITY));
+
+    private String withTokenParameter(String url) {
+        //add query parameter with placeholder for token value
+        return UriComponentsBuilder.fromUriString(url)
+                .queryParam(tokenParameterName, "{value}")
+                .build().toUriString();
+    }
+
+    private ResponseEntity<TokenInfo> requestTokenInfo(String token) {
+        // possibly revoked token must not be served from the cache
+        if (revocationFeed != null && revocationFeed.mightBeRevoked(token)) {
+            return restTemplate.exchange(tokenInfoEndpointUrl, HttpMethod.GET,
+                    RevocationFeed.NO_CACHE_REQUEST, TokenInfo.class, token);
         }
-        return new UsernamePasswordAuthenticationToken(tokenInfo.getUserId(), null, authorities);
+        return restTemplate.getForEntity(tokenInfoEndpointUrl, TokenInfo.class, token);
     }
 
-    private TokenInfo requestTokenInfo(String token) {
-        ResponseEntity<TokenInfo> response = restTemplate.getForEntity(tokenInfoEndpointUrl, TokenInfo.class, token);
+    private ResponseEntity<TokenInfo> decodePropagatedTokenInfo(String token) {
+        String value = TokenInfoPropagation.getIncoming();
+        if (value == null) {
+            return null;
+        }
+        // possibly revoked token must be validated on the authorization server
+        if (revocationFeed != null && revocationFeed.mightBeRevoked(token)) {
+            LOG.debug("Ignoring propagated token info of possibly revoked token");
+            return null;
+        }
+        TokenInfo tokenInfo = tokenInfoCodec.decode(value, token);
+
+        if (tokenInfo == null) {
+            LOG.debug("Ignoring invalid or expired propagated token info");
+            return null;
+        }
+        // it's reported as a cached response to the listener
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(AGE_HEADER, "0");
+
+        return new ResponseEntity<>(tokenInfo, headers, HttpStatus.OK);
+    }
 
+    private void assertNotExpired(ResponseEntity<TokenInfo> response, String token) {
         // if token was in cache, then we must ensure if it's still valid
         if (response.getHeaders().containsKey(AGE_HEADER)) {
             long age = Long.parseLong(response.getHeaders().getFirst(AGE_HEADER));
 
             if (response.getBody().getExpiresIn() < age) {
-                throw new InvalidClientTokenException("Access token has expired: " + token);
+                throw new InvalidClientTokenException("Access token has expired: " + TokenFingerprint.of(token));
             }
         }
-        return response.getBody();
+    }
+
+    private void notifyListener(String token, ResponseEntity<TokenInfo> response, Outcome outcome, long duration) {
+        try {
+            if (response != null) {
+                validationListener.tokenValidated(token, response.getBody(), outcome,
+                        response.getHeaders().containsKey(AGE_HEADER), response.getHeaders().getContentLength(), duration);
+            } else {
+                validationListener.tokenValidated(token, null, outcome, false, -1, duration);
+            }
+        } catch (RuntimeException ex) {
+            LOG.warn("TokenValidationListener has thrown an exception", ex);
+        }
     }
 
 
@@ -194,4 +339,62 @@ public class RemoteResourceTokenServices implements ResourceServerTokenServices,
     public void setDecorateErrorHandler(boolean decorateErrorHandler) {
         this.decorateErrorHandler = decorateErrorHandler;
     }
+
+    /**
+     * When set, scope of the loaded authentications is encoded as
+     * a {@link ScopeSet} using the given dictionary. Use the same dictionary
+     * for {@link OAuth2ResourceServerConfigurer#scopeDictionary(ScopeDictionary)}
+     * to check scopes by a bit test.
+     */
+    public void setScopeDictionary(ScopeDictionary scopeDictionary) {
+        authenticationConverter.setScopeDictionary(scopeDictionary);
+    }
+
+    /**
+     * The listener to be notified about each validation, e.g.
+     * {@link SlowValidationLogger}.
+     */
+    public void setValidationListener(TokenValidationListener validationListener) {
+        this.validationListener = validationListener;
+    }
+
+    /**
+     * The feed of revoked tokens. Tokens that may be revoked are validated
+     * with <tt>Cache-Control: no-cache</tt>, i.e. bypassing the HTTP cache
+     * when it's decorated with {@link CacheBypassInterceptor}.
+     */
+    public void setRevocationFeed(RevocationFeed revocationFeed) {
+        this.revocationFeed = revocationFeed;
+    }
+
+    /**
+     * When set, a signed token info propagated by an upstream resource
+     * server (see {@link TokenInfoPropagationFilter}) is accepted instead
+     * of validating the token on the authorization server, and the token
+     * info of each validated token is signed to be propagated to downstream
+     * servers. The propagated token info of a token that {@linkplain
+     * RevocationFeed#mightBeRevoked(String) might be revoked} is ignored.
+     */
+    public void setTokenInfoCodec(SignedTokenInfoCodec tokenInfoCodec) {
+        this.tokenInfoCodec = tokenInfoCodec;
+    }
+
+    void setTuning(TokenServicesTuning tuning) {
+        this.tuning = tuning;
+    }
+
+    /**
+     * An access token to be validated during the {@linkplain #warmUp() warm-up}.
+     */
+    public void setProbeToken(String probeToken) {
+        this.probeToken = probeToken;
+    }
+
+    /**
+     * How many times to validate the probe token during the warm-up.
+     * Default is 1.
+     */
+    public void setWarmUpIterations(int warmUpIterations) {
+        this.warmUpIterations = warmUpIterations;
+    }
 }
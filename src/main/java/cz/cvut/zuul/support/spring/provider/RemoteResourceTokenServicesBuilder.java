@@ -23,11 +23,17 @@
  */
 package cz.cvut.zuul.support.spring.provider;
 
+import cz.cvut.zuul.support.spring.client.HttpTransportBuilder;
+import cz.cvut.zuul.support.spring.client.PooledClientHttpRequestFactory;
 import cz.jirutka.spring.http.client.cache.CachingHttpRequestInterceptor;
 import cz.jirutka.spring.http.client.cache.SoftReferenceSynchronizedLruCache;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.cache.Cache;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.security.config.annotation.SecurityBuilder;
 import org.springframework.security.oauth2.client.OAuth2RestTemplate;
 import org.springframework.security.oauth2.client.resource.OAuth2ProtectedResourceDetails;
@@ -37,6 +43,7 @@ import org.springframework.util.Assert;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.Arrays;
+import java.util.concurrent.Executor;
 
 import static lombok.AccessLevel.NONE;
 
@@ -46,9 +53,13 @@ import static lombok.AccessLevel.NONE;
 @Setter @Accessors(fluent=true)
 public final class RemoteResourceTokenServicesBuilder implements SecurityBuilder<RemoteResourceTokenServices> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(RemoteResourceTokenServicesBuilder.class);
+
     private final RemoteResourceTokenServicesBuilder parent = this;
     private final ResourceDetailsBuilder resourceBuilder = new ResourceDetailsBuilder();
     private final CachingBuilder cachingBuilder = new CachingBuilder();
+    private final WarmUpBuilder warmUpBuilder = new WarmUpBuilder();
+    private final RevocationFeedBuilder revocationBuilder = new RevocationFeedBuilder();
 
     /**
      * URL of the resource at OAuth2 authorization server that will be used to
@@ -68,6 +79,16 @@ public final class RemoteResourceTokenServicesBuilder implements SecurityBuilder
      */
     private RestTemplate restTemplate;
 
+    /**
+     * The HTTP transport to use for the TokenInfo Endpoint and (when
+     * {@link #secured()}) the token endpoint, e.g. a shared
+     * {@link cz.cvut.zuul.support.spring.client.PooledClientHttpRequestFactory PooledClientHttpRequestFactory}.
+     * When not specified, the default one of the RestTemplate is used.
+     * When specified along with the {@link #restTemplate(RestTemplate) restTemplate},
+     * it replaces the request factory of the template.
+     */
+    private ClientHttpRequestFactory requestFactory;
+
     /**
      * With default setting, this class decorates {@linkplain org.springframework.web.client.ResponseErrorHandler}
      * from the given RestTemplate with our {@link TokenValidationErrorHandler}.
@@ -77,6 +98,56 @@ public final class RemoteResourceTokenServicesBuilder implements SecurityBuilder
      */
     private boolean decorateErrorHandler = true;
 
+    /**
+     * The dictionary to encode scopes of tokens into {@link ScopeSet}s.
+     * Not used by default.
+     *
+     * @see RemoteResourceTokenServices#setScopeDictionary(ScopeDictionary)
+     */
+    private ScopeDictionary scopeDictionary;
+
+    /**
+     * The listener to be notified about each validation.
+     *
+     * @see RemoteResourceTokenServices#setValidationListener(TokenValidationListener)
+     */
+    private TokenValidationListener validationListener;
+
+    /**
+     * Whether to ask the TokenInfo endpoint for gzip compressed responses.
+     * Default is <tt>false</tt>.
+     *
+     * @see GzipDecodingInterceptor
+     */
+    private boolean compression = false;
+
+    /**
+     * Whether to ask the TokenInfo endpoint for responses in the binary
+     * Smile format (with fallback to JSON). This requires the
+     * <tt>jackson-smile</tt> module. Default is <tt>false</tt>.
+     *
+     * @see SmileHttpMessageConverter
+     */
+    private boolean binaryEncoding = false;
+
+    /**
+     * The minimal time in milliseconds that must remain until the
+     * {@link RequestDeadline} to request the TokenInfo endpoint (when
+     * the response is not cached); otherwise {@link DeadlineExceededException}
+     * is thrown. Negative value disables this check. Default is -1.
+     *
+     * @see DeadlineInterceptor
+     */
+    private long minRemainingTime = -1;
+
+    /**
+     * The codec of signed token info propagated between resource servers.
+     * Requires {@link TokenInfoPropagationFilter} in the filter chain.
+     *
+     * @see RemoteResourceTokenServices#setTokenInfoCodec(SignedTokenInfoCodec)
+     */
+    private SignedTokenInfoCodec tokenInfoCodec;
+
 
     /**
      * Configure OAuth 2.0 parameters for a secured TokenInfo endpoint.
@@ -94,6 +165,26 @@ public final class RemoteResourceTokenServicesBuilder implements SecurityBuilder
         return cachingBuilder;
     }
 
+    /**
+     * Configure warm-up of the built services.
+     *
+     * @see RemoteResourceTokenServices#warmUp()
+     */
+    public WarmUpBuilder warmUp() {
+        warmUpBuilder.enable = true;
+        return warmUpBuilder;
+    }
+
+    /**
+     * Configure a feed of revoked tokens, so they're not validated from
+     * the HTTP cache.
+     *
+     * @see RevocationFeed
+     */
+    public RevocationFeedBuilder revocationFeed() {
+        return revocationBuilder;
+    }
+
     public RemoteResourceTokenServices build() {
         if (resourceBuilder.clientId != null && restTemplate != null) {
             throw new IllegalStateException("secured() cannot be used along with custom restTemplate");
@@ -103,9 +194,39 @@ public final class RemoteResourceTokenServicesBuilder implements SecurityBuilder
             restTemplate = resourceBuilder.clientId != null
                     ? new OAuth2RestTemplate(resourceBuilder.buildResourceDetails())
                     : new RestTemplate();
+
+        } else if (requestFactory != null
+                && !(restTemplate.getRequestFactory() instanceof SimpleClientHttpRequestFactory)) {
+            LOG.warn("Replacing request factory {} of the given RestTemplate with {}",
+                    restTemplate.getRequestFactory(), requestFactory);
+        }
+        if (requestFactory != null) {
+            restTemplate.setRequestFactory(requestFactory);
+
+            if (restTemplate instanceof OAuth2RestTemplate) {
+                ((OAuth2RestTemplate) restTemplate).setAccessTokenProvider(
+                        HttpTransportBuilder.createAccessTokenProvider(requestFactory));
+            }
         }
+        CacheBypassInterceptor cacheSwitch = null;
         if (!cachingBuilder.disable) {
-            restTemplate.getInterceptors().add(cachingBuilder.buildInterceptor());
+            cacheSwitch = new CacheBypassInterceptor(cachingBuilder.buildInterceptor());
+            restTemplate.getInterceptors().add(cacheSwitch);
+
+            if (cachingBuilder.revalidate) {
+                restTemplate.getInterceptors().add(cachingBuilder.buildRevalidationInterceptor());
+            }
+        }
+        restTemplate.getMessageConverters().add(0, new TokenInfoHttpMessageConverter());
+
+        if (binaryEncoding) {
+            restTemplate.getMessageConverters().add(0, SmileHttpMessageConverter.forTokenInfo());
+        }
+        if (minRemainingTime >= 0) {
+            restTemplate.getInterceptors().add(new DeadlineInterceptor(minRemainingTime));
+        }
+        if (compression) {
+            restTemplate.getInterceptors().add(new GzipDecodingInterceptor());
         }
 
         RemoteResourceTokenServices services = new RemoteResourceTokenServices();
@@ -113,11 +234,50 @@ public final class RemoteResourceTokenServicesBuilder implements SecurityBuilder
         services.setTokenParameterName(tokenParameterName);
         services.setRestTemplate(restTemplate);
         services.setDecorateErrorHandler(decorateErrorHandler);
+        services.setScopeDictionary(scopeDictionary);
+        services.setValidationListener(validationListener);
+        services.setTokenInfoCodec(tokenInfoCodec);
+
+        RevocationFeed revocationFeed = null;
+        if (revocationBuilder.feedUri != null) {
+            revocationFeed = revocationBuilder.buildFeed();
+            services.setRevocationFeed(revocationFeed);
+        }
         services.afterPropertiesSet();
 
+        if (revocationFeed != null) {
+            revocationFeed.afterPropertiesSet();
+        }
+
+        PooledClientHttpRequestFactory pool = requestFactory instanceof PooledClientHttpRequestFactory
+                ? (PooledClientHttpRequestFactory) requestFactory : null;
+        services.setTuning(new TokenServicesTuning(
+                services, cachingBuilder.swappableCache, cachingBuilder.validatorsCache, cacheSwitch, pool));
+
+        if (warmUpBuilder.enable) {
+            services.setProbeToken(warmUpBuilder.probeToken);
+            services.setWarmUpIterations(warmUpBuilder.iterations);
+
+            // never block build(), a blocking warm-up is up to the caller
+            if (warmUpBuilder.async) {
+                services.warmUpAsync();
+            } else {
+                services.requireWarmUp();
+            }
+        }
         return services;
     }
 
+    /**
+     * @param executor The executor to validate tokens on, preferably with
+     *                 a bounded queue.
+     * @return Non-blocking token services that delegate to the configured
+     *         {@code RemoteResourceTokenServices}.
+     */
+    public AsyncRemoteResourceTokenServices buildAsync(Executor executor) {
+        return new AsyncRemoteResourceTokenServices(build(), executor);
+    }
+
 
 
     @Setter @Accessors(fluent=true)
@@ -201,6 +361,44 @@ public final class RemoteResourceTokenServicesBuilder implements SecurityBuilder
          */
         private int capacity = 64;
 
+        /**
+         * Specify capacity of a default in-memory cache in bytes instead of
+         * number of responses. When greater than zero, then {@link #capacity(int)}
+         * is ignored.
+         *
+         * @see WeighedLruCache
+         */
+        private long maxBytes = 0;
+
+        /**
+         * Specify the upper limit (in bytes) up to which the capacity given
+         * by {@link #maxBytes(long)} may be auto-tuned based on the observed
+         * misses. When not greater than <tt>maxBytes</tt>, the capacity is
+         * fixed; it never decreases below a quarter of <tt>maxBytes</tt>.
+         */
+        private long maxBytesLimit = 0;
+
+        /**
+         * Specify how to weigh cached responses when {@link #maxBytes(long)}
+         * is given. The default is {@link HttpCacheWeigher}.
+         */
+        private WeighedLruCache.Weigher weigher = new HttpCacheWeigher();
+
+        /**
+         * Specify the maximal size of a response body (in bytes) to be
+         * cached. The default is 2048.
+         */
+        private int maxResponseSize = 2048;
+
+        /**
+         * Whether to revalidate stale responses with <tt>If-None-Match</tt>
+         * and <tt>If-Modified-Since</tt> instead of fetching them again.
+         * The default is <tt>false</tt>.
+         *
+         * @see ConditionalRevalidationInterceptor
+         */
+        private boolean revalidate = false;
+
 
         /**
          * Disable built-in HTTP caching.
@@ -218,11 +416,105 @@ public final class RemoteResourceTokenServicesBuilder implements SecurityBuilder
             return and().build();
         }
 
+        private @Setter(NONE) SwappableCache swappableCache;
+        private @Setter(NONE) Cache validatorsCache;
+
         private CachingHttpRequestInterceptor buildInterceptor() {
+            if (cache == null && maxBytes > 0) {
+                cache = maxBytesLimit > maxBytes
+                        ? new WeighedLruCache("tokens-http-cache", maxBytes, Math.max(maxBytes / 4, 1), maxBytesLimit, weigher)
+                        : new WeighedLruCache("tokens-http-cache", maxBytes, weigher);
+            }
             if (cache == null) {
                 cache = new SoftReferenceSynchronizedLruCache("tokens-http-cache", capacity);
             }
-            return new CachingHttpRequestInterceptor(cache, false, 2048);
+            swappableCache = new SwappableCache(cache);
+            return new CachingHttpRequestInterceptor(swappableCache, false, maxResponseSize);
+        }
+
+        private ConditionalRevalidationInterceptor buildRevalidationInterceptor() {
+            validatorsCache = new SoftReferenceSynchronizedLruCache("tokens-http-validators", capacity);
+            return new ConditionalRevalidationInterceptor(validatorsCache, maxResponseSize);
+        }
+    }
+
+
+    @Setter @Accessors(fluent=true)
+    public final class WarmUpBuilder {
+
+        private @Setter(NONE) boolean enable = false;
+
+        /**
+         * An access token to validate during the warm-up. It doesn't need
+         * to be valid, it's used just to initialize the validation path.
+         */
+        private String probeToken;
+
+        /**
+         * How many times to validate the probe token. The default is 1.
+         */
+        private int iterations = 1;
+
+        /**
+         * Whether to start the warm-up in a background thread (and retry
+         * until it succeeds) from {@link #build()}. The default is
+         * <tt>true</tt>. When <tt>false</tt>, the built services are not
+         * {@linkplain RemoteResourceTokenServices#isReady() ready} until you
+         * call {@link RemoteResourceTokenServices#warmUp()} from a lifecycle
+         * hook, e.g. a <tt>@PostConstruct</tt> method or
+         * <tt>SmartLifecycle#start()</tt>, and fall back to
+         * {@link RemoteResourceTokenServices#warmUpAsync()} when it fails.
+         */
+        private boolean async = true;
+
+
+        public RemoteResourceTokenServicesBuilder and() {
+            return parent;
+        }
+
+        public RemoteResourceTokenServices build() {
+            return and().build();
+        }
+    }
+
+
+    @Setter @Accessors(fluent=true)
+    public final class RevocationFeedBuilder {
+
+        /**
+         * URL of the feed of revoked tokens.
+         */
+        private String feedUri;
+
+        /**
+         * How often to sync the feed, in seconds. The default is 30.
+         */
+        private long syncInterval = 30;
+
+        /**
+         * The desired probability of false positives. The default is 0.001.
+         */
+        private double falsePositiveProbability = 0.001;
+
+
+        public RemoteResourceTokenServicesBuilder and() {
+            return parent;
+        }
+
+        public RemoteResourceTokenServices build() {
+            return and().build();
+        }
+
+        private RevocationFeed buildFeed() {
+            // own template, the validation one has error handler, cache and interceptors for TokenInfo
+            RestTemplate restTemplate = requestFactory != null
+                    ? new RestTemplate(requestFactory) : new RestTemplate();
+
+            RevocationFeed feed = new RevocationFeed(restTemplate, feedUri);
+            feed.setFalsePositiveProbability(falsePositiveProbability);
+            feed.setSyncInterval(syncInterval);
+
+            return feed;
         }
     }
 }
@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+/**
+ * Holder of the deadline of the current request, bound to the current
+ * thread. It's set by {@link RequestDeadlineFilter} and used to bound time
+ * spent on remote token validation.
+ *
+ * @see DeadlineInterceptor
+ * @see cz.cvut.zuul.support.spring.client.PooledClientHttpRequestFactory
+ */
+public final class RequestDeadline {
+
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+
+    private RequestDeadline() {}
+
+
+    /**
+     * Sets the deadline of the current request.
+     *
+     * @param timeout The time budget in milliseconds from now.
+     */
+    public static void set(long timeout) {
+        DEADLINE.set(System.nanoTime() + timeout * 1000000L);
+    }
+
+    /**
+     * Removes the deadline of the current request.
+     */
+    public static void clear() {
+        DEADLINE.remove();
+    }
+
+    /**
+     * @return Whether the current request has a deadline.
+     */
+    public static boolean isSet() {
+        return DEADLINE.get() != null;
+    }
+
+    /**
+     * @return The remaining time in milliseconds (may be negative), or
+     *         {@link Long#MAX_VALUE} if there's no deadline.
+     */
+    public static long remainingMillis() {
+        Long deadline = DEADLINE.get();
+        return deadline != null ? (deadline - System.nanoTime()) / 1000000L : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * Filter that sets the {@link RequestDeadline} of each request, either
+ * from the time budget in the {@link #setHeaderName(String) header} of
+ * the request (in milliseconds), or the {@link #setDefaultTimeout(long)
+ * default timeout}, whichever is shorter.
+ *
+ * @see OAuth2ResourceServerConfigurer#requestDeadline(RequestDeadlineFilter)
+ */
+public class RequestDeadlineFilter extends GenericFilterBean {
+
+    private String headerName = "X-Request-Timeout";
+    private long defaultTimeout = 0;
+
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        long timeout = resolveTimeout((HttpServletRequest) request);
+
+        // don't override the deadline on nested dispatches
+        if (timeout <= 0 || RequestDeadline.isSet()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        RequestDeadline.set(timeout);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+
+
+    private long resolveTimeout(HttpServletRequest request) {
+        String header = headerName != null ? request.getHeader(headerName) : null;
+
+        if (header != null) {
+            try {
+                long timeout = Long.parseLong(header.trim());
+                if (timeout > 0) {
+                    return defaultTimeout > 0 ? Math.min(timeout, defaultTimeout) : timeout;
+                }
+            } catch (NumberFormatException ex) {
+                logger.debug("Ignoring invalid " + headerName + " header: " + header);
+            }
+        }
+        return defaultTimeout;
+    }
+
+
+    //////////  Accessors  //////////
+
+    /**
+     * Name of the request header with the time budget in milliseconds, or
+     * <tt>null</tt> to ignore it. Default is <tt>X-Request-Timeout</tt>.
+     */
+    public void setHeaderName(String headerName) {
+        this.headerName = headerName;
+    }
+
+    /**
+     * The time budget in milliseconds of requests without the header, or
+     * zero for no deadline. Default is 0.
+     */
+    public void setDefaultTimeout(long defaultTimeout) {
+        this.defaultTimeout = defaultTimeout;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client of a feed of revoked access tokens that keeps them in a Bloom
+ * filter, so {@link RemoteResourceTokenServices} can quickly find out
+ * which tokens must not be validated from the cache.
+ *
+ * <p>The feed is expected to return a JSON array of hex-encoded SHA-256
+ * digests of the revoked tokens that have not expired yet. It's fetched
+ * periodically and the filter is rebuilt each time; when the fetch fails,
+ * the previous filter is kept. A false positive only causes the token to
+ * be validated on the authorization server.</p>
+ *
+ * @see RemoteResourceTokenServices#setRevocationFeed(RevocationFeed)
+ */
+public class RevocationFeed implements InitializingBean, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RevocationFeed.class);
+
+    static final HttpEntity<?> NO_CACHE_REQUEST;
+
+    static {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("no-cache");
+        NO_CACHE_REQUEST = new HttpEntity<>(headers);
+    }
+
+    private final RestTemplate restTemplate;
+    private final String feedUrl;
+
+    private double falsePositiveProbability = 0.001;
+    private long syncInterval = 30;
+    private ScheduledExecutorService scheduler;
+
+    private volatile BloomFilter filter;
+
+
+    /**
+     * @param restTemplate The RestTemplate to fetch the feed with; it should
+     *                     not be the one used for token validation, so its
+     *                     error handler and interceptors don't apply.
+     * @param feedUrl URL of the feed.
+     */
+    public RevocationFeed(RestTemplate restTemplate, String feedUrl) {
+        Assert.notNull(restTemplate, "restTemplate must not be null");
+        Assert.hasText(feedUrl, "feedUrl must not be empty");
+
+        this.restTemplate = restTemplate;
+        this.feedUrl = feedUrl;
+    }
+
+
+    /**
+     * @param token The access token.
+     * @return <tt>false</tt> if the token is definitely not revoked (or the
+     *         feed has not been synced yet), <tt>true</tt> if it may be.
+     */
+    public boolean mightBeRevoked(String token) {
+        BloomFilter filter = this.filter;
+        return filter != null && filter.mightContain(TokenFingerprint.digest(token));
+    }
+
+    /**
+     * Fetches the feed and rebuilds the filter.
+     *
+     * @return Whether the sync has succeeded.
+     */
+    public boolean sync() {
+        String[] digests;
+        try {
+            digests = restTemplate.exchange(feedUrl, HttpMethod.GET, NO_CACHE_REQUEST, String[].class).getBody();
+        } catch (RuntimeException ex) {
+            // must not escape, it would cancel the scheduled sync
+            LOG.warn("Failed to fetch revocation feed from {}: {}", feedUrl, ex.getMessage());
+            return false;
+        }
+        if (digests == null) {
+            digests = new String[0];
+        }
+        BloomFilter filter = new BloomFilter(digests.length, falsePositiveProbability);
+        for (String digest : digests) {
+            try {
+                filter.put(decodeHex(digest));
+            } catch (IllegalArgumentException ex) {
+                // a malformed entry must not discard the others
+                LOG.warn("Skipping malformed entry of revocation feed: {}", ex.getMessage());
+            }
+        }
+        this.filter = filter;
+
+        LOG.debug("Synced {} revoked tokens from {}", digests.length, feedUrl);
+        return true;
+    }
+
+    /**
+     * Starts the periodic sync with the {@link #setSyncInterval(long) syncInterval},
+     * unless it's been already started.
+     */
+    public synchronized void afterPropertiesSet() {
+        if (scheduler == null && syncInterval > 0) {
+            start(syncInterval);
+        }
+    }
+
+    /**
+     * Syncs the feed now and then periodically in a background thread.
+     *
+     * @param interval The sync interval in seconds.
+     */
+    public synchronized void start(long interval) {
+        Assert.state(scheduler == null, "Already started");
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "revocation-feed-sync");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    sync();
+                } catch (RuntimeException ex) {
+                    // must not escape, it would cancel the scheduled sync
+                    LOG.error("Failed to sync revocation feed from {}", feedUrl, ex);
+                }
+            }
+        }, 0, interval, TimeUnit.SECONDS);
+    }
+
+    public synchronized void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * How often to sync the feed when started by {@link #afterPropertiesSet()},
+     * in seconds; zero or negative to not start it. Default is 30.
+     */
+    public void setSyncInterval(long syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * The desired probability of false positives. Default is 0.001.
+     */
+    public void setFalsePositiveProbability(double falsePositiveProbability) {
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+
+    private static byte[] decodeHex(String hex) {
+        Assert.isTrue(hex != null && hex.length() == 64, "Expected hex-encoded SHA-256 digest, but got: " + hex);
+
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.util.Assert;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * {@link AuditSink} that appends records as tab-separated lines to a file.
+ * When the file exceeds the given size, it's renamed to <tt>name.1</tt>
+ * (older files are shifted up to <tt>name.N</tt>) and a new one is started.
+ *
+ * <p>Columns: timestamp, token fingerprint, client ID, user ID, outcome,
+ * cached, latency in microseconds; missing values are written as <tt>-</tt>.</p>
+ */
+public class RollingFileAuditSink implements AuditSink {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final long maxFileSize;
+    private final int maxHistory;
+
+    private Writer writer;
+    private long fileSize;
+
+
+    /**
+     * @param file The file to write to.
+     * @param maxFileSize The size in bytes when the file is rolled.
+     * @param maxHistory How many rolled files to keep.
+     */
+    public RollingFileAuditSink(File file, long maxFileSize, int maxHistory) {
+        Assert.notNull(file, "file must not be null");
+        Assert.isTrue(maxFileSize > 0, "maxFileSize must be greater than zero");
+
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxHistory = maxHistory;
+    }
+
+
+    public void write(List<AuditRecord> records) throws IOException {
+        StringBuilder sb = new StringBuilder(records.size() * 128);
+
+        for (AuditRecord record : records) {
+            sb.append(record.getTimestamp()).append('\t')
+              .append(orDash(record.getTokenFingerprint())).append('\t')
+              .append(orDash(record.getClientId())).append('\t')
+              .append(orDash(record.getUserId())).append('\t')
+              .append(record.getOutcome()).append('\t')
+              .append(record.isCached()).append('\t')
+              .append(record.getLatency()).append('\n');
+        }
+        if (writer == null || fileSize >= maxFileSize) {
+            roll();
+        }
+        String lines = sb.toString();
+        writer.write(lines);
+        writer.flush();
+        fileSize += lines.getBytes(UTF_8).length;
+    }
+
+
+    private void roll() throws IOException {
+        if (writer != null) {
+            writer.close();
+
+            for (int i = maxHistory - 1; i >= 1; i--) {
+                File older = new File(file.getPath() + "." + i);
+                if (older.exists()) {
+                    older.renameTo(new File(file.getPath() + "." + (i + 1)));
+                }
+            }
+            if (maxHistory > 0) {
+                file.renameTo(new File(file.getPath() + ".1"));
+            } else {
+                file.delete();
+            }
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8));
+        fileSize = file.length();
+    }
+
+    private static String orDash(String value) {
+        return value != null ? value : "-";
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link ResourceServerTokenServices} that dispatches access tokens from
+ * several authorization servers (issuers) to their own token services by
+ * a prefix of the token.
+ *
+ * <p>Each issuer may have a limit of concurrent validations. When it's
+ * reached, further tokens of that issuer are rejected with
+ * {@link IssuerUnavailableException} immediately, so a slow issuer can't
+ * exhaust request threads needed to validate tokens of the others. To
+ * isolate issuers completely, their token services should use separate
+ * connection pools and caches, see {@link RoutingResourceTokenServicesBuilder}.</p>
+ */
+public class RoutingResourceTokenServices implements ResourceServerTokenServices {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RoutingResourceTokenServices.class);
+
+    private final List<Issuer> issuers = new ArrayList<>();
+    private Issuer defaultIssuer;
+
+
+    /**
+     * Registers token services for tokens starting with the given prefix.
+     * Prefixes are evaluated in the order of registration.
+     *
+     * @param tokenPrefix The prefix of access tokens of the issuer.
+     * @param tokenServices The token services to validate these tokens.
+     * @param maxConcurrency The maximal number of concurrent validations,
+     *                       or zero for unlimited.
+     */
+    public void addIssuer(String tokenPrefix, ResourceServerTokenServices tokenServices, int maxConcurrency) {
+        Assert.hasText(tokenPrefix, "tokenPrefix must not be empty");
+        issuers.add(new Issuer(tokenPrefix, tokenServices, maxConcurrency));
+    }
+
+    /**
+     * Sets token services for tokens that don't match any prefix. When not
+     * set, such tokens are rejected as invalid.
+     *
+     * @param tokenServices The token services to validate these tokens.
+     * @param maxConcurrency The maximal number of concurrent validations,
+     *                       or zero for unlimited.
+     */
+    public void setDefaultIssuer(ResourceServerTokenServices tokenServices, int maxConcurrency) {
+        this.defaultIssuer = new Issuer("", tokenServices, maxConcurrency);
+    }
+
+    public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException {
+        Issuer issuer = resolveIssuer(accessToken);
+
+        if (issuer.permits != null && !issuer.permits.tryAcquire()) {
+            LOG.warn("Too many concurrent validations of tokens with prefix '{}'", issuer.tokenPrefix);
+            throw new IssuerUnavailableException("Authorization server is overloaded, try again later");
+        }
+        try {
+            return issuer.tokenServices.loadAuthentication(accessToken);
+        } finally {
+            if (issuer.permits != null) {
+                issuer.permits.release();
+            }
+        }
+    }
+
+    public OAuth2AccessToken readAccessToken(String accessToken) {
+        return resolveIssuer(accessToken).tokenServices.readAccessToken(accessToken);
+    }
+
+    /**
+     * @param tokenPrefix The prefix of the issuer, or an empty string for
+     *                    the default issuer.
+     * @return The number of validations that may be started right now for
+     *         the issuer, or <tt>-1</tt> if unlimited or there's no such
+     *         issuer.
+     */
+    public int getAvailablePermits(String tokenPrefix) {
+        Issuer issuer = "".equals(tokenPrefix) ? defaultIssuer : null;
+
+        for (Issuer candidate : issuers) {
+            if (candidate.tokenPrefix.equals(tokenPrefix)) {
+                issuer = candidate;
+                break;
+            }
+        }
+        return issuer != null && issuer.permits != null ? issuer.permits.availablePermits() : -1;
+    }
+
+
+    private Issuer resolveIssuer(String accessToken) {
+        for (Issuer issuer : issuers) {
+            if (accessToken.startsWith(issuer.tokenPrefix)) {
+                return issuer;
+            }
+        }
+        if (defaultIssuer == null) {
+            throw new InvalidTokenException("Unknown issuer of the access token");
+        }
+        return defaultIssuer;
+    }
+
+
+    private static class Issuer {
+
+        final String tokenPrefix;
+        final ResourceServerTokenServices tokenServices;
+        final Semaphore permits;
+
+        Issuer(String tokenPrefix, ResourceServerTokenServices tokenServices, int maxConcurrency) {
+            Assert.notNull(tokenServices, "tokenServices must not be null");
+
+            this.tokenPrefix = tokenPrefix;
+            this.tokenServices = tokenServices;
+            this.permits = maxConcurrency > 0 ? new Semaphore(maxConcurrency) : null;
+        }
+    }
+}
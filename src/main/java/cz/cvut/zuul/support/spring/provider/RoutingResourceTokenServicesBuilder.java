@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.security.config.annotation.SecurityBuilder;
+import org.springframework.util.Assert;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code SecurityBuilder} used to create a {@link RoutingResourceTokenServices}
+ * for multiple authorization servers. Each issuer is configured with its
+ * own {@link RemoteResourceTokenServicesBuilder}, so it gets its own
+ * RestTemplate and HTTP cache; give each of them also its own
+ * {@link RemoteResourceTokenServicesBuilder#requestFactory(org.springframework.http.client.ClientHttpRequestFactory)
+ * requestFactory} to isolate connection pools.
+ *
+ * <pre>
+ * new RoutingResourceTokenServicesBuilder()
+ *     .issuer( "zuul.", new RemoteResourceTokenServicesBuilder()
+ *             .tokenInfoEndpointUri( "https://oaas.example.org/api/v1/tokeninfo" ), 50 )
+ *     .defaultIssuer( new RemoteResourceTokenServicesBuilder()
+ *             .tokenInfoEndpointUri( "https://legacy.example.org/tokeninfo" ), 10 )
+ *     .build();
+ * </pre>
+ */
+public final class RoutingResourceTokenServicesBuilder implements SecurityBuilder<RoutingResourceTokenServices> {
+
+    private final Map<String, RemoteResourceTokenServicesBuilder> issuers = new LinkedHashMap<>();
+    private final Map<String, Integer> maxConcurrency = new LinkedHashMap<>();
+
+    private RemoteResourceTokenServicesBuilder defaultIssuer;
+    private int defaultMaxConcurrency;
+
+
+    /**
+     * Adds an issuer of access tokens with the given prefix, without
+     * a concurrency limit.
+     */
+    public RoutingResourceTokenServicesBuilder issuer(String tokenPrefix, RemoteResourceTokenServicesBuilder builder) {
+        return issuer(tokenPrefix, builder, 0);
+    }
+
+    /**
+     * Adds an issuer of access tokens with the given prefix.
+     *
+     * @param tokenPrefix The prefix of access tokens of the issuer.
+     * @param builder The builder of token services for the issuer.
+     * @param maxConcurrency The maximal number of concurrent validations,
+     *                       or zero for unlimited.
+     */
+    public RoutingResourceTokenServicesBuilder issuer(String tokenPrefix, RemoteResourceTokenServicesBuilder builder,
+                                                      int maxConcurrency) {
+        Assert.hasText(tokenPrefix, "tokenPrefix must not be empty");
+        Assert.notNull(builder, "builder must not be null");
+
+        issuers.put(tokenPrefix, builder);
+        this.maxConcurrency.put(tokenPrefix, maxConcurrency);
+        return this;
+    }
+
+    /**
+     * Sets the issuer of access tokens that don't match any prefix, without
+     * a concurrency limit.
+     */
+    public RoutingResourceTokenServicesBuilder defaultIssuer(RemoteResourceTokenServicesBuilder builder) {
+        return defaultIssuer(builder, 0);
+    }
+
+    /**
+     * Sets the issuer of access tokens that don't match any prefix.
+     *
+     * @param builder The builder of token services for the issuer.
+     * @param maxConcurrency The maximal number of concurrent validations,
+     *                       or zero for unlimited.
+     */
+    public RoutingResourceTokenServicesBuilder defaultIssuer(RemoteResourceTokenServicesBuilder builder,
+                                                             int maxConcurrency) {
+        this.defaultIssuer = builder;
+        this.defaultMaxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    public RoutingResourceTokenServices build() {
+        Assert.state(!issuers.isEmpty() || defaultIssuer != null, "At least one issuer must be specified");
+
+        RoutingResourceTokenServices services = new RoutingResourceTokenServices();
+
+        for (Map.Entry<String, RemoteResourceTokenServicesBuilder> entry : issuers.entrySet()) {
+            String prefix = entry.getKey();
+            services.addIssuer(prefix, entry.getValue().build(), maxConcurrency.get(prefix));
+        }
+        if (defaultIssuer != null) {
+            services.setDefaultIssuer(defaultIssuer.build(), defaultMaxConcurrency);
+        }
+        return services;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dictionary that assigns dense integer IDs to scopes (or any other
+ * strings from a bounded vocabulary), so a set of them can be encoded as
+ * a bitset, see {@link ScopeSet}.
+ *
+ * <p>The values are {@linkplain #register(String) registered} from the
+ * configuration, e.g. the scopes of access rules by {@link OAuth2AccessVoter}.
+ * The dictionary only grows, up to the given capacity; values that don't
+ * fit in are not encoded. This class is thread-safe.</p>
+ */
+public class ScopeDictionary {
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String> values;
+    private int size = 0;
+
+
+    /**
+     * Creates a dictionary with capacity of 1024 values.
+     */
+    public ScopeDictionary() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity The maximal number of values.
+     */
+    public ScopeDictionary(int capacity) {
+        Assert.isTrue(capacity > 0, "capacity must be greater than zero");
+        this.values = new AtomicReferenceArray<>(capacity);
+    }
+
+
+    /**
+     * @param value The value to look up.
+     * @return ID of the value, or <tt>-1</tt> if the value is not in
+     *         the dictionary.
+     */
+    public int lookup(String value) {
+        Integer id = ids.get(value);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Adds the value to the dictionary, if not already present.
+     *
+     * @param value The value to add.
+     * @return ID of the value, or <tt>-1</tt> if the dictionary is full.
+     */
+    public int register(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(value);
+            if (id != null) {
+                return id;
+            }
+            if (size >= values.length()) {
+                return -1;
+            }
+            values.set(size, value);
+            ids.put(value, size);
+
+            return size++;
+        }
+    }
+
+    /**
+     * @param id ID of the value.
+     * @return The value, or <tt>null</tt> if there's no value with such ID.
+     */
+    public String valueOf(int id) {
+        return id >= 0 && id < values.length() ? values.get(id) : null;
+    }
+
+    /**
+     * Encodes the given values into a {@link ScopeSet}; values that are not
+     * registered in this dictionary are kept as is, not added.
+     */
+    public ScopeSet encode(Collection<String> values) {
+        return new ScopeSet(this, values);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable set of scopes encoded as a bitset of IDs from
+ * a {@link ScopeDictionary}. Membership check of a scope with a known ID
+ * is just a bit test, see {@link #containsId(int)}.
+ *
+ * <p>Values that are not in the dictionary are kept as is; they're never
+ * added to it here, so scopes of tokens cannot exhaust the dictionary,
+ * only the scopes registered from the configuration are encoded. When
+ * serialized, this set is replaced by a plain {@link HashSet}.</p>
+ */
+public final class ScopeSet extends AbstractSet<String> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient ScopeDictionary dictionary;
+    private final transient long[] words;
+    private final transient Set<String> overflow;
+    private final transient int size;
+
+
+    ScopeSet(ScopeDictionary dictionary, Collection<String> values) {
+        long[] words = new long[0];
+        Set<String> overflow = null;
+        int size = 0;
+
+        for (String value : values) {
+            int id = dictionary.lookup(value);
+
+            if (id < 0) {
+                if (overflow == null) {
+                    overflow = new HashSet<>();
+                }
+                if (overflow.add(value)) {
+                    size++;
+                }
+            } else {
+                int index = id >>> 6;
+                if (index >= words.length) {
+                    long[] expanded = new long[index + 1];
+                    System.arraycopy(words, 0, expanded, 0, words.length);
+                    words = expanded;
+                }
+                if ((words[index] & (1L << id)) == 0) {
+                    words[index] |= 1L << id;
+                    size++;
+                }
+            }
+        }
+        this.dictionary = dictionary;
+        this.words = words;
+        this.overflow = overflow != null ? overflow : Collections.<String>emptySet();
+        this.size = size;
+    }
+
+
+    /**
+     * @param id ID of the scope in the dictionary of this set.
+     * @return Whether this set contains the scope.
+     */
+    public boolean containsId(int id) {
+        int index = id >>> 6;
+        return id >= 0 && index < words.length && (words[index] & (1L << id)) != 0;
+    }
+
+    /**
+     * @return The dictionary used to encode this set.
+     */
+    public ScopeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        int id = dictionary.lookup((String) o);
+
+        return id >= 0 ? containsId(id) : overflow.contains(o);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+
+            private int nextId = nextSetBit(0);
+            private final Iterator<String> overflowIterator = overflow.iterator();
+
+            public boolean hasNext() {
+                return nextId >= 0 || overflowIterator.hasNext();
+            }
+
+            public String next() {
+                if (nextId >= 0) {
+                    String value = dictionary.valueOf(nextId);
+                    nextId = nextSetBit(nextId + 1);
+                    return value;
+                }
+                if (overflowIterator.hasNext()) {
+                    return overflowIterator.next();
+                }
+                throw new NoSuchElementException();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+
+    private int nextSetBit(int fromId) {
+        int index = fromId >>> 6;
+        if (index >= words.length) {
+            return -1;
+        }
+        long word = words[index] & (-1L << fromId);
+
+        while (true) {
+            if (word != 0) {
+                return (index << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++index == words.length) {
+                return -1;
+            }
+            word = words[index];
+        }
+    }
+
+    private Object writeReplace() {
+        return new HashSet<>(this);
+    }
+}
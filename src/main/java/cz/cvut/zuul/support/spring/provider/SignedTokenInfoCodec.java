@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.security.crypto.codec.Base64;
+import org.springframework.util.Assert;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Codec of a compact, HMAC-signed representation of {@link TokenInfo}
+ * that is passed between resource servers sharing the same secret key,
+ * so a downstream server doesn't need to validate the token on the
+ * authorization server again.
+ *
+ * <p>The encoded value consists of the expiration time, SHA-256 of the
+ * access token, the token info in JSON and HMAC-SHA256 of all the
+ * preceding, joined by dots. It's bound to the access token and valid for
+ * at most {@link #setMaxAge(int) maxAge} seconds, so a revoked token is
+ * accepted by downstream servers no longer than that.</p>
+ *
+ * <p>The full digest is used rather than the 64-bit {@link TokenFingerprint}
+ * meant for logs. A downstream server trusts the token info for any token
+ * with the same digest, so a truncated one would let an attacker with many
+ * captured values search offline for a forged token that collides with
+ * one of them.</p>
+ *
+ * @see TokenInfoPropagation
+ * @see RemoteResourceTokenServices#setTokenInfoCodec(SignedTokenInfoCodec)
+ */
+public class SignedTokenInfoCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final char SEPARATOR = '.';
+
+    private final TokenInfoHttpMessageConverter converter = new TokenInfoHttpMessageConverter();
+    private final ThreadLocal<Mac> macs;
+
+    private int maxAge = 30;
+
+
+    /**
+     * @param secretKey The key shared by all the resource servers, at least
+     *                  32 bytes long.
+     */
+    public SignedTokenInfoCodec(byte[] secretKey) {
+        Assert.isTrue(secretKey != null && secretKey.length >= 32, "secretKey must be at least 32 bytes long");
+
+        final SecretKeySpec key = new SecretKeySpec(secretKey, ALGORITHM);
+
+        this.macs = new ThreadLocal<Mac>() {
+            protected Mac initialValue() {
+                try {
+                    Mac mac = Mac.getInstance(ALGORITHM);
+                    mac.init(key);
+                    return mac;
+                } catch (GeneralSecurityException ex) {
+                    // every Java platform is required to support HmacSHA256
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * @param tokenInfo The validated token info.
+     * @param accessToken The access token described by the token info.
+     * @return The signed value.
+     */
+    public String encode(TokenInfo tokenInfo, String accessToken) {
+        return encode(tokenInfo, accessToken, System.currentTimeMillis());
+    }
+
+    /**
+     * @param validatedAt The time when the token info was validated, in
+     *                    milliseconds, from which its <tt>expiresIn</tt>
+     *                    and the max age are counted.
+     */
+    String encode(TokenInfo tokenInfo, String accessToken, long validatedAt) {
+        long now = validatedAt / 1000;
+        long expiration = now + maxAge;
+
+        if (tokenInfo.getExpiresIn() != null) {
+            expiration = Math.min(expiration, now + tokenInfo.getExpiresIn());
+        }
+        ByteArrayOutputStream json = new ByteArrayOutputStream(256);
+        try {
+            converter.writeTokenInfo(tokenInfo, json);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to serialize TokenInfo", ex);
+        }
+        String payload = String.valueOf(expiration) + SEPARATOR + base64(TokenFingerprint.digest(accessToken))
+                + SEPARATOR + base64(json.toByteArray());
+
+        return payload + SEPARATOR + base64(sign(payload));
+    }
+
+    /**
+     * @param value The signed value.
+     * @param accessToken The access token to which the value should belong.
+     * @return The token info with <tt>expiresIn</tt> set to the remaining
+     *         time of the value, or <tt>null</tt> if the value is malformed,
+     *         not signed with our key, expired, or belongs to another token.
+     */
+    public TokenInfo decode(String value, String accessToken) {
+        int signatureStart = value.lastIndexOf(SEPARATOR);
+        int digestStart = value.indexOf(SEPARATOR);
+        int jsonStart = value.indexOf(SEPARATOR, digestStart + 1);
+
+        if (digestStart <= 0 || jsonStart < 0 || jsonStart >= signatureStart) {
+            return null;
+        }
+        String payload = value.substring(0, signatureStart);
+        try {
+            byte[] signature = Base64.decode(value.substring(signatureStart + 1).getBytes(UTF_8));
+            if (!MessageDigest.isEqual(signature, sign(payload))) {
+                return null;
+            }
+            long remaining = Long.parseLong(value.substring(0, digestStart)) - currentSeconds();
+            String digest = value.substring(digestStart + 1, jsonStart);
+
+            if (remaining <= 0 || !digest.equals(base64(TokenFingerprint.digest(accessToken)))) {
+                return null;
+            }
+            byte[] json = Base64.decode(value.substring(jsonStart + 1, signatureStart).getBytes(UTF_8));
+            TokenInfo tokenInfo = converter.readTokenInfo(new ByteArrayInputStream(json));
+            tokenInfo.setExpiresIn((int) remaining);
+
+            return tokenInfo;
+
+        } catch (IllegalArgumentException | IOException ex) {
+            return null;
+        }
+    }
+
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(UTF_8));
+    }
+
+    private static String base64(byte[] bytes) {
+        return new String(Base64.encode(bytes), UTF_8);
+    }
+
+    private static long currentSeconds() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+
+    //////////  Accessors  //////////
+
+    /**
+     * The maximal validity of the encoded values in seconds, i.e. how long
+     * a revoked token may be accepted by downstream servers. Default is 30.
+     */
+    public void setMaxAge(int maxAge) {
+        Assert.isTrue(maxAge > 0, "maxAge must be greater than zero");
+        this.maxAge = maxAge;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static cz.cvut.zuul.support.spring.provider.TokenValidationListener.Outcome;
+
+/**
+ * {@link TokenValidationListener} that logs validations which took longer
+ * than the given threshold, or have failed due to an error. The log
+ * contains the token fingerprint, never the token itself.
+ */
+public class SlowValidationLogger implements TokenValidationListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlowValidationLogger.class);
+
+    private final long threshold;
+
+
+    /**
+     * Creates a logger with threshold of 200 ms.
+     */
+    public SlowValidationLogger() {
+        this(200);
+    }
+
+    /**
+     * @param thresholdMillis The threshold in milliseconds.
+     */
+    public SlowValidationLogger(long thresholdMillis) {
+        this.threshold = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+
+    public void tokenValidated(String accessToken, TokenInfo tokenInfo, Outcome outcome,
+                               boolean cached, long contentLength, long duration) {
+
+        if (duration < threshold && outcome != Outcome.ERROR) {
+            return;
+        }
+        LOG.warn("Validation of token {} took {} ms: outcome={}, cached={}, contentLength={}",
+                TokenFingerprint.of(accessToken), TimeUnit.NANOSECONDS.toMillis(duration),
+                outcome, cached, contentLength);
+    }
+}
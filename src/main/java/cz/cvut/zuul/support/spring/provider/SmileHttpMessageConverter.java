@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
+
+import java.util.Collections;
+
+/**
+ * {@link org.springframework.http.converter.HttpMessageConverter} that reads
+ * and writes <a href="http://wiki.fasterxml.com/SmileFormat">Smile</a>,
+ * the binary JSON format of Jackson, with media type
+ * <tt>application/x-jackson-smile</tt>. It requires the
+ * <tt>jackson-smile</tt> module on the classpath.
+ *
+ * <p>It can be used on both sides: to negotiate a compact TokenInfo response
+ * in {@link RemoteResourceTokenServices} and to encode it in an authorization
+ * server or a test stub.</p>
+ *
+ * @see RemoteResourceTokenServicesBuilder#binaryEncoding(boolean)
+ */
+public class SmileHttpMessageConverter extends MappingJacksonHttpMessageConverter {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+
+    public SmileHttpMessageConverter() {
+        setObjectMapper(new ObjectMapper(new SmileFactory()));
+        setSupportedMediaTypes(Collections.singletonList(APPLICATION_SMILE));
+    }
+
+
+    /**
+     * @return A converter of {@link TokenInfo} in Smile that doesn't use
+     *         reflective data binding.
+     */
+    public static TokenInfoHttpMessageConverter forTokenInfo() {
+        return new TokenInfoHttpMessageConverter(new SmileFactory(), APPLICATION_SMILE);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.cache.Cache;
+import org.springframework.util.Assert;
+
+/**
+ * {@link Cache} that delegates to another one, which can be replaced at
+ * runtime, e.g. by a cache of different capacity or implementation. The
+ * replacement is atomic and doesn't block; operations in progress complete
+ * on the previous cache.
+ *
+ * @see TokenServicesTuning
+ */
+public class SwappableCache implements Cache {
+
+    private final String name;
+    private volatile Cache delegate;
+
+
+    public SwappableCache(Cache delegate) {
+        Assert.notNull(delegate, "delegate must not be null");
+        this.name = delegate.getName();
+        this.delegate = delegate;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+    }
+
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    public void clear() {
+        delegate.clear();
+    }
+
+    /**
+     * @return The current delegate.
+     */
+    public Cache getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Replaces the delegate; the new one starts empty unless it's been
+     * filled before.
+     *
+     * @param delegate The new cache to delegate to.
+     * @return The previous delegate.
+     */
+    public Cache swap(Cache delegate) {
+        Assert.notNull(delegate, "delegate must not be null");
+
+        Cache previous = this.delegate;
+        this.delegate = delegate;
+        return previous;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility for creating fingerprints of access tokens that are safe to be
+ * logged or recorded. The fingerprint is the first 8 bytes of SHA-256 of
+ * the token, encoded in hex.
+ */
+public final class TokenFingerprint {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int LENGTH = 8;
+
+
+    private TokenFingerprint() {}
+
+
+    /**
+     * @param token The access token.
+     * @return The fingerprint, or <tt>null</tt> if the token is <tt>null</tt>.
+     */
+    public static String of(String token) {
+        if (token == null) {
+            return null;
+        }
+        byte[] digest = digest(token);
+
+        char[] chars = new char[LENGTH * 2];
+        for (int i = 0; i < LENGTH; i++) {
+            chars[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+
+    /**
+     * @return SHA-256 digest of the token.
+     */
+    public static byte[] digest(String token) {
+        return sha256().digest(token.getBytes(UTF_8));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+}
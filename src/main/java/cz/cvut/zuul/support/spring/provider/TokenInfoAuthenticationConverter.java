@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.provider.AuthorizationRequest;
+import org.springframework.security.oauth2.provider.BaseClientDetails;
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Converts a {@link TokenInfo} obtained from an authorization server into
+ * {@link OAuth2Authentication}. It doesn't depend on how the TokenInfo has
+ * been obtained, so it may be reused by other token services than
+ * {@link RemoteResourceTokenServices}. This class is thread-safe.
+ */
+public class TokenInfoAuthenticationConverter {
+
+    private static final GrantedAuthority DEFAULT_USER_AUTHORITY = new SimpleGrantedAuthority("ROLE_USER");
+
+    private ScopeDictionary scopeDictionary;
+
+
+    /**
+     * @param tokenInfo The TokenInfo of a valid token.
+     * @return The authentication of the client and user (if any).
+     * @throws IllegalStateException if the TokenInfo is not complete.
+     */
+    public OAuth2Authentication convert(TokenInfo tokenInfo) {
+        Assert.state(tokenInfo.getClientId() != null, "Client id must be present in response from auth server");
+
+        AuthorizationRequest clientAuthentication = createClientAuthentication(tokenInfo);
+        Authentication userAuthentication = createUserAuthentication(tokenInfo);
+
+        return new OAuth2Authentication(clientAuthentication, userAuthentication);
+    }
+
+
+    private AuthorizationRequest createClientAuthentication(TokenInfo tokenInfo) {
+        DefaultAuthorizationRequest auth = scopeDictionary != null
+                ? new EncodedAuthorizationRequest(tokenInfo.getClientId(), scopeDictionary.encode(tokenInfo.getScope()))
+                : new DefaultAuthorizationRequest(tokenInfo.getClientId(), tokenInfo.getScope());
+
+        if (!tokenInfo.getAudience().isEmpty() || !tokenInfo.getClientAuthorities().isEmpty()) {
+            BaseClientDetails details = new BaseClientDetails();
+
+            details.setClientId(tokenInfo.getClientId());
+            details.setResourceIds(tokenInfo.getAudience());
+            details.setAuthorities(tokenInfo.getClientAuthorities());
+
+            auth.addClientDetails(details);
+            auth.setApproved(true);
+        }
+        return auth;
+    }
+
+    private Authentication createUserAuthentication(TokenInfo tokenInfo) {
+        if (tokenInfo.isClientOnly()) return null;
+
+        Set<GrantedAuthority> authorities = tokenInfo.getUserAuthorities();
+        if (authorities.isEmpty()) {
+            // User authorities had better not be empty or we might mistake user for unauthenticated
+            authorities = new HashSet<>(asList(DEFAULT_USER_AUTHORITY));
+        }
+        return new UsernamePasswordAuthenticationToken(tokenInfo.getUserId(), null, authorities);
+    }
+
+
+    //////////  Accessors  //////////
+
+    /**
+     * When set, scope of the authentications is encoded as a {@link ScopeSet}
+     * using the given dictionary.
+     */
+    public void setScopeDictionary(ScopeDictionary scopeDictionary) {
+        this.scopeDictionary = scopeDictionary;
+    }
+
+
+    /**
+     * Authorization request that exposes the encoded scope set as is. The
+     * scope is declared as a plain set, because {@link ScopeSet} is
+     * serialized as a {@link HashSet}.
+     */
+    private static class EncodedAuthorizationRequest extends DefaultAuthorizationRequest {
+
+        private final Set<String> scope;
+
+        EncodedAuthorizationRequest(String clientId, ScopeSet scope) {
+            super(clientId, scope);
+            this.scope = scope;
+        }
+
+        @Override
+        public Set<String> getScope() {
+            return scope;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * {@link org.springframework.http.converter.HttpMessageConverter} of
+ * {@link TokenInfo} that reads and writes it using the streaming API of
+ * Jackson, i.e. without introspection of annotations and reflective data
+ * binding. It's faster to start, doesn't need reflection metadata for
+ * ahead-of-time compilation and produces the same results as binding
+ * with {@code ObjectMapper}, except that properties with <tt>null</tt>
+ * value are ignored as well as unknown properties.
+ *
+ * @see RemoteResourceTokenServicesBuilder
+ */
+public class TokenInfoHttpMessageConverter extends AbstractHttpMessageConverter<TokenInfo> {
+
+    private static final String VALUES_DELIMITERS = ", \t\r\n";
+
+    private final JsonFactory jsonFactory;
+
+
+    /**
+     * Creates converter for <tt>application/json</tt> and <tt>application/*+json</tt>.
+     */
+    public TokenInfoHttpMessageConverter() {
+        this(new JsonFactory(), MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+    }
+
+    /**
+     * @param jsonFactory The factory of parsers and generators of the
+     *                    desired format, e.g. {@code SmileFactory}.
+     * @param supportedMediaTypes The media types of the format.
+     */
+    public TokenInfoHttpMessageConverter(JsonFactory jsonFactory, MediaType... supportedMediaTypes) {
+        super(supportedMediaTypes);
+        Assert.notNull(jsonFactory, "jsonFactory must not be null");
+        this.jsonFactory = jsonFactory;
+    }
+
+
+    /**
+     * Reads a TokenInfo object from the given stream.
+     */
+    public TokenInfo readTokenInfo(InputStream input) throws IOException {
+        try (JsonParser parser = jsonFactory.createJsonParser(input)) {
+            return read(parser);
+        }
+    }
+
+    /**
+     * Writes the TokenInfo object into the given stream; it's not closed.
+     */
+    public void writeTokenInfo(TokenInfo tokenInfo, OutputStream output) throws IOException {
+        JsonGenerator generator = jsonFactory.createJsonGenerator(output, JsonEncoding.UTF8);
+        write(tokenInfo, generator);
+        generator.flush();
+    }
+
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return TokenInfo.class == clazz;
+    }
+
+    @Override
+    protected TokenInfo readInternal(Class<? extends TokenInfo> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        try {
+            return readTokenInfo(inputMessage.getBody());
+        } catch (JsonParseException ex) {
+            throw new HttpMessageNotReadableException("Could not read TokenInfo: " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    protected void writeInternal(TokenInfo tokenInfo, HttpOutputMessage outputMessage) throws IOException {
+        writeTokenInfo(tokenInfo, outputMessage.getBody());
+    }
+
+
+    private TokenInfo read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Expected an object", parser.getCurrentLocation());
+        }
+        TokenInfo tokenInfo = new TokenInfo();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (name) {
+                case "client_id":
+                    tokenInfo.setClientId(parser.getText());
+                    break;
+                case "scope":
+                    tokenInfo.setScope(readArrayOrString(parser));
+                    break;
+                case "audience":
+                    tokenInfo.setAudience(readArrayOrString(parser));
+                    break;
+                case "client_authorities":
+                    tokenInfo.setClientAuthorities(AuthorityUtils.createAuthorityList(toArray(readArrayOrString(parser))));
+                    break;
+                case "expires_in":
+                    tokenInfo.setExpiresIn(parser.getValueAsInt());
+                    break;
+                case "user_id":
+                    tokenInfo.setUserId(parser.getText());
+                    break;
+                case "user_email":
+                    tokenInfo.setUserEmail(parser.getText());
+                    break;
+                case "user_authorities":
+                    tokenInfo.setUserAuthorities(AuthorityUtils.createAuthorityList(toArray(readArrayOrString(parser))));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return tokenInfo;
+    }
+
+    /**
+     * Reads either an array of strings, or a string delimited by commas
+     * and/or whitespace (e.g. space-delimited scope per RFC 6749), the same
+     * way as {@code ArrayOrStringDeserializer}.
+     */
+    private Set<String> readArrayOrString(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            return new LinkedHashSet<>(Arrays.asList(
+                    StringUtils.tokenizeToStringArray(parser.getText(), VALUES_DELIMITERS)));
+        }
+        Set<String> values = new LinkedHashSet<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            values.add(parser.getText());
+        }
+        return values;
+    }
+
+    private void write(TokenInfo tokenInfo, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        writeStringField(generator, "client_id", tokenInfo.getClientId());
+        writeArrayField(generator, "scope", tokenInfo.getScope());
+        writeArrayField(generator, "audience", tokenInfo.getAudience());
+        writeArrayField(generator, "client_authorities", AuthorityUtils.authorityListToSet(tokenInfo.getClientAuthorities()));
+        if (tokenInfo.getExpiresIn() != null) {
+            generator.writeNumberField("expires_in", tokenInfo.getExpiresIn());
+        }
+        writeStringField(generator, "user_id", tokenInfo.getUserId());
+        writeStringField(generator, "user_email", tokenInfo.getUserEmail());
+        writeArrayField(generator, "user_authorities", AuthorityUtils.authorityListToSet(tokenInfo.getUserAuthorities()));
+        generator.writeEndObject();
+    }
+
+    private static void writeStringField(JsonGenerator generator, String name, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        }
+    }
+
+    private static void writeArrayField(JsonGenerator generator, String name, Collection<String> values)
+            throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    private static String[] toArray(Collection<String> values) {
+        return values.toArray(new String[values.size()]);
+    }
+}
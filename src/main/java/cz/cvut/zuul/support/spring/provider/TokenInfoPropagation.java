@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+/**
+ * Holder of the signed token info of the current request, bound to the
+ * current thread. The incoming value is set by {@link TokenInfoPropagationFilter},
+ * the outgoing value by {@link RemoteResourceTokenServices} after the token
+ * is validated, and it's attached to downstream requests by
+ * {@link cz.cvut.zuul.support.spring.client.TokenRelayInterceptor}.
+ *
+ * <p>The token services set only the validated token info; it's encoded
+ * and signed when the outgoing value is requested for the first time, so
+ * requests that don't call any downstream server don't pay for it.</p>
+ *
+ * @see SignedTokenInfoCodec
+ */
+public final class TokenInfoPropagation {
+
+    /**
+     * The name of the HTTP header with the signed token info.
+     */
+    public static final String HEADER_NAME = "X-Token-Info";
+
+    private static final ThreadLocal<Values> VALUES = new ThreadLocal<>();
+
+
+    private TokenInfoPropagation() {}
+
+
+    /**
+     * Starts the propagation for the current request.
+     *
+     * @param incoming The value of the incoming header, or <tt>null</tt>.
+     */
+    public static void begin(String incoming) {
+        VALUES.set(new Values(incoming));
+    }
+
+    /**
+     * Ends the propagation for the current request.
+     */
+    public static void end() {
+        VALUES.remove();
+    }
+
+    /**
+     * @return Whether the propagation has begun for the current request.
+     */
+    public static boolean isActive() {
+        return VALUES.get() != null;
+    }
+
+    /**
+     * @return The signed token info received with the current request,
+     *         or <tt>null</tt>.
+     */
+    public static String getIncoming() {
+        Values values = VALUES.get();
+        return values != null ? values.incoming : null;
+    }
+
+    /**
+     * @return The signed token info to be attached to downstream requests,
+     *         or <tt>null</tt>.
+     */
+    public static String getOutgoing() {
+        Values values = VALUES.get();
+        return values != null ? values.getOutgoing() : null;
+    }
+
+    /**
+     * @return The holder of the current request, to be bound to another
+     *         thread by {@link #bind(Values)}, or <tt>null</tt>.
+     */
+    static Values current() {
+        return VALUES.get();
+    }
+
+    /**
+     * Binds the holder of a request obtained by {@link #current()} to the
+     * current thread, or unbinds it when <tt>null</tt>.
+     */
+    static void bind(Values values) {
+        if (values != null) {
+            VALUES.set(values);
+        } else {
+            VALUES.remove();
+        }
+    }
+
+    /**
+     * Sets the signed token info to be attached to downstream requests.
+     * It's ignored when the propagation has not begun.
+     */
+    public static void setOutgoing(String outgoing) {
+        Values values = VALUES.get();
+        if (values != null) {
+            values.setOutgoing(outgoing, null, null, null);
+        }
+    }
+
+    /**
+     * Sets the validated token info to be encoded by the codec when the
+     * outgoing value is requested. It's ignored when the propagation has
+     * not begun.
+     */
+    static void setOutgoing(SignedTokenInfoCodec codec, TokenInfo tokenInfo, String accessToken) {
+        Values values = VALUES.get();
+        if (values != null) {
+            values.setOutgoing(null, codec, tokenInfo, accessToken);
+        }
+    }
+
+
+    /**
+     * The values of a request; it may be shared by threads that process
+     * the request asynchronously.
+     */
+    static final class Values {
+
+        final String incoming;
+
+        private String outgoing;
+        private SignedTokenInfoCodec codec;
+        private TokenInfo tokenInfo;
+        private String accessToken;
+        private long validatedAt;
+
+        Values(String incoming) {
+            this.incoming = incoming;
+        }
+
+        synchronized String getOutgoing() {
+            if (outgoing == null && tokenInfo != null) {
+                outgoing = codec.encode(tokenInfo, accessToken, validatedAt);
+                codec = null;
+                tokenInfo = null;
+                accessToken = null;
+            }
+            return outgoing;
+        }
+
+        synchronized void setOutgoing(String outgoing, SignedTokenInfoCodec codec,
+                                      TokenInfo tokenInfo, String accessToken) {
+            this.outgoing = outgoing;
+            this.codec = codec;
+            this.tokenInfo = tokenInfo;
+            this.accessToken = accessToken;
+            this.validatedAt = System.currentTimeMillis();
+        }
+    }
+}
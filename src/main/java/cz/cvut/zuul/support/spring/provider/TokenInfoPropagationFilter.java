@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * Filter that begins the {@link TokenInfoPropagation} for each request,
+ * with the signed token info from the {@link TokenInfoPropagation#HEADER_NAME
+ * header} of the request, if any. The values are kept in a request
+ * attribute and bound again on the redispatch of the request, e.g. the
+ * ASYNC dispatch after {@link AsyncOAuth2AuthenticationFilter} has
+ * validated the token on another thread.
+ *
+ * @see OAuth2ResourceServerConfigurer#tokenInfoPropagation(TokenInfoPropagationFilter)
+ */
+public class TokenInfoPropagationFilter extends GenericFilterBean {
+
+    private static final String VALUES_ATTRIBUTE = TokenInfoPropagationFilter.class.getName() + ".VALUES";
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        // don't override the values on nested dispatches
+        if (TokenInfoPropagation.isActive()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        TokenInfoPropagation.Values values = (TokenInfoPropagation.Values) request.getAttribute(VALUES_ATTRIBUTE);
+
+        if (values != null) {
+            TokenInfoPropagation.bind(values);
+        } else {
+            TokenInfoPropagation.begin(((HttpServletRequest) request).getHeader(TokenInfoPropagation.HEADER_NAME));
+            request.setAttribute(VALUES_ATTRIBUTE, TokenInfoPropagation.current());
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            TokenInfoPropagation.end();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import cz.cvut.zuul.support.spring.client.PooledClientHttpRequestFactory;
+import cz.jirutka.spring.http.client.cache.SoftReferenceSynchronizedLruCache;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Handle for changing parameters of {@link RemoteResourceTokenServices}
+ * built by {@link RemoteResourceTokenServicesBuilder} at runtime, e.g.
+ * during an incident, without a redeploy.
+ *
+ * <p>Each change is a single atomic replacement or a synchronized update
+ * of the affected component; validations in progress are not paused, they
+ * complete with the previous setting. Operations on a component that has
+ * not been configured (e.g. the HTTP cache when it's disabled, or the
+ * connection pool when no {@link PooledClientHttpRequestFactory} is used)
+ * throw {@link IllegalStateException}.</p>
+ *
+ * @see RemoteResourceTokenServices#getTuning()
+ */
+public class TokenServicesTuning {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenServicesTuning.class);
+
+    private final RemoteResourceTokenServices services;
+    private final SwappableCache cache;
+    private final Cache validatorsCache;
+    private final CacheBypassInterceptor cacheSwitch;
+    private final PooledClientHttpRequestFactory requestFactory;
+
+
+    TokenServicesTuning(RemoteResourceTokenServices services, SwappableCache cache, Cache validatorsCache,
+                        CacheBypassInterceptor cacheSwitch, PooledClientHttpRequestFactory requestFactory) {
+        this.services = services;
+        this.cache = cache;
+        this.validatorsCache = validatorsCache;
+        this.cacheSwitch = cacheSwitch;
+        this.requestFactory = requestFactory;
+    }
+
+
+    //////////  HTTP cache  //////////
+
+    /**
+     * Replaces the HTTP cache with an in-memory cache of the given capacity
+     * (number of responses). The cached responses are copied to the new
+     * cache, from the least recently used, so the most recently used ones
+     * are kept when it's smaller.
+     */
+    public void resizeCache(int capacity) {
+        Cache current = cache().getDelegate();
+        Cache resized = new SoftReferenceSynchronizedLruCache(current.getName(), capacity);
+
+        copyEntries(current, resized);
+        replaceCache(resized);
+    }
+
+    /**
+     * Changes capacity of the HTTP cache in bytes. When the current cache
+     * is a {@link WeighedLruCache}, it's resized in place; otherwise it's
+     * replaced with a new one and the cached responses are copied to it.
+     */
+    public void resizeCacheBytes(long maxBytes) {
+        Cache current = cache().getDelegate();
+
+        if (current instanceof WeighedLruCache) {
+            ((WeighedLruCache) current).setMaxBytes(maxBytes);
+        } else {
+            Cache resized = new WeighedLruCache(current.getName(), maxBytes);
+
+            copyEntries(current, resized);
+            replaceCache(resized);
+        }
+    }
+
+    /**
+     * Replaces the HTTP cache with the given one.
+     */
+    public void replaceCache(Cache newCache) {
+        cache().swap(newCache);
+    }
+
+    /**
+     * Removes all responses from the HTTP cache.
+     */
+    public void flushCache() {
+        cache().clear();
+    }
+
+    /**
+     * Removes all validators of the stale responses, when the revalidation
+     * is enabled.
+     */
+    public void flushValidators() {
+        Assert.state(validatorsCache != null, "Revalidation is not enabled");
+        validatorsCache.clear();
+    }
+
+    /**
+     * Switches the HTTP cache off (<tt>true</tt>), so all tokens are
+     * validated on the authorization server, or back on.
+     */
+    public void setCacheBypassed(boolean bypassed) {
+        Assert.state(cacheSwitch != null, "HTTP cache is disabled");
+        cacheSwitch.setBypassAll(bypassed);
+    }
+
+
+    //////////  Connection pool  //////////
+
+    /**
+     * Changes the maximal number of connections in the pool.
+     */
+    public void setMaxConnections(int maxConnections) {
+        pool().getConnectionManager().setMaxTotal(maxConnections);
+    }
+
+    /**
+     * Changes the default maximal number of connections to a single host.
+     */
+    public void setMaxConnectionsPerHost(int maxConnections) {
+        pool().getConnectionManager().setDefaultMaxPerRoute(maxConnections);
+    }
+
+    /**
+     * Changes the maximal number of connections to the given route, i.e.
+     * usually the authorization server.
+     */
+    public void setMaxConnectionsPerRoute(HttpRoute route, int maxConnections) {
+        pool().getConnectionManager().setMaxPerRoute(route, maxConnections);
+    }
+
+    /**
+     * Changes the timeouts of subsequent requests, in milliseconds; zero
+     * is interpreted as infinite and negative as unchanged.
+     *
+     * @param connectTimeout Timeout until a connection is established.
+     * @param readTimeout Timeout for waiting for data.
+     * @param connectionRequestTimeout Timeout for a free connection from the pool.
+     */
+    public void setTimeouts(int connectTimeout, int readTimeout, int connectionRequestTimeout) {
+        RequestConfig current = pool().getRequestConfig();
+
+        pool().setRequestConfig(RequestConfig.copy(current)
+                .setConnectTimeout(connectTimeout >= 0 ? connectTimeout : current.getConnectTimeout())
+                .setSocketTimeout(readTimeout >= 0 ? readTimeout : current.getSocketTimeout())
+                .setConnectionRequestTimeout(connectionRequestTimeout >= 0
+                        ? connectionRequestTimeout : current.getConnectionRequestTimeout())
+                .build());
+    }
+
+
+    //////////  Endpoint  //////////
+
+    /**
+     * Changes URL of the TokenInfo endpoint. Responses cached for the
+     * previous URL are not used.
+     */
+    public void setTokenInfoEndpointUrl(String tokenInfoEndpointUrl) {
+        services.changeTokenInfoEndpointUrl(tokenInfoEndpointUrl);
+    }
+
+
+    /**
+     * Copies entries of a cache that exposes a {@link Map} as its native
+     * cache, in the iteration order of the map. The values are read using
+     * {@link Cache#get(Object)}, so they're unwrapped from soft references
+     * etc. Responses cached while copying are not copied.
+     */
+    private void copyEntries(Cache from, Cache to) {
+        if (!(from.getNativeCache() instanceof Map)) {
+            LOG.warn("Cannot copy entries of cache {}, the resized one starts empty", from.getName());
+            return;
+        }
+        Map<?, ?> entries = (Map<?, ?>) from.getNativeCache();
+        List<Object> keys;
+
+        // a synchronized map is locked on itself, WeighedLruCache on the cache
+        synchronized (from) {
+            synchronized (entries) {
+                keys = new ArrayList<Object>(entries.keySet());
+            }
+        }
+        for (Object key : keys) {
+            Cache.ValueWrapper value = from.get(key);
+
+            if (value != null && value.get() != null) {
+                to.put(key, value.get());
+            }
+        }
+    }
+
+    private SwappableCache cache() {
+        Assert.state(cache != null, "HTTP cache is disabled");
+        return cache;
+    }
+
+    private PooledClientHttpRequestFactory pool() {
+        Assert.state(requestFactory != null, "Connection pool is not configured, use PooledClientHttpRequestFactory");
+        return requestFactory;
+    }
+}
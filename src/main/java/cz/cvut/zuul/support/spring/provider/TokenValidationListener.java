@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+/**
+ * Callback interface for receiving notifications about access tokens
+ * validated by {@link RemoteResourceTokenServices}. It's intended for
+ * profiling and auditing; implementations must be fast and thread-safe,
+ * because they're invoked on the request thread.
+ *
+ * <p>The raw access token is passed only to allow correlation; it should
+ * never be logged or stored, use {@link TokenFingerprint} instead.</p>
+ *
+ * @see SlowValidationLogger
+ * @see ValidationAuditLog
+ * @see CompositeTokenValidationListener
+ */
+public interface TokenValidationListener {
+
+    /**
+     * Invoked after each validation, successful or not.
+     *
+     * @param accessToken The validated access token.
+     * @param tokenInfo The response from the TokenInfo endpoint, or
+     *                  <tt>null</tt> if the request has failed.
+     * @param outcome The result of the validation.
+     * @param cached Whether the response has been served from the cache.
+     * @param contentLength The length of the response body in bytes, or
+     *                      <tt>-1</tt> if unknown.
+     * @param duration The validation time in nanoseconds.
+     */
+    void tokenValidated(String accessToken, TokenInfo tokenInfo, Outcome outcome,
+                        boolean cached, long contentLength, long duration);
+
+
+    enum Outcome {
+
+        /** The token is valid. */
+        VALID,
+
+        /** The token is invalid or expired. */
+        INVALID_TOKEN,
+
+        /** The authorization server has returned an incomplete response. */
+        INVALID_RESPONSE,
+
+        /** The request to the authorization server has failed. */
+        ERROR
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link TokenValidationListener} that records each validation into
+ * a preallocated ring buffer, which is drained in batches by a background
+ * thread to an {@link AuditSink}. Request threads only claim a slot with
+ * CAS and store references into it; they never block nor allocate. When
+ * the buffer is full, records are dropped and counted.
+ *
+ * <p>Fingerprints of the tokens are computed by the writer thread, raw
+ * tokens never leave this class.</p>
+ *
+ * <p>The writer thread is started by {@link #afterPropertiesSet()} and
+ * stopped by {@link #destroy()}; when not managed by Spring, you must call
+ * them yourself. Records received before the start are kept in the buffer
+ * (or dropped when it's full).</p>
+ */
+public class ValidationAuditLog implements TokenValidationListener, InitializingBean, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationAuditLog.class);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AuditSink sink;
+    private final int mask;
+    private final int batchSize;
+
+    // the slots, as parallel arrays
+    private final String[] tokens;
+    private final TokenInfo[] tokenInfos;
+    private final Outcome[] outcomes;
+    private final boolean[] cached;
+    private final long[] latencies;
+    private final long[] timestamps;
+    private final AtomicLongArray published;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Thread writer;
+    private volatile boolean running = true;
+
+
+    /**
+     * Creates a log with buffer of 8192 records and batches of 256.
+     */
+    public ValidationAuditLog(AuditSink sink) {
+        this(sink, 8192, 256);
+    }
+
+    /**
+     * @param sink The sink to write records to.
+     * @param capacity The size of the ring buffer; rounded up to a power
+     *                 of two.
+     * @param batchSize The maximal number of records written at once.
+     */
+    public ValidationAuditLog(AuditSink sink, int capacity, int batchSize) {
+        Assert.notNull(sink, "sink must not be null");
+        Assert.isTrue(capacity > 0 && capacity <= 1 << 30, "capacity must be between 1 and 2^30");
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than zero");
+
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+
+        this.sink = sink;
+        this.mask = size - 1;
+        this.batchSize = batchSize;
+        this.tokens = new String[size];
+        this.tokenInfos = new TokenInfo[size];
+        this.outcomes = new Outcome[size];
+        this.cached = new boolean[size];
+        this.latencies = new long[size];
+        this.timestamps = new long[size];
+        this.published = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+    }
+
+
+    /**
+     * Starts the writer thread, unless it's already started.
+     */
+    public synchronized void afterPropertiesSet() {
+        if (writer != null) {
+            return;
+        }
+        writer = new Thread(new Runnable() {
+            public void run() {
+                drainLoop();
+            }
+        }, "validation-audit-writer");
+
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    public void tokenValidated(String accessToken, TokenInfo tokenInfo, Outcome outcome,
+                               boolean cached, long contentLength, long duration) {
+        long seq;
+        do {
+            seq = head.get();
+            if (seq - tail.get() > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!head.compareAndSet(seq, seq + 1));
+
+        int index = (int) seq & mask;
+        this.tokens[index] = accessToken;
+        this.tokenInfos[index] = tokenInfo;
+        this.outcomes[index] = outcome;
+        this.cached[index] = cached;
+        this.latencies[index] = duration;
+        this.timestamps[index] = System.currentTimeMillis();
+
+        // publishes the writes above to the writer thread
+        published.set(index, seq);
+    }
+
+    /**
+     * @return The number of records dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops the writer thread after draining the remaining records.
+     */
+    public synchronized void destroy() throws InterruptedException {
+        running = false;
+        if (writer == null) {
+            return;
+        }
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+
+    private void drainLoop() {
+        List<AuditRecord> batch = new ArrayList<>(batchSize);
+
+        while (true) {
+            long seq = tail.get();
+            int index = (int) seq & mask;
+
+            if (published.get(index) == seq && batch.size() < batchSize) {
+                batch.add(readSlot(index));
+                tail.lazySet(seq + 1);
+                continue;
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                batch.clear();
+                continue;
+            }
+            if (!running) {
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private AuditRecord readSlot(int index) {
+        TokenInfo tokenInfo = tokenInfos[index];
+
+        AuditRecord record = new AuditRecord(timestamps[index], TokenFingerprint.of(tokens[index]),
+                tokenInfo != null ? tokenInfo.getClientId() : null,
+                tokenInfo != null ? tokenInfo.getUserId() : null,
+                outcomes[index], cached[index], TimeUnit.NANOSECONDS.toMicros(latencies[index]));
+
+        // don't keep tokens in memory longer than needed
+        tokens[index] = null;
+        tokenInfos[index] = null;
+
+        return record;
+    }
+
+    private void writeBatch(List<AuditRecord> batch) {
+        try {
+            sink.write(batch);
+        } catch (IOException | RuntimeException ex) {
+            LOG.warn("Failed to write {} audit records", batch.size(), ex);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.springframework.util.Assert;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Filter that rejects requests with <tt>503 Service Unavailable</tt> until
+ * the {@linkplain RemoteResourceTokenServices#warmUp() warm-up} of the token
+ * services is completed, i.e. while they're not {@linkplain
+ * RemoteResourceTokenServices#isReady() ready}. A load balancer can then
+ * keep the node out of rotation without an extra health endpoint.
+ *
+ * @see OAuth2ResourceServerConfigurerAdapter#isWarmUpGated()
+ */
+public class WarmUpGateFilter extends GenericFilterBean {
+
+    private static final byte[] UNAVAILABLE_BODY = JsonErrorResponses.render("temporarily_unavailable");
+
+    private final RemoteResourceTokenServices tokenServices;
+
+
+    public WarmUpGateFilter(RemoteResourceTokenServices tokenServices) {
+        Assert.notNull(tokenServices, "tokenServices must not be null");
+        this.tokenServices = tokenServices;
+    }
+
+
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        if (tokenServices.isReady()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        httpResponse.setHeader("Retry-After", "5");
+        JsonErrorResponses.write(httpResponse, HttpServletResponse.SC_SERVICE_UNAVAILABLE, UNAVAILABLE_BODY);
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.util.Assert;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU {@link Cache} with capacity in bytes rather than in number of entries.
+ * Each entry is weighed once when put by a {@link Weigher}; the default
+ * {@link HttpCacheWeigher} estimates the responses cached by
+ * {@link cz.jirutka.spring.http.client.cache.CachingHttpRequestInterceptor
+ * CachingHttpRequestInterceptor} without serializing them.
+ *
+ * <p>When auto-tuning is enabled, keys of evicted entries are remembered in
+ * a ghost list. A miss on a ghost key means that the entry would have
+ * been hit with a bigger cache, so after each {@value #TUNING_PERIOD}
+ * lookups the capacity is increased by 10 % when more than 1 % of them were
+ * ghost hits, or decreased by 5 % when there were none, within the limits
+ * given in the constructor.</p>
+ *
+ * <p>This class is thread-safe, all operations are synchronized; a value
+ * is weighed before the lock is acquired.</p>
+ */
+public class WeighedLruCache implements Cache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WeighedLruCache.class);
+
+    static final int TUNING_PERIOD = 1000;
+    private static final int GHOST_CAPACITY = 4096;
+
+    private final String name;
+    private final Weigher weigher;
+    private final long minBytes;
+    private final long maxBytesLimit;
+
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<Object, Boolean> ghosts;
+
+    private long maxBytes;
+    private long usedBytes = 0;
+    private int lookups = 0;
+    private int ghostHits = 0;
+
+
+    /**
+     * Creates a cache with fixed capacity.
+     *
+     * @param name The cache name.
+     * @param maxBytes The capacity in bytes.
+     */
+    public WeighedLruCache(String name, long maxBytes) {
+        this(name, maxBytes, new HttpCacheWeigher());
+    }
+
+    /**
+     * Creates a cache with fixed capacity.
+     *
+     * @param name The cache name.
+     * @param maxBytes The capacity in bytes.
+     * @param weigher The weigher of cached values.
+     */
+    public WeighedLruCache(String name, long maxBytes, Weigher weigher) {
+        this(name, maxBytes, maxBytes, maxBytes, weigher);
+    }
+
+    /**
+     * Creates a cache with auto-tuned capacity.
+     *
+     * @param name The cache name.
+     * @param initialBytes The initial capacity in bytes.
+     * @param minBytes The lower limit of the capacity in bytes.
+     * @param maxBytesLimit The upper limit of the capacity in bytes, i.e.
+     *                      the heap budget of this cache.
+     */
+    public WeighedLruCache(String name, long initialBytes, long minBytes, long maxBytesLimit) {
+        this(name, initialBytes, minBytes, maxBytesLimit, new HttpCacheWeigher());
+    }
+
+    /**
+     * Creates a cache with auto-tuned capacity.
+     *
+     * @param name The cache name.
+     * @param initialBytes The initial capacity in bytes.
+     * @param minBytes The lower limit of the capacity in bytes.
+     * @param maxBytesLimit The upper limit of the capacity in bytes, i.e.
+     *                      the heap budget of this cache.
+     * @param weigher The weigher of cached values.
+     */
+    public WeighedLruCache(String name, long initialBytes, long minBytes, long maxBytesLimit, Weigher weigher) {
+        Assert.notNull(weigher, "weigher must not be null");
+        Assert.isTrue(minBytes > 0, "minBytes must be greater than zero");
+        Assert.isTrue(minBytes <= initialBytes && initialBytes <= maxBytesLimit,
+                "initialBytes must be between minBytes and maxBytesLimit");
+
+        this.name = name;
+        this.weigher = weigher;
+        this.maxBytes = initialBytes;
+        this.minBytes = minBytes;
+        this.maxBytesLimit = maxBytesLimit;
+        this.ghosts = minBytes < maxBytesLimit ? new LinkedHashMap<Object, Boolean>() {
+            protected boolean removeEldestEntry(Map.Entry<Object, Boolean> eldest) {
+                return size() > GHOST_CAPACITY;
+            }
+        } : null;
+    }
+
+
+    public String getName() {
+        return name;
+    }
+
+    public Object getNativeCache() {
+        return entries;
+    }
+
+    public synchronized ValueWrapper get(Object key) {
+        Entry entry = entries.get(key);
+
+        if (ghosts != null) {
+            if (entry == null && ghosts.remove(key) != null) {
+                ghostHits++;
+            }
+            if (++lookups >= TUNING_PERIOD) {
+                tune();
+            }
+        }
+        return entry != null ? new SimpleValueWrapper(entry.value) : null;
+    }
+
+    public void put(Object key, Object value) {
+        // weighed outside of the lock, a custom weigher may take a while
+        long weight = weigher.weigh(value);
+        Assert.isTrue(weight >= 0, "weigher must not return a negative weight");
+
+        synchronized (this) {
+            if (weight > maxBytes) {
+                evict(key);
+                return;
+            }
+            Entry previous = entries.put(key, new Entry(value, weight));
+            if (previous != null) {
+                usedBytes -= previous.weight;
+            }
+            usedBytes += weight;
+
+            if (ghosts != null) {
+                ghosts.remove(key);
+            }
+            evictOverCapacity();
+        }
+    }
+
+    public synchronized void evict(Object key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.weight;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+
+        if (ghosts != null) {
+            ghosts.clear();
+        }
+    }
+
+    /**
+     * @return The current capacity in bytes.
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Changes the capacity, evicting the least recently used entries when
+     * it's decreased. When auto-tuning is enabled, the capacity is kept
+     * within the limits given in the constructor and it's tuned further
+     * from this value.
+     *
+     * @param maxBytes The capacity in bytes.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        Assert.isTrue(maxBytes > 0, "maxBytes must be greater than zero");
+
+        this.maxBytes = ghosts != null ? Math.max(minBytes, Math.min(maxBytes, maxBytesLimit)) : maxBytes;
+        evictOverCapacity();
+    }
+
+    /**
+     * @return The total weight of the cached entries in bytes.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+
+    private void tune() {
+        long previous = maxBytes;
+
+        if (ghostHits * 100 > lookups) {
+            maxBytes = Math.min(maxBytesLimit, maxBytes + maxBytes / 10);
+        } else if (ghostHits == 0) {
+            maxBytes = Math.max(minBytes, maxBytes - maxBytes / 20);
+            evictOverCapacity();
+        }
+        if (maxBytes != previous) {
+            LOG.debug("Capacity of cache {} tuned from {} to {} bytes ({} ghost hits in {} lookups)",
+                    name, previous, maxBytes, ghostHits, lookups);
+        }
+        lookups = 0;
+        ghostHits = 0;
+    }
+
+    private void evictOverCapacity() {
+        Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator();
+
+        while (usedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<Object, Entry> eldest = it.next();
+            usedBytes -= eldest.getValue().weight;
+            it.remove();
+
+            if (ghosts != null) {
+                ghosts.put(eldest.getKey(), Boolean.TRUE);
+            }
+        }
+    }
+
+
+    private static class Entry {
+
+        final Object value;
+        final long weight;
+
+        Entry(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+
+    /**
+     * Estimates how many bytes of heap a cached value occupies.
+     */
+    public interface Weigher {
+
+        /**
+         * @param value The value to weigh, never <tt>null</tt>.
+         * @return The weight of the value in bytes, not negative.
+         */
+        long weigh(Object value);
+    }
+}
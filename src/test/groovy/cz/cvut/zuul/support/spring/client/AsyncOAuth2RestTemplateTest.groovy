@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client
+
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.security.oauth2.client.DefaultOAuth2ClientContext
+import org.springframework.security.oauth2.client.OAuth2RestTemplate
+import org.springframework.security.oauth2.client.resource.OAuth2AccessDeniedException
+import org.springframework.security.oauth2.client.token.AccessTokenProvider
+import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsResourceDetails
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken
+import org.springframework.test.web.client.MockRestServiceServer
+import org.springframework.web.context.request.RequestContextHolder
+import org.springframework.web.context.request.ServletRequestAttributes
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+
+import static org.hamcrest.CoreMatchers.containsString
+import static org.springframework.http.MediaType.TEXT_PLAIN
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess
+
+class AsyncOAuth2RestTemplateTest extends Specification {
+
+    static URL = 'http://resource.dev/api/v1/people'
+
+    def executor = Executors.newFixedThreadPool(4)
+    def tokenProvider = Mock(AccessTokenProvider)
+    def restTemplate = newRestTemplate(new DefaultOAuth2ClientContext())
+    def template = new AsyncOAuth2RestTemplate(restTemplate, executor)
+
+
+    def cleanup() {
+        executor.shutdownNow()
+        RequestContextHolder.resetRequestAttributes()
+    }
+
+
+    def 'should obtain access token and perform request with it'() {
+        setup:
+            def mockServer = MockRestServiceServer.createServer(restTemplate)
+            mockServer.expect( requestTo(URL) )
+                    .andExpect( header('Authorization', containsString('abc')) )
+                    .andRespond( withSuccess('hello', TEXT_PLAIN) )
+        when:
+            def response = template.getForEntity(URL, String).get()
+        then:
+            1 * tokenProvider.obtainAccessToken(*_) >> new DefaultOAuth2AccessToken('abc')
+            response.body == 'hello'
+            mockServer.verify()
+    }
+
+    def 'should obtain access token only once for concurrent calls'() {
+        when:
+            def futures = (1..8).collect { template.getAccessToken() }
+            def tokens = futures*.get()
+        then:
+            1 * tokenProvider.obtainAccessToken(*_) >> {
+                sleep(100)
+                new DefaultOAuth2AccessToken('abc')
+            }
+            tokens*.value == ['abc'] * 8
+    }
+
+    def 'should propagate failure to obtain access token through the future'() {
+        setup:
+            tokenProvider.obtainAccessToken(*_) >> { throw new OAuth2AccessDeniedException('denied') }
+        when:
+            template.getForEntity(URL, String).get()
+        then:
+            def ex = thrown(ExecutionException)
+            ex.cause instanceof OAuth2AccessDeniedException
+    }
+
+    def 'should keep access token in session with scoped context'() {
+        setup:
+            def request = new MockHttpServletRequest()
+            RequestContextHolder.requestAttributes = new ServletRequestAttributes(request)
+            restTemplate = newRestTemplate(new ScopedOAuth2ClientContext('people'))
+            template = new AsyncOAuth2RestTemplate(restTemplate, executor)
+        when:
+            def token = template.getAccessToken().get()
+        then:
+            1 * tokenProvider.obtainAccessToken(*_) >> new DefaultOAuth2AccessToken('abc')
+            token.value == 'abc'
+            restTemplate.getOAuth2ClientContext().accessToken.value == 'abc'
+    }
+
+    def 'should not propagate attributes of completed request'() {
+        setup:
+            def attributes = new ServletRequestAttributes(new MockHttpServletRequest())
+            RequestContextHolder.requestAttributes = attributes
+            def singleExecutor = Executors.newSingleThreadExecutor()
+            template = new AsyncOAuth2RestTemplate(newRestTemplate(new ScopedOAuth2ClientContext('people')), singleExecutor)
+        and: 'the executor is busy until the request completes'
+            def latch = new CountDownLatch(1)
+            singleExecutor.submit { latch.await() }
+        when:
+            def future = template.getAccessToken()
+            attributes.requestCompleted()
+            latch.countDown()
+            future.get()
+        then:
+            def ex = thrown(ExecutionException)
+            ex.cause instanceof IllegalStateException
+            0 * tokenProvider._
+        cleanup:
+            singleExecutor.shutdownNow()
+    }
+
+
+    def newRestTemplate(context) {
+        def resource = new ClientCredentialsResourceDetails(
+                id: 'people', clientId: 'client123', accessTokenUri: 'http://oauth-server.dev/token')
+        def restTemplate = new OAuth2RestTemplate(resource, context)
+        restTemplate.accessTokenProvider = tokenProvider
+        restTemplate
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpHandler
+import com.sun.net.httpserver.HttpServer
+import cz.cvut.zuul.support.spring.provider.RequestDeadline
+import org.apache.http.HttpHost
+import org.apache.http.conn.routing.HttpRoute
+import org.springframework.http.HttpMethod
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+class HttpTransportBuilderTest extends Specification {
+
+    def server = HttpServer.create(new InetSocketAddress('localhost', 0), 0)
+    def clientPorts = new CopyOnWriteArrayList<Integer>()
+    def baseUri
+
+
+    def setup() {
+        server.createContext('/', { HttpExchange exchange ->
+            clientPorts << exchange.remoteAddress.port
+            def body = 'hello'.bytes
+            exchange.sendResponseHeaders(200, body.length)
+            exchange.responseBody.write(body)
+            exchange.close()
+        } as HttpHandler)
+        server.start()
+        baseUri = "http://localhost:${server.address.port}"
+    }
+
+    def cleanup() {
+        server.stop(0)
+        RequestDeadline.clear()
+    }
+
+
+    def 'should configure timeouts of requests'() {
+        when:
+            def factory = new HttpTransportBuilder()
+                    .connectTimeout(1000)
+                    .readTimeout(2000)
+                    .connectionRequestTimeout(300)
+                    .build()
+        then:
+            with (factory.requestConfig) {
+                connectTimeout == 1000
+                socketTimeout == 2000
+                connectionRequestTimeout == 300
+            }
+    }
+
+    def 'should bound timeouts by the request deadline'() {
+        setup:
+            def factory = new HttpTransportBuilder().readTimeout(0).build()
+            RequestDeadline.set(500)
+        when:
+            def config = factory.createHttpContext(HttpMethod.GET, new URI(baseUri)).requestConfig
+        then:
+            config.connectTimeout in 1..500
+            config.socketTimeout in 1..500
+            config.connectionRequestTimeout in 1..500
+    }
+
+    def 'should configure limits of the pool'() {
+        when:
+            def factory = new HttpTransportBuilder()
+                    .maxConnections(50)
+                    .maxConnectionsPerHost(5)
+                    .maxConnectionsPerHost('https://oaas.example.org', 30)
+                    .build()
+        then:
+            with (factory.connectionManager) {
+                maxTotal == 50
+                defaultMaxPerRoute == 5
+                getMaxPerRoute(new HttpRoute(new HttpHost('oaas.example.org', 443, 'https'), null, true)) == 30
+            }
+    }
+
+    def 'should keep connection alive for subsequent requests'() {
+        setup:
+            def factory = new HttpTransportBuilder().build()
+            def restTemplate = new RestTemplate(factory)
+        when:
+            2.times { restTemplate.getForObject(baseUri, String) }
+        then:
+            clientPorts.size() == 2
+            clientPorts[0] == clientPorts[1]
+            factory.connectionManager.totalStats.available == 1
+    }
+
+    def 'should close persistent connection after its time to live'() {
+        setup:
+            def factory = new HttpTransportBuilder().connectionTimeToLive(50).build()
+            def restTemplate = new RestTemplate(factory)
+        when:
+            restTemplate.getForObject(baseUri, String)
+            sleep(100)
+            factory.connectionManager.closeExpiredConnections()
+        then:
+            factory.connectionManager.totalStats.available == 0
+        when:
+            restTemplate.getForObject(baseUri, String)
+        then:
+            clientPorts.size() == 2
+            clientPorts[0] != clientPorts[1]
+    }
+}
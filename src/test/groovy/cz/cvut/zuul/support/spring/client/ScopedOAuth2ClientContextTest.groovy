@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client
+
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpSession
+import org.springframework.security.oauth2.client.resource.UserRedirectRequiredException
+import org.springframework.security.oauth2.client.token.AccessTokenProvider
+import org.springframework.security.oauth2.client.token.grant.code.AuthorizationCodeResourceDetails
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken
+import org.springframework.web.context.request.RequestContextHolder
+import org.springframework.web.context.request.ServletRequestAttributes
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+
+class ScopedOAuth2ClientContextTest extends Specification {
+
+    static HOLDER_KEY = ScopedOAuth2ClientContext.name + '#people_clientContext'
+
+    def tasks = []
+    def updates = []
+    def session = new MockHttpSession() {
+        void setAttribute(String name, Object value) {
+            updates << name
+            super.setAttribute(name, value)
+        }
+    }
+    def tokenProvider = Mock(AccessTokenProvider) {
+        supportsRefresh(_) >> true
+    }
+    def context = new ScopedOAuth2ClientContext('people')
+
+
+    def setup() {
+        def request = new MockHttpServletRequest(session: session)
+        RequestContextHolder.requestAttributes = new ServletRequestAttributes(request)
+
+        context.setRefreshAhead(60, new AuthorizationCodeResourceDetails(), tokenProvider, { tasks << it } as Executor)
+    }
+
+    def cleanup() {
+        RequestContextHolder.resetRequestAttributes()
+    }
+
+
+    def 'should not refresh token that is not about to expire'() {
+        setup:
+            context.accessToken = newToken('abc', 3600)
+        expect:
+            context.accessToken.value == 'abc'
+            tasks.empty
+    }
+
+    def 'should refresh token ahead in background and update session attribute'() {
+        setup:
+            context.accessToken = newToken('abc', 30)
+        when:
+            def current = context.accessToken
+        then: 'the current token is used meanwhile'
+            current.value == 'abc'
+            tasks.size() == 1
+        when:
+            updates.clear()
+            tasks[0].run()
+        then:
+            1 * tokenProvider.refreshAccessToken(_, { it.value == 'refresh' }, _) >> new DefaultOAuth2AccessToken('def')
+            updates == [HOLDER_KEY]
+        and: 'the refresh token is kept when the server does not issue a new one'
+            context.accessToken.value == 'def'
+            context.accessToken.refreshToken.value == 'refresh'
+    }
+
+    def 'should start only one refresh at a time'() {
+        setup:
+            context.accessToken = newToken('abc', 30)
+        when:
+            3.times { context.accessToken }
+        then:
+            tasks.size() == 1
+    }
+
+    def 'should not override token obtained while refreshing'() {
+        setup:
+            context.accessToken = newToken('abc', 30)
+            context.accessToken
+            context.accessToken = newToken('newer', 3600)
+            updates.clear()
+        when:
+            tasks[0].run()
+        then:
+            1 * tokenProvider.refreshAccessToken(*_) >> new DefaultOAuth2AccessToken('def')
+            context.accessToken.value == 'newer'
+            updates.empty
+    }
+
+    def 'should not retry failed refresh until the retry delay elapses'() {
+        setup:
+            context.accessToken = newToken('abc', 30)
+            context.accessToken
+        when:
+            tasks[0].run()
+        then:
+            1 * tokenProvider.refreshAccessToken(*_) >> { throw new UserRedirectRequiredException('/auth', [:]) }
+            context.accessToken.value == 'abc'
+            tasks.size() == 1
+        when:
+            session.getAttribute(HOLDER_KEY).retryAfter = System.currentTimeMillis() - 1
+            context.accessToken
+        then:
+            tasks.size() == 2
+    }
+
+    def 'should keep current token when executor rejects the refresh'() {
+        setup:
+            context.setRefreshAhead(60, new AuthorizationCodeResourceDetails(), tokenProvider,
+                    { throw new RejectedExecutionException() } as Executor)
+            context.accessToken = newToken('abc', 30)
+        when:
+            def current = context.accessToken
+        then:
+            notThrown(RejectedExecutionException)
+            current.value == 'abc'
+            session.getAttribute(HOLDER_KEY).retryAfter > System.currentTimeMillis()
+    }
+
+
+    def newToken(String value, int expiresIn) {
+        def token = new DefaultOAuth2AccessToken(value)
+        token.expiration = new Date(System.currentTimeMillis() + expiresIn * 1000L)
+        token.refreshToken = new DefaultOAuth2RefreshToken('refresh')
+        token
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client
+
+import org.springframework.http.client.InterceptingClientHttpRequestFactory
+import org.springframework.http.client.SimpleClientHttpRequestFactory
+import spock.lang.Specification
+
+class TokenRelayBuilderTest extends Specification {
+
+    def 'should require resourceId for a custom token provider'() {
+        when:
+            new TokenRelayBuilder().tokenProvider(Mock(DownstreamTokenProvider)).build()
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def 'should build template with the relay interceptor'() {
+        setup:
+        when:
+            def template = new TokenRelayBuilder()
+                    .resourceId('people')
+                    .tokenProvider(Mock(DownstreamTokenProvider))
+                    .requestFactory(new SimpleClientHttpRequestFactory())
+                    .build()
+        then:
+            template.interceptors.size() == 1
+            template.interceptors[0] instanceof TokenRelayInterceptor
+            template.requestFactory instanceof InterceptingClientHttpRequestFactory
+    }
+}
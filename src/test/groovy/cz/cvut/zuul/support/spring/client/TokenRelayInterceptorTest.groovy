@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.client
+
+import cz.cvut.zuul.support.spring.provider.TokenInfoPropagation
+import org.springframework.http.client.ClientHttpRequestExecution
+import org.springframework.mock.http.client.MockClientHttpRequest
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.security.authentication.TestingAuthenticationToken
+import org.springframework.security.core.context.SecurityContextHolder
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest
+import org.springframework.security.oauth2.provider.OAuth2Authentication
+import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+class TokenRelayInterceptorTest extends Specification {
+
+    def provider = Mock(DownstreamTokenProvider)
+    def execution = Mock(ClientHttpRequestExecution)
+    def interceptor = new TokenRelayInterceptor('downstream', provider, 10)
+
+
+    def cleanup() {
+        SecurityContextHolder.clearContext()
+        TokenInfoPropagation.end()
+    }
+
+
+    def 'should relay the incoming token as is with the original token provider'() {
+        setup:
+            interceptor = new TokenRelayInterceptor(null, DownstreamTokenProvider.ORIGINAL_TOKEN, 10)
+            authenticate('incoming')
+        expect:
+            intercept().headers.getFirst('Authorization') == 'Bearer incoming'
+    }
+
+    def 'should send request as is without OAuth authentication'() {
+        setup:
+            SecurityContextHolder.context.authentication = new TestingAuthenticationToken('tomy', null)
+        when:
+            def request = intercept()
+        then:
+            0 * provider._
+            ! request.headers.containsKey('Authorization')
+    }
+
+    def 'should cache downstream token per incoming token'() {
+        when:
+            authenticate('incoming1')
+            def first = intercept()
+            def second = intercept()
+            authenticate('incoming2')
+            def third = intercept()
+        then:
+            1 * provider.obtainToken('incoming1', _, 'downstream') >> new DefaultOAuth2AccessToken('down1')
+            1 * provider.obtainToken('incoming2', _, 'downstream') >> new DefaultOAuth2AccessToken('down2')
+            [first, second]*.headers*.getFirst('Authorization') == ['Bearer down1'] * 2
+            third.headers.getFirst('Authorization') == 'Bearer down2'
+    }
+
+    def 'should obtain new downstream token when the cached one expires'() {
+        setup:
+            authenticate('incoming')
+            def expiring = new DefaultOAuth2AccessToken('down1')
+            expiring.expiration = new Date(System.currentTimeMillis() + 5000)
+        when:
+            intercept()
+            def request = intercept()
+        then:
+            2 * provider.obtainToken(*_) >>> [expiring, new DefaultOAuth2AccessToken('down2')]
+            request.headers.getFirst('Authorization') == 'Bearer down2'
+    }
+
+    def 'should obtain downstream token only once for concurrent calls'() {
+        setup:
+            def auth = authenticate('incoming')
+            def start = new CountDownLatch(1)
+            def headers = Collections.synchronizedList([])
+        when:
+            def threads = (1..8).collect {
+                Thread.start {
+                    SecurityContextHolder.context.authentication = auth
+                    start.await()
+                    headers << intercept().headers.getFirst('Authorization')
+                }
+            }
+            start.countDown()
+            threads*.join()
+        then:
+            1 * provider.obtainToken(*_) >> {
+                sleep(100)
+                new DefaultOAuth2AccessToken('down')
+            }
+            headers == ['Bearer down'] * 8
+    }
+
+    def 'should evict least recently used tokens when over maxEntries'() {
+        setup:
+            provider.obtainToken(*_) >> { incoming, auth, resourceId -> new DefaultOAuth2AccessToken("down-${incoming}") }
+        and:
+            (0..9).each { authenticate("in${it}"); intercept(); sleep(2) }
+            authenticate('in0'); intercept(); sleep(2)
+            authenticate('in10'); intercept()
+        when: 'evicted down to 9 entries, i.e. in1 and in2'
+            ['in0', 'in3', 'in10'].each { authenticate(it); intercept() }
+        then:
+            0 * provider._
+        when:
+            authenticate('in1'); intercept()
+        then:
+            1 * provider.obtainToken('in1', *_) >> new DefaultOAuth2AccessToken('down-in1')
+    }
+
+    def 'should propagate failure and not cache it'() {
+        setup:
+            authenticate('incoming')
+        when:
+            intercept()
+        then:
+            1 * provider.obtainToken(*_) >> { throw new InvalidGrantException('expired') }
+            thrown(InvalidGrantException)
+        when:
+            def request = intercept()
+        then:
+            1 * provider.obtainToken(*_) >> new DefaultOAuth2AccessToken('down')
+            request.headers.getFirst('Authorization') == 'Bearer down'
+    }
+
+    def 'should attach signed token info when relaying the original token'() {
+        setup:
+            interceptor = new TokenRelayInterceptor(null, DownstreamTokenProvider.ORIGINAL_TOKEN, 10)
+            interceptor.propagateTokenInfo = true
+            authenticate('incoming')
+            TokenInfoPropagation.begin(null)
+            TokenInfoPropagation.setOutgoing('signed')
+        expect:
+            intercept().headers.getFirst(TokenInfoPropagation.HEADER_NAME) == 'signed'
+    }
+
+
+    def authenticate(String token) {
+        def servletRequest = new MockHttpServletRequest()
+        servletRequest.setAttribute(OAuth2AuthenticationDetails.ACCESS_TOKEN_VALUE, token)
+
+        def auth = new OAuth2Authentication(new DefaultAuthorizationRequest('client123', []), null)
+        auth.details = new OAuth2AuthenticationDetails(servletRequest)
+        SecurityContextHolder.context.authentication = auth
+    }
+
+    def intercept() {
+        def request = new MockClientHttpRequest()
+        interceptor.intercept(request, new byte[0], execution)
+        request
+    }
+}
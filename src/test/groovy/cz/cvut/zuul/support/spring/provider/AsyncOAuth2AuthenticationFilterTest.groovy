@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import cz.cvut.zuul.support.spring.client.DownstreamTokenProvider
+import cz.cvut.zuul.support.spring.client.TokenRelayInterceptor
+import org.springframework.mock.web.MockFilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.security.core.context.SecurityContextHolder
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest
+import org.springframework.security.oauth2.provider.OAuth2Authentication
+import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices
+import org.springframework.test.web.client.MockRestServiceServer
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+import javax.servlet.FilterChain
+import java.util.concurrent.Executor
+
+import static cz.cvut.zuul.support.spring.provider.DispatchAwareAuthenticationFilter.AUTHENTICATION_ATTRIBUTE
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess
+
+class AsyncOAuth2AuthenticationFilterTest extends Specification {
+
+    def authentication = new OAuth2Authentication(new DefaultAuthorizationRequest('client123', []), null)
+    def delegate = Mock(ResourceServerTokenServices)
+    def tokenServices = new AsyncRemoteResourceTokenServices(delegate, { it.run() } as Executor)
+    def filter = new AsyncOAuth2AuthenticationFilter(tokenServices, new PrerenderedErrorHandler())
+
+    def request = new MockHttpServletRequest('GET', '/api/sample')
+    def response = new MockHttpServletResponse()
+    def chain = new MockFilterChain()
+
+
+    def setup() {
+        request.addHeader('Authorization', 'Bearer token123')
+    }
+
+    def cleanup() {
+        SecurityContextHolder.clearContext()
+    }
+
+
+    def 'should validate token asynchronously and authenticate request on the async dispatch'() {
+        setup:
+            request.asyncSupported = true
+        when: 'first pass'
+            filter.doFilter(request, response, chain)
+        then:
+            1 * delegate.loadAuthentication('token123') >> authentication
+            request.asyncContext != null
+            chain.request == null
+            request.getAttribute(AUTHENTICATION_ATTRIBUTE).is(authentication)
+        when: 'async dispatch'
+            filter.doFilter(request, response, chain)
+        then:
+            0 * delegate._
+            chain.request != null
+            SecurityContextHolder.context.authentication.is(authentication)
+    }
+
+    def 'should commence with entry point on the async dispatch when token is invalid'() {
+        setup:
+            request.asyncSupported = true
+            delegate.loadAuthentication('token123') >> { throw new InvalidTokenException('Invalid token') }
+        when:
+            filter.doFilter(request, response, chain)
+            filter.doFilter(request, response, chain)
+        then:
+            chain.request == null
+            response.status == 401
+            response.contentAsString == '{"error":"invalid_token"}'
+    }
+
+    def 'should validate token synchronously when async is not supported'() {
+        setup:
+            request.asyncSupported = false
+        when:
+            filter.doFilter(request, response, chain)
+        then:
+            1 * delegate.loadAuthentication('token123') >> authentication
+            request.asyncContext == null
+            chain.request != null
+            SecurityContextHolder.context.authentication.is(authentication)
+    }
+
+    def 'should respond with status of the OAuth error when token cannot be validated'() {
+        setup:
+            delegate.loadAuthentication('token123') >> { throw new IssuerUnavailableException('Overloaded') }
+        when:
+            filter.doFilter(request, response, chain)
+        then:
+            chain.request == null
+            response.status == 503
+    }
+
+    def 'should relay the token of request authenticated on the async dispatch'() {
+        setup:
+            request.asyncSupported = true
+            delegate.loadAuthentication('token123') >> authentication
+        and:
+            def relay = new TokenRelayInterceptor('downstream', DownstreamTokenProvider.ORIGINAL_TOKEN, 10)
+            def downstream = new RestTemplate(interceptors: [relay])
+            def mockServer = MockRestServiceServer.createServer(downstream)
+            mockServer.expect( header('Authorization', 'Bearer token123') )
+                    .andRespond( withSuccess() )
+            def chain = { req, res -> downstream.getForEntity('http://downstream.dev/api', String) } as FilterChain
+        when:
+            filter.doFilter(request, response, chain)
+            filter.doFilter(request, response, chain)
+        then:
+            SecurityContextHolder.context.authentication.details instanceof OAuth2AuthenticationDetails
+            mockServer.verify()
+    }
+
+    def 'should continue without authentication when there is no token'() {
+        setup:
+            def request = new MockHttpServletRequest('GET', '/api/sample')
+        when:
+            filter.doFilter(request, response, chain)
+        then:
+            0 * delegate._
+            chain.request != null
+            SecurityContextHolder.context.authentication == null
+    }
+}
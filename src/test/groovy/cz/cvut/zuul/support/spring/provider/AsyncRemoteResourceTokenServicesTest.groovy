@@ -0,0 +1,129 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest
+import org.springframework.security.oauth2.provider.OAuth2Authentication
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices
+import spock.lang.Specification
+
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+import static cz.cvut.zuul.support.spring.provider.AsyncResourceServerTokenServices.Callback
+
+class AsyncRemoteResourceTokenServicesTest extends Specification {
+
+    def delegate = Mock(ResourceServerTokenServices)
+    def notifications = new LinkedBlockingQueue()
+    def callback = [
+            authenticated: { notifications << it },
+            failed: { notifications << it }
+    ] as Callback
+    def executor = Executors.newSingleThreadExecutor()
+    def services = new AsyncRemoteResourceTokenServices(delegate, executor)
+
+    def authentication = new OAuth2Authentication(new DefaultAuthorizationRequest('client123', []), null)
+
+
+    def cleanup() {
+        executor.shutdownNow()
+    }
+
+
+    def 'should load authentication with the delegate on the executor'() {
+        setup:
+            def callingThread = Thread.currentThread()
+            def executingThread = null
+        when:
+            def result = services.loadAuthentication('token', callback).get(1, TimeUnit.SECONDS)
+        then:
+            1 * delegate.loadAuthentication('token') >> {
+                executingThread = Thread.currentThread()
+                authentication
+            }
+            result == authentication
+            executingThread != callingThread
+            notifications.poll(1, TimeUnit.SECONDS) == authentication
+    }
+
+    def 'should report exception of the delegate'() {
+        setup:
+            def failure = new InvalidTokenException('Invalid token')
+            delegate.loadAuthentication('token') >> { throw failure }
+        when:
+            services.loadAuthentication('token', callback).get(1, TimeUnit.SECONDS)
+        then:
+            def ex = thrown(ExecutionException)
+            ex.cause == failure
+            notifications.poll(1, TimeUnit.SECONDS) == failure
+    }
+
+    def 'should fail with IssuerUnavailableException when executor rejects the validation'() {
+        setup:
+            def services = new AsyncRemoteResourceTokenServices(delegate, { throw new RejectedExecutionException() } as Executor)
+        when:
+            services.loadAuthentication('token', callback).get()
+        then:
+            def ex = thrown(ExecutionException)
+            ex.cause instanceof IssuerUnavailableException
+            notifications.poll() == ex.cause
+            0 * delegate._
+    }
+
+    def 'should propagate request deadline to the executing thread'() {
+        setup:
+            def remaining = null
+            delegate.loadAuthentication('token') >> {
+                remaining = RequestDeadline.remainingMillis()
+                authentication
+            }
+            RequestDeadline.set(5000)
+        when:
+            services.loadAuthentication('token', null).get(1, TimeUnit.SECONDS)
+        then:
+            remaining in 1..5000
+        cleanup:
+            RequestDeadline.clear()
+    }
+
+    def 'should restore state of the calling thread when executed on it'() {
+        setup:
+            def services = new AsyncRemoteResourceTokenServices(delegate, { it.run() } as Executor)
+            delegate.loadAuthentication('token') >> authentication
+            TokenInfoPropagation.begin('incoming')
+        when:
+            services.loadAuthentication('token', null)
+        then:
+            TokenInfoPropagation.getIncoming() == 'incoming'
+            ! RequestDeadline.isSet()
+        cleanup:
+            TokenInfoPropagation.end()
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.mock.web.MockFilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.security.core.context.SecurityContextHolder
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest
+import org.springframework.security.oauth2.provider.OAuth2Authentication
+import spock.lang.Specification
+
+import javax.servlet.DispatcherType
+
+class ClientAdmissionFilterTest extends Specification {
+
+    def filter = new ClientAdmissionFilter(requestsPerSecond: 0.001, burst: 2)
+
+
+    def cleanup() {
+        SecurityContextHolder.clearContext()
+    }
+
+
+    def 'should reject requests of a client over its burst'() {
+        setup:
+            authenticate('client123')
+        expect:
+            doFilter().status == 200
+            doFilter().status == 200
+            doFilter().status == 429
+        when:
+            authenticate('client456')
+        then:
+            doFilter().status == 200
+    }
+
+    def 'should pass through requests not authenticated by OAuth'() {
+        expect:
+            (1..3).every { doFilter().status == 200 }
+    }
+
+    def 'should keep bucket of an active client when other clients are forgotten'() {
+        setup:
+            filter.maxClients = 2
+            authenticate('runaway')
+            2.times { doFilter() }
+        when: 'more clients than maxClients, runaway keeps sending requests'
+            ['a', 'runaway', 'b', 'runaway', 'c'].each {
+                authenticate(it)
+                doFilter()
+            }
+            authenticate('runaway')
+        then:
+            doFilter().status == 429
+    }
+
+    def 'should forget least recently active clients down to 90 % of maxClients'() {
+        setup:
+            filter.burst = 1
+            filter.maxClients = 10
+        when:
+            (0..10).each {
+                authenticate("client${it}")
+                doFilter()
+            }
+        then: 'the buckets of client0 and client1 have been discarded'
+            ['client0', 'client1', 'client2'].collect {
+                authenticate(it)
+                doFilter().status
+            } == [200, 200, 429]
+    }
+
+    def 'should not charge the bucket on error dispatch'() {
+        setup:
+            authenticate('client123')
+        expect:
+            (1..3).every { doFilter(DispatcherType.ERROR).status == 200 }
+    }
+
+    def 'should charge the bucket on async dispatch of request not filtered before'() {
+        setup:
+            authenticate('client123')
+        expect:
+            doFilter(DispatcherType.ASYNC).status == 200
+            doFilter(DispatcherType.ASYNC).status == 200
+            doFilter(DispatcherType.ASYNC).status == 429
+    }
+
+    def 'should decrease concurrency limit after a window of slow requests'() {
+        setup:
+            filter.maxConcurrency = 10
+            filter.targetLatency = 0
+            filter.latencyWindow = 5
+        when:
+            4.times { doFilter() }
+        then:
+            filter.concurrencyLimit == 10
+        when:
+            doFilter()
+        then:
+            filter.concurrencyLimit == 9
+    }
+
+    def 'should not decrease concurrency limit when only a few requests are slow'() {
+        setup:
+            filter.maxConcurrency = 10
+            filter.targetLatency = 0
+            filter.latencyWindow = 20
+        when:
+            doFilter()
+            filter.targetLatency = 60000
+            19.times { doFilter() }
+        then:
+            filter.concurrencyLimit == 10
+    }
+
+
+    def authenticate(String clientId) {
+        SecurityContextHolder.context.authentication =
+                new OAuth2Authentication(new DefaultAuthorizationRequest(clientId, []), null)
+    }
+
+    def doFilter(DispatcherType dispatcherType = DispatcherType.REQUEST) {
+        def request = new MockHttpServletRequest(dispatcherType: dispatcherType)
+        def response = new MockHttpServletResponse()
+        filter.doFilter(request, response, new MockFilterChain())
+        response
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import spock.lang.Specification
+
+import static cz.cvut.zuul.support.spring.provider.TokenValidationListener.Outcome.*
+
+class CompositeTokenValidationListenerTest extends Specification {
+
+    def first = Mock(TokenValidationListener)
+    def second = Mock(TokenValidationListener)
+
+    def tokenInfo = new TokenInfo(clientId: 'client123')
+
+
+    def 'should notify all listeners in order'() {
+        setup:
+            def composite = new CompositeTokenValidationListener(first, second)
+        when:
+            composite.tokenValidated('token', tokenInfo, VALID, true, 42, 5000)
+        then:
+            1 * first.tokenValidated('token', tokenInfo, VALID, true, 42, 5000)
+        then:
+            1 * second.tokenValidated('token', tokenInfo, VALID, true, 42, 5000)
+    }
+
+    def 'should notify other listeners when one throws an exception'() {
+        setup:
+            def composite = new CompositeTokenValidationListener(first, second)
+        when:
+            composite.tokenValidated('token', null, ERROR, false, -1, 1000)
+        then:
+            1 * first.tokenValidated(*_) >> { throw new IllegalStateException('boom') }
+            1 * second.tokenValidated('token', null, ERROR, false, -1, 1000)
+            notThrown Exception
+    }
+
+    def 'should combine slow validation logger with audit log'() {
+        setup:
+            def records = [].asSynchronized()
+            def auditLog = new ValidationAuditLog({ batch -> records.addAll(batch) } as AuditSink, 16, 4)
+            auditLog.afterPropertiesSet()
+            def composite = new CompositeTokenValidationListener(new SlowValidationLogger(0), auditLog)
+        when:
+            composite.tokenValidated('token', tokenInfo, VALID, false, 42, 5000)
+            auditLog.destroy()
+        then:
+            records.size() == 1
+            records[0].tokenFingerprint == TokenFingerprint.of('token')
+            records[0].clientId == 'client123'
+    }
+
+    def 'should reject null listener'() {
+        when:
+            new CompositeTokenValidationListener(first, null)
+        then:
+            thrown IllegalArgumentException
+    }
+}
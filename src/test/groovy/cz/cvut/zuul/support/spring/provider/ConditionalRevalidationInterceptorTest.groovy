@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import cz.jirutka.spring.http.client.cache.SoftReferenceSynchronizedLruCache
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpStatus
+import org.springframework.http.client.ClientHttpRequestInterceptor
+import org.springframework.test.web.client.MockRestServiceServer
+import org.springframework.test.web.client.RequestMatcher
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+import static org.springframework.http.MediaType.APPLICATION_JSON
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess
+
+class ConditionalRevalidationInterceptorTest extends Specification {
+
+    static URL = 'http://oauth-server.dev/api/v1/tokeninfo?token=meh'
+
+    def cache = new SoftReferenceSynchronizedLruCache('test', 8)
+    def restTemplate = new RestTemplate(interceptors: [new ConditionalRevalidationInterceptor(cache, 2048)])
+    def mockServer = MockRestServiceServer.createServer(restTemplate)
+
+
+    def 'should replay stored body when server responds with 304'() {
+        setup:
+            mockServer.expect( requestTo(URL) )
+                    .andRespond( withSuccess('{"client_id":"foo"}', APPLICATION_JSON).headers(etag('"v1"')) )
+            mockServer.expect( header('If-None-Match', '"v1"') )
+                    .andRespond( withStatus(HttpStatus.NOT_MODIFIED) )
+        when:
+            restTemplate.getForEntity(URL, String)
+            def response = restTemplate.getForEntity(URL, String)
+        then:
+            response.statusCode == HttpStatus.OK
+            response.body == '{"client_id":"foo"}'
+            response.headers.getFirst('Age') != null
+            mockServer.verify()
+    }
+
+    def 'should retry without validators when server responds with 304 and nothing is stored'() {
+        setup:
+            def addValidator = { request, body, execution ->
+                request.headers.set('If-None-Match', '"v0"')
+                execution.execute(request, body)
+            } as ClientHttpRequestInterceptor
+            restTemplate.interceptors = [addValidator, new ConditionalRevalidationInterceptor(cache, 2048)]
+        and:
+            mockServer.expect( header('If-None-Match', '"v0"') )
+                    .andRespond( withStatus(HttpStatus.NOT_MODIFIED) )
+            mockServer.expect({ request -> assert ! request.headers.containsKey('If-None-Match') } as RequestMatcher)
+                    .andRespond( withSuccess('{"client_id":"foo"}', APPLICATION_JSON).headers(etag('"v1"')) )
+        when:
+            def response = restTemplate.getForEntity(URL, String)
+        then:
+            response.statusCode == HttpStatus.OK
+            response.body == '{"client_id":"foo"}'
+            mockServer.verify()
+    }
+
+    def 'should not store response larger than maxResponseSize'() {
+        setup:
+            restTemplate.interceptors = [new ConditionalRevalidationInterceptor(cache, 4)]
+            mockServer.expect( requestTo(URL) )
+                    .andRespond( withSuccess('{"client_id":"foo"}', APPLICATION_JSON).headers(etag('"v1"')) )
+        when:
+            restTemplate.getForEntity(URL, String)
+        then:
+            cache.get(URL) == null
+    }
+
+
+    def etag(String value) {
+        def headers = new HttpHeaders()
+        headers.setETag(value)
+        headers
+    }
+}
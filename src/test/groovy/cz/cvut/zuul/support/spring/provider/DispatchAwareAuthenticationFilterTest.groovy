@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.mock.web.MockFilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.security.core.context.SecurityContextHolder
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest
+import org.springframework.security.oauth2.provider.OAuth2Authentication
+import spock.lang.Specification
+
+import javax.servlet.Filter
+import javax.servlet.FilterChain
+
+class DispatchAwareAuthenticationFilterTest extends Specification {
+
+    def authentication = new OAuth2Authentication(new DefaultAuthorizationRequest('client123', []), null)
+    def delegate = Mock(Filter)
+    def filter = new DispatchAwareAuthenticationFilter(delegate)
+    def request = new MockHttpServletRequest()
+
+
+    def cleanup() {
+        SecurityContextHolder.clearContext()
+    }
+
+
+    def 'should authenticate request only on the first dispatch'() {
+        when: 'first dispatch'
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain())
+        then:
+            1 * delegate.doFilter(request, _, _) >> { req, res, FilterChain chain ->
+                SecurityContextHolder.context.authentication = authentication
+                chain.doFilter(req, res)
+            }
+        when: 'error dispatch'
+            SecurityContextHolder.clearContext()
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain())
+        then:
+            0 * delegate._
+            SecurityContextHolder.context.authentication.is(authentication)
+    }
+
+    def 'should not store authentication when request has not been authenticated'() {
+        when:
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain())
+        then:
+            1 * delegate.doFilter(request, _, _) >> { req, res, FilterChain chain -> chain.doFilter(req, res) }
+            request.getAttribute(DispatchAwareAuthenticationFilter.AUTHENTICATION_ATTRIBUTE) == null
+    }
+}
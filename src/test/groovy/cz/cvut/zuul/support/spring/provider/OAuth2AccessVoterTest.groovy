@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.security.access.SecurityConfig
+import org.springframework.security.authentication.TestingAuthenticationToken
+import org.springframework.security.core.authority.SimpleGrantedAuthority
+import org.springframework.security.oauth2.provider.BaseClientDetails
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest
+import org.springframework.security.oauth2.provider.OAuth2Authentication
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.springframework.security.access.AccessDecisionVoter.*
+
+class OAuth2AccessVoterTest extends Specification {
+
+    def voter = new OAuth2AccessVoter()
+
+
+    @Unroll
+    def 'should #result access for attributes #attributes'() {
+        expect:
+            voter.vote(authentication(), null, SecurityConfig.createList(attributes as String[])) == expected
+        where:
+            attributes                           | expected
+            ['SCOPE_sample.read']                | ACCESS_GRANTED
+            ['SCOPE_sample.write']               | ACCESS_DENIED
+            ['SCOPE_sample.write', 'CLIENT_foo'] | ACCESS_GRANTED
+            ['CLIENT_bar']                       | ACCESS_DENIED
+            ['ROLE_USER']                        | ACCESS_ABSTAIN
+
+            result = [(ACCESS_GRANTED): 'grant', (ACCESS_DENIED): 'deny', (ACCESS_ABSTAIN): 'abstain'][expected]
+    }
+
+    def 'should deny access for non-OAuth authentication'() {
+        expect:
+            voter.vote(new TestingAuthenticationToken('tomy', null), null,
+                    SecurityConfig.createList('SCOPE_sample.read')) == ACCESS_DENIED
+    }
+
+    def 'should support only scope and client attributes'() {
+        expect:
+            voter.supports(new SecurityConfig('SCOPE_sample.read'))
+            voter.supports(new SecurityConfig('CLIENT_foo'))
+            ! voter.supports(new SecurityConfig('ROLE_USER'))
+    }
+
+    def 'should register scopes of attributes only when checking them at startup'() {
+        setup:
+            def dictionary = new ScopeDictionary()
+            voter = new OAuth2AccessVoter(dictionary)
+        when:
+            voter.vote(authentication(), null, SecurityConfig.createList('SCOPE_sample.write'))
+        then:
+            dictionary.lookup('sample.write') == -1
+        when:
+            voter.supports(new SecurityConfig('SCOPE_sample.read'))
+        then:
+            dictionary.lookup('sample.read') >= 0
+    }
+
+    def 'should grant access by scope of attribute registered at startup'() {
+        setup:
+            def dictionary = new ScopeDictionary()
+            voter = new OAuth2AccessVoter(dictionary)
+            voter.supports(new SecurityConfig('SCOPE_sample.read'))
+            def request = new DefaultAuthorizationRequest('client123', dictionary.encode(['sample.read']))
+        expect:
+            voter.vote(new OAuth2Authentication(request, null), null,
+                    SecurityConfig.createList('SCOPE_sample.read')) == ACCESS_GRANTED
+    }
+
+
+    def authentication() {
+        def request = new DefaultAuthorizationRequest('client123', ['sample.read'])
+        def details = new BaseClientDetails(clientId: 'client123',
+                authorities: [new SimpleGrantedAuthority('foo')])
+        request.addClientDetails(details)
+
+        new OAuth2Authentication(request, null)
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.mock.web.MockFilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.mock.web.MockServletContext
+import org.springframework.security.config.annotation.web.builders.HttpSecurity
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity
+import org.springframework.security.oauth2.common.OAuth2AccessToken
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException
+import org.springframework.security.oauth2.provider.DefaultAuthorizationRequest
+import org.springframework.security.oauth2.provider.OAuth2Authentication
+import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationProcessingFilter
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices
+import org.springframework.security.web.FilterChainProxy
+import org.springframework.security.web.authentication.AnonymousAuthenticationFilter
+import org.springframework.security.web.context.request.async.WebAsyncManagerIntegrationFilter
+import org.springframework.security.web.session.SessionManagementFilter
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class OAuth2ResourceServerConfigurerAdapterTest extends Specification {
+
+    def context = new AnnotationConfigWebApplicationContext()
+    FilterChainProxy filterChain
+
+
+    def setup() {
+        context.servletContext = new MockServletContext()
+        context.register(LeanConfig)
+        context.refresh()
+
+        filterChain = context.getBean('springSecurityFilterChain', FilterChainProxy)
+    }
+
+    def cleanup() {
+        context.close()
+    }
+
+
+    def 'lean mode should contain only filters needed for authentication with a token'() {
+        when:
+            def filters = filterChain.filterChains[0].filters
+        then:
+            filters.any { it instanceof OAuth2AuthenticationProcessingFilter }
+            ! filters.any { it instanceof AnonymousAuthenticationFilter }
+            ! filters.any { it instanceof SessionManagementFilter }
+    }
+
+    def 'should place filters around authentication at distinct positions'() {
+        setup:
+            def context = new AnnotationConfigWebApplicationContext(servletContext: new MockServletContext())
+            context.register(FiltersConfig)
+            context.refresh()
+        when:
+            def filters = context.getBean('springSecurityFilterChain', FilterChainProxy).filterChains[0].filters
+            def indexOf = { Class type -> filters.findIndexOf { type.isInstance(it) } }
+        then:
+            filters.count { it instanceof WebAsyncManagerIntegrationFilter } == 1
+            [TokenInfoPropagationFilter, RequestDeadlineFilter, DispatchAwareAuthenticationFilter,
+                    ClientAdmissionFilter].collect(indexOf) == (0..3).collect { indexOf(TokenInfoPropagationFilter) + it }
+        cleanup:
+            context.close()
+    }
+
+    def 'lean mode should respond with bare challenge when token is missing'() {
+        when:
+            def response = doFilter(null)
+        then:
+            response.status == 401
+            response.getHeader('WWW-Authenticate') == 'Bearer realm="oauth"'
+    }
+
+    @Unroll
+    def 'lean mode should respond with #status for #token token'() {
+        when:
+            def response = doFilter(token)
+        then:
+            response.status == status
+            response.contentAsString == body
+        where:
+            token         || status | body
+            'valid'       || 200    | ''
+            'invalid'     || 401    | '{"error":"invalid_token"}'
+            'unavailable' || 503    | '{"error":"temporarily_unavailable"}'
+    }
+
+
+    def doFilter(String token) {
+        def request = new MockHttpServletRequest('GET', '/api/sample')
+        if (token) {
+            request.addHeader('Authorization', "Bearer ${token}")
+        }
+        def response = new MockHttpServletResponse()
+        filterChain.doFilter(request, response, new MockFilterChain())
+        response
+    }
+
+
+    @Configuration
+    @EnableWebSecurity
+    static class LeanConfig extends OAuth2ResourceServerConfigurerAdapter {
+
+        LeanConfig() {
+            super(false, true)
+        }
+
+        @Bean
+        ResourceServerTokenServices tokenServices() {
+            new StubTokenServices()
+        }
+    }
+
+    @Configuration
+    @EnableWebSecurity
+    static class FiltersConfig extends LeanConfig {
+
+        protected void configure(HttpSecurity http) {
+            http.getConfigurer(OAuth2ResourceServerConfigurer)
+                    .admissionControl(new ClientAdmissionFilter())
+                    .requestDeadline(new RequestDeadlineFilter())
+                    .tokenInfoPropagation(new TokenInfoPropagationFilter())
+                    .reuseAuthentication(true)
+        }
+    }
+
+    static class StubTokenServices implements ResourceServerTokenServices {
+
+        OAuth2Authentication loadAuthentication(String accessToken) {
+            switch (accessToken) {
+                case 'valid':
+                    def request = new DefaultAuthorizationRequest('client123', ['urn:zuul:oauth:sample'])
+                    request.approved = true
+                    return new OAuth2Authentication(request, null)
+                case 'unavailable':
+                    throw new IssuerUnavailableException('Authorization server is overloaded')
+                default:
+                    throw new InvalidTokenException('Invalid token')
+            }
+        }
+
+        OAuth2AccessToken readAccessToken(String accessToken) {
+            throw new UnsupportedOperationException()
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.mock.web.MockFilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.security.web.FilterInvocation
+import org.springframework.util.AntPathMatcher
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static org.springframework.http.HttpMethod.GET
+import static org.springframework.http.HttpMethod.POST
+
+class PathTrieSecurityMetadataSourceTest extends Specification {
+
+    def source = new PathTrieSecurityMetadataSource()
+            .rule(GET, '/api/v1/people/{id}', 'A')
+            .rule(POST, '/api/v1/people/**', 'B')
+            .rule('/api/v1/*/edit', 'C')
+            .rule('/api/v1/**/*.json', 'D')
+            .rule('/api/**', 'E')
+            .rule('/**', 'F')
+
+
+    @Unroll
+    def 'should match #method #path to the first declared rule #expected'() {
+        expect:
+            source.getAttributes(invocation(method, path))*.attribute == [expected]
+        where:
+            method | path                       || expected
+            'GET'  | '/api/v1/people/123'       || 'A'
+            'POST' | '/api/v1/people/123'       || 'B'
+            'POST' | '/api/v1/people'           || 'B'
+            'GET'  | '/api/v1/people/edit'      || 'A'
+            'PUT'  | '/api/v1/people/edit'      || 'C'
+            'GET'  | '/api/v1/groups/a/b.json'  || 'D'
+            'GET'  | '/api/v1/groups/a/b.xml'   || 'E'
+            'GET'  | '/api'                     || 'E'
+            'GET'  | '/'                        || 'F'
+            'GET'  | '/other//path/'            || 'F'
+    }
+
+    @Unroll
+    def 'should match mixed-case path #path case-insensitively'() {
+        setup:
+            def source = new PathTrieSecurityMetadataSource()
+                    .rule('/admin/**', 'ADMIN')
+                    .rule('/Api/*.JSON', 'A')
+                    .rule('/**', 'F')
+        expect:
+            source.getAttributes(invocation('GET', path))*.attribute == [expected]
+        where:
+            path                || expected
+            '/ADMIN/x'          || 'ADMIN'
+            '/Admin/users/1'    || 'ADMIN'
+            '/api/people.json'  || 'A'
+            '/API/People.Json'  || 'A'
+            '/other'            || 'F'
+    }
+
+    @Unroll
+    def 'should match #pattern to #path like AntPathMatcher'() {
+        setup:
+            def source = new PathTrieSecurityMetadataSource().rule(pattern, 'A')
+        expect:
+            new AntPathMatcher().match(pattern, path) == matches
+            (source.getAttributes(invocation('GET', path)) != null) == matches
+        where:
+            pattern       | path          || matches
+            '/a'          | '/a'          || true
+            '/a'          | '/a/'         || false
+            '/a/'         | '/a'          || false
+            '/a/'         | '/a/'         || true
+            '/a/b'        | '/a//b'       || true
+            '/a/*'        | '/a/'         || true
+            '/a/*'        | '/a'          || false
+            '/a/{id}'     | '/a/'         || false
+            '/a/*/'       | '/a/b'        || false
+            '/a/**'       | '/a'          || true
+            '/a/**'       | '/a/'         || true
+            '/a/**/b'     | '/a/b/'       || true
+            '/a/**/b'     | '/a/x/y/b'    || true
+            '/a/**/b/**'  | '/a/x/b/y/'   || true
+            '/**/*.json'  | '/a/b.json/'  || true
+            '/'           | '/'           || true
+    }
+
+    def 'should prefer the first declared rule when more subtrees match'() {
+        setup:
+            def source = new PathTrieSecurityMetadataSource()
+                    .rule('/**/b/c', 'A')
+                    .rule('/a/**', 'B')
+                    .rule('/a/b/c', 'C')
+        expect:
+            source.getAttributes(invocation('GET', '/a/b/c'))*.attribute == ['A']
+            source.getAttributes(invocation('GET', '/a/x/c'))*.attribute == ['B']
+    }
+
+    def 'should return null when no rule matches'() {
+        setup:
+            def source = new PathTrieSecurityMetadataSource().rule('/api/*', 'A')
+        expect:
+            source.getAttributes(invocation('GET', '/api/a/b')) == null
+    }
+
+    def 'should return all attributes'() {
+        expect:
+            source.allConfigAttributes*.attribute == ['A', 'B', 'C', 'D', 'E', 'F']
+    }
+
+
+    def invocation(String method, String path) {
+        def request = new MockHttpServletRequest(method, path)
+        request.servletPath = path
+
+        new FilterInvocation(request, new MockHttpServletResponse(), new MockFilterChain())
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.security.access.AccessDeniedException
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException
+import org.springframework.security.authentication.BadCredentialsException
+import org.springframework.security.oauth2.common.exceptions.InvalidRequestException
+import org.springframework.security.oauth2.common.exceptions.InvalidScopeException
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception
+import org.springframework.security.oauth2.common.exceptions.UnauthorizedClientException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class PrerenderedErrorHandlerTest extends Specification {
+
+    def handler = new PrerenderedErrorHandler('api')
+    def request = new MockHttpServletRequest()
+    def response = new MockHttpServletResponse()
+
+
+    def 'should respond with bare challenge when token is missing'() {
+        when:
+            handler.commence(request, response, new AuthenticationCredentialsNotFoundException('No token'))
+        then:
+            response.status == 401
+            response.getHeader('WWW-Authenticate') == 'Bearer realm="api"'
+            response.contentAsString == ''
+    }
+
+    @Unroll
+    def 'should respond with invalid_token when #description'() {
+        when:
+            handler.commence(request, response, exception)
+        then:
+            response.status == 401
+            response.getHeader('WWW-Authenticate') == 'Bearer realm="api", error="invalid_token"'
+            response.contentAsString == '{"error":"invalid_token"}'
+        where:
+            description              | exception
+            'token is invalid'       | new BadCredentialsException('x', new InvalidTokenException('Invalid'))
+            'token is rejected (409)'| new BadCredentialsException('x', new InvalidClientTokenException('Conflict'))
+            'no OAuth2 cause'        | new BadCredentialsException('x')
+    }
+
+    @Unroll
+    def 'should respond with status and error code of #cause.class.simpleName'() {
+        when:
+            handler.commence(request, response, new BadCredentialsException(cause.message, cause))
+        then:
+            response.status == status
+            response.getHeader('WWW-Authenticate') == header
+            response.contentAsString == "{\"error\":\"${error}\"}"
+        where:
+            cause                                      || status | error                     | header
+            new IssuerUnavailableException('Overload') || 503    | 'temporarily_unavailable' | null
+            new DeadlineExceededException('Deadline')  || 503    | 'temporarily_unavailable' | null
+            new InvalidRequestException('Malformed')   || 400    | 'invalid_request'         | 'Bearer realm="api", error="invalid_request"'
+            new InvalidScopeException('Scope')         || 400    | 'invalid_scope'           | 'Bearer realm="api", error="invalid_scope"'
+            new UnauthorizedClientException('Client')  || 401    | 'unauthorized_client'     | 'Bearer realm="api", error="unauthorized_client"'
+            new CustomException('Custom')              || 400    | 'custom_error'            | 'Bearer realm="api", error="custom_error"'
+    }
+
+    def 'should respond with access_denied when access is denied'() {
+        when:
+            handler.handle(request, response, new AccessDeniedException('Denied'))
+        then:
+            response.status == 403
+            response.contentAsString == '{"error":"access_denied"}'
+    }
+
+
+    static class CustomException extends OAuth2Exception {
+
+        CustomException(String msg) {
+            super(msg)
+        }
+
+        String getOAuth2ErrorCode() {
+            'custom_error'
+        }
+    }
+}
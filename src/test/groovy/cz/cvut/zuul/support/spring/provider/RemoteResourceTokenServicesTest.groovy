@@ -24,6 +24,7 @@
 package cz.cvut.zuul.support.spring.provider
 
 import org.codehaus.jackson.map.ObjectMapper
+import org.codehaus.jackson.smile.SmileFactory
 import org.springframework.http.HttpHeaders
 import org.springframework.http.HttpMethod
 import org.springframework.http.HttpStatus
@@ -32,6 +33,10 @@ import org.springframework.web.client.RestTemplate
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.security.MessageDigest
+
+import static cz.cvut.zuul.support.spring.provider.TokenValidationListener.Outcome.*
+import static org.hamcrest.CoreMatchers.containsString
 import static org.springframework.http.MediaType.APPLICATION_JSON
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus
@@ -118,6 +123,154 @@ class RemoteResourceTokenServicesTest extends Specification {
             thrown InvalidClientTokenException
     }
 
+    def 'should negotiate and read TokenInfo in Smile format'() {
+        setup:
+            restTemplate.messageConverters.add(0, new SmileHttpMessageConverter())
+            def body = new ObjectMapper(new SmileFactory()).writeValueAsBytes(tokenInfo())
+            mockServer.expect( header('Accept', containsString('application/x-jackson-smile')) )
+                    .andRespond( withSuccess(body, SmileHttpMessageConverter.APPLICATION_SMILE) )
+        when:
+            def response = service.loadAuthentication('meh')
+        then:
+            response.authorizationRequest.clientId == tokenInfo().clientId
+    }
+
+    @Unroll
+    def 'should notify listener about validation with outcome #outcome'() {
+        setup:
+            def listener = Mock(TokenValidationListener)
+            service.validationListener = listener
+            mockServer.expect(anything()).andRespond(respond)
+        when:
+            try { service.loadAuthentication('meh') } catch (ex) { }
+        then:
+            1 * listener.tokenValidated('meh', _, outcome, cached, _, { it > 0 })
+        where:
+            respond                                                                   || outcome          | cached
+            withSuccess(tokenInfoAsJson(), APPLICATION_JSON)                          || VALID            | false
+            withSuccess(tokenInfoAsJson(), APPLICATION_JSON).headers(headers(Age: 5)) || VALID            | true
+            withSuccess(tokenInfoAsJson(null), APPLICATION_JSON)                      || INVALID_RESPONSE | false
+            withStatus(HttpStatus.CONFLICT)                                           || INVALID_TOKEN    | false
+            withStatus(HttpStatus.INTERNAL_SERVER_ERROR)                              || ERROR            | false
+    }
+
+    def 'should fail fast when request deadline would be exceeded'() {
+        setup:
+            restTemplate.interceptors = [new DeadlineInterceptor(50)]
+            RequestDeadline.set(10)
+        when:
+            service.loadAuthentication('meh')
+        then:
+            thrown DeadlineExceededException
+        cleanup:
+            RequestDeadline.clear()
+    }
+
+    def 'should accept propagated token info without request to authorization server'() {
+        setup:
+            def codec = new SignedTokenInfoCodec(('k' * 32).bytes)
+            service.tokenInfoCodec = codec
+            TokenInfoPropagation.begin(codec.encode(tokenInfo(), 'meh'))
+        when:
+            def auth = service.loadAuthentication('meh')
+        then:
+            auth.authorizationRequest.clientId == 'client123'
+            mockServer.verify()
+        cleanup:
+            TokenInfoPropagation.end()
+    }
+
+    def 'should set outgoing token info to be encoded when requested'() {
+        setup:
+            def codec = new SignedTokenInfoCodec(('k' * 32).bytes)
+            service.tokenInfoCodec = codec
+            TokenInfoPropagation.begin(null)
+            mockServer.expect( anything() )
+                    .andRespond( withSuccess(new ObjectMapper().writeValueAsString(tokenInfo()), APPLICATION_JSON) )
+        when:
+            service.loadAuthentication('meh')
+        then:
+            codec.decode(TokenInfoPropagation.outgoing, 'meh').clientId == 'client123'
+        cleanup:
+            TokenInfoPropagation.end()
+    }
+
+    def 'should validate possibly revoked token on authorization server despite propagated token info'() {
+        setup:
+            def codec = new SignedTokenInfoCodec(('k' * 32).bytes)
+            def feedTemplate = new RestTemplate()
+            def feedServer = MockRestServiceServer.createServer(feedTemplate)
+            feedServer.expect( anything() )
+                    .andRespond( withSuccess("[\"${sha256('meh')}\"]", APPLICATION_JSON) )
+            def feed = new RevocationFeed(feedTemplate, 'http://oauth-server.dev/revoked')
+            feed.sync()
+        and:
+            service.tokenInfoCodec = codec
+            service.revocationFeed = feed
+            TokenInfoPropagation.begin(codec.encode(tokenInfo(), 'meh'))
+        and:
+            mockServer.expect( requestTo("${ENDPOINT_URL}?${TOKEN_PARAM}=meh") )
+                    .andRespond( withStatus(HttpStatus.CONFLICT) )
+        when:
+            service.loadAuthentication('meh')
+        then:
+            thrown InvalidClientTokenException
+            mockServer.verify()
+        cleanup:
+            TokenInfoPropagation.end()
+    }
+
+    def 'should be ready after warm-up with invalid probe token'() {
+        setup:
+            service.probeToken = 'probe'
+            mockServer.expect( requestTo("${ENDPOINT_URL}?${TOKEN_PARAM}=probe") )
+                    .andRespond( withStatus(HttpStatus.CONFLICT) )
+        when:
+            def result = service.warmUp()
+        then:
+            result
+            service.ready
+            mockServer.verify()
+    }
+
+    def 'should not notify listener about validations of probe token'() {
+        setup:
+            def listener = Mock(TokenValidationListener)
+            service.validationListener = listener
+            service.probeToken = 'probe'
+            mockServer.expect( anything() )
+                    .andRespond( withStatus(HttpStatus.CONFLICT) )
+        when:
+            service.warmUp()
+        then:
+            0 * listener._
+    }
+
+    def 'should not be ready until required warm-up is done'() {
+        setup:
+            service.probeToken = 'probe'
+            mockServer.expect( anything() )
+                    .andRespond( withStatus(HttpStatus.CONFLICT) )
+        when:
+            service.requireWarmUp()
+        then:
+            ! service.ready
+        when:
+            service.warmUp()
+        then:
+            service.ready
+    }
+
+    def 'should not be ready when warm-up fails'() {
+        setup:
+            service.probeToken = 'probe'
+            mockServer.expect( anything() )
+                    .andRespond( withStatus(HttpStatus.INTERNAL_SERVER_ERROR) )
+        expect:
+            ! service.warmUp()
+            ! service.ready
+    }
+
 
     def tokenInfo(boolean clientOnly = false, String clientId = 'client123') {
         new TokenInfo(
@@ -144,6 +297,10 @@ class RemoteResourceTokenServicesTest extends Specification {
         service
     }
 
+    def sha256(String value) {
+        MessageDigest.getInstance('SHA-256').digest(value.bytes).encodeHex().toString()
+    }
+
     def headers(kwargs = [:]) {
         def headers = new HttpHeaders()
         kwargs.each { key, val ->
@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import groovy.json.JsonOutput
+import org.springframework.http.HttpStatus
+import org.springframework.test.web.client.MockRestServiceServer
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+import java.security.MessageDigest
+
+import static org.springframework.http.MediaType.APPLICATION_JSON
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess
+
+class RevocationFeedTest extends Specification {
+
+    static FEED_URL = 'http://oauth-server.dev/api/v1/revoked'
+
+    def restTemplate = new RestTemplate()
+    def mockServer = MockRestServiceServer.createServer(restTemplate)
+    def feed = new RevocationFeed(restTemplate, FEED_URL)
+
+
+    def 'should report revoked tokens after sync'() {
+        setup:
+            mockServer.expect( requestTo(FEED_URL) )
+                    .andExpect( header('Cache-Control', 'no-cache') )
+                    .andRespond( withSuccess("[\"${sha256('revoked')}\"]", APPLICATION_JSON) )
+        expect:
+            ! feed.mightBeRevoked('revoked')
+        when:
+            def result = feed.sync()
+        then:
+            result
+            feed.mightBeRevoked('revoked')
+            ! feed.mightBeRevoked('valid')
+    }
+
+    def 'should keep previous filter when sync fails'() {
+        setup:
+            mockServer.expect( requestTo(FEED_URL) )
+                    .andRespond( withSuccess("[\"${sha256('revoked')}\"]", APPLICATION_JSON) )
+            mockServer.expect( requestTo(FEED_URL) )
+                    .andRespond( withStatus(HttpStatus.SERVICE_UNAVAILABLE) )
+        when:
+            feed.sync()
+            def result = feed.sync()
+        then:
+            ! result
+            feed.mightBeRevoked('revoked')
+    }
+
+    def 'should skip malformed entries of the feed'() {
+        setup:
+            def entries = ['abc', 'zz' * 32, null, sha256('revoked')]
+            mockServer.expect( requestTo(FEED_URL) )
+                    .andRespond( withSuccess(JsonOutput.toJson(entries), APPLICATION_JSON) )
+        when:
+            def result = feed.sync()
+        then:
+            result
+            feed.mightBeRevoked('revoked')
+            ! feed.mightBeRevoked('valid')
+    }
+
+
+    def sha256(String value) {
+        MessageDigest.getInstance('SHA-256').digest(value.bytes).encodeHex().toString()
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices
+import spock.lang.Specification
+
+class RoutingResourceTokenServicesTest extends Specification {
+
+    def zuul = Mock(ResourceServerTokenServices)
+    def other = Mock(ResourceServerTokenServices)
+    def services = new RoutingResourceTokenServices()
+
+
+    def 'should dispatch token to issuer by prefix'() {
+        setup:
+            services.addIssuer('zuul.', zuul, 0)
+            services.setDefaultIssuer(other, 0)
+        when:
+            services.loadAuthentication('zuul.meh')
+        then:
+            1 * zuul.loadAuthentication('zuul.meh')
+            0 * other._
+        when:
+            services.loadAuthentication('meh')
+        then:
+            1 * other.loadAuthentication('meh')
+            0 * zuul._
+    }
+
+    def 'should reject token with unknown prefix when there is no default issuer'() {
+        setup:
+            services.addIssuer('zuul.', zuul, 0)
+        when:
+            services.loadAuthentication('meh')
+        then:
+            thrown InvalidTokenException
+    }
+
+    def 'should reject token when issuer has reached its concurrency limit'() {
+        setup:
+            services.addIssuer('zuul.', zuul, 1)
+            services.addIssuer('other.', other, 1)
+        when:
+            services.loadAuthentication('zuul.meh')
+        then:
+            1 * zuul.loadAuthentication('zuul.meh') >> { services.loadAuthentication('zuul.nested') }
+            thrown IssuerUnavailableException
+        and:
+            services.getAvailablePermits('zuul.') == 1
+    }
+
+    def 'should not limit other issuers when one has reached its concurrency limit'() {
+        setup:
+            services.addIssuer('zuul.', zuul, 1)
+            services.addIssuer('other.', other, 1)
+        when:
+            services.loadAuthentication('zuul.meh')
+        then:
+            1 * zuul.loadAuthentication('zuul.meh') >> { services.loadAuthentication('other.meh') }
+            1 * other.loadAuthentication('other.meh')
+            notThrown IssuerUnavailableException
+    }
+}
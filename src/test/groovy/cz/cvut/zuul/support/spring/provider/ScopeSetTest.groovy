@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import spock.lang.Specification
+
+class ScopeSetTest extends Specification {
+
+    def dictionary = new ScopeDictionary(2)
+
+
+    def 'should behave as a set of the encoded values'() {
+        setup:
+            ['read', 'write'].each { dictionary.register(it) }
+        when:
+            def set = dictionary.encode(['read', 'write', 'admin', 'read'])
+        then:
+            set.size() == 3
+            set == ['read', 'write', 'admin'] as Set
+            set.contains('admin')
+            ! set.contains('other')
+    }
+
+    def 'should check membership by ID'() {
+        setup:
+            ['write', 'read'].each { dictionary.register(it) }
+            def set = dictionary.encode(['write'])
+        expect:
+            set.containsId(dictionary.lookup('write'))
+            ! set.containsId(dictionary.lookup('read'))
+            ! set.containsId(-1)
+    }
+
+    def 'should keep values not registered in the dictionary as is'() {
+        setup:
+            dictionary.register('a')
+        when:
+            def set = dictionary.encode(['a', 'c'])
+        then: 'c is not registered by encoding'
+            dictionary.lookup('c') == -1
+            set.containsId(dictionary.lookup('a'))
+            set.contains('c')
+            set == ['a', 'c'] as Set
+    }
+
+    def 'should not register values of a dictionary that is full'() {
+        setup:
+            ['a', 'b'].each { dictionary.register(it) }
+        expect:
+            dictionary.register('c') == -1
+            dictionary.encode(['c']).contains('c')
+    }
+
+    def 'should be serialized as a plain set'() {
+        setup:
+            def set = dictionary.encode(['read'])
+            def bytes = new ByteArrayOutputStream()
+        when:
+            new ObjectOutputStream(bytes).writeObject(set)
+            def result = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject()
+        then:
+            result instanceof HashSet
+            result == ['read'] as Set
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import spock.lang.Specification
+
+class SignedTokenInfoCodecTest extends Specification {
+
+    def codec = new SignedTokenInfoCodec(('k' * 32).bytes)
+
+    def tokenInfo = new TokenInfo(
+            clientId: 'client123',
+            scope: ['urn:zuul:oauth:sample'] as Set,
+            userId: 'tomy',
+            expiresIn: 600 )
+
+
+    def 'should decode encoded token info of the same token'() {
+        setup:
+            def value = codec.encode(tokenInfo, 'token')
+        when:
+            def decoded = codec.decode(value, 'token')
+        then:
+            decoded.clientId == 'client123'
+            decoded.scope == ['urn:zuul:oauth:sample'] as Set
+            decoded.userId == 'tomy'
+            decoded.expiresIn in 29..30
+    }
+
+    def 'should not extend expiration of the token'() {
+        setup:
+            tokenInfo.expiresIn = 10
+        expect:
+            codec.decode(codec.encode(tokenInfo, 'token'), 'token').expiresIn <= 10
+    }
+
+    def 'should count max age from the validation'() {
+        setup:
+            def value = codec.encode(tokenInfo, 'token', System.currentTimeMillis() - 20000)
+        expect:
+            codec.decode(value, 'token').expiresIn in 9..10
+    }
+
+    def 'should bind value to full SHA-256 of the token'() {
+        when:
+            def parts = codec.encode(tokenInfo, 'token').split('\\.')
+        then:
+            parts[1].decodeBase64() == TokenFingerprint.digest('token')
+    }
+
+    def 'should reject token info of another token'() {
+        expect:
+            codec.decode(codec.encode(tokenInfo, 'token'), 'another') == null
+    }
+
+    def 'should reject token info signed with another key'() {
+        setup:
+            def other = new SignedTokenInfoCodec(('x' * 32).bytes)
+        expect:
+            codec.decode(other.encode(tokenInfo, 'token'), 'token') == null
+    }
+
+    def 'should reject tampered token info'() {
+        setup:
+            def parts = codec.encode(tokenInfo, 'token').split('\\.')
+            parts[0] = (parts[0] as long) + 3600
+        expect:
+            codec.decode(parts.join('.'), 'token') == null
+    }
+
+    def 'should reject malformed value: #value'() {
+        expect:
+            codec.decode(value, 'token') == null
+        where:
+            value << ['', 'foo', '1.2.3', '...', '1.x.e30=.!!']
+    }
+}
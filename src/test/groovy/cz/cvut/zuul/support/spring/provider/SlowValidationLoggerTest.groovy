@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import ch.qos.logback.classic.Level
+import ch.qos.logback.classic.Logger
+import ch.qos.logback.classic.spi.ILoggingEvent
+import ch.qos.logback.core.read.ListAppender
+import org.slf4j.LoggerFactory
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+import static cz.cvut.zuul.support.spring.provider.TokenValidationListener.Outcome.*
+
+class SlowValidationLoggerTest extends Specification {
+
+    def logger = LoggerFactory.getLogger(SlowValidationLogger) as Logger
+    def appender = new ListAppender<ILoggingEvent>()
+
+    def listener = new SlowValidationLogger(100)
+
+
+    def setup() {
+        appender.start()
+        logger.addAppender(appender)
+    }
+
+    def cleanup() {
+        logger.detachAppender(appender)
+    }
+
+
+    def 'should not log validation faster than threshold'() {
+        when:
+            listener.tokenValidated('token', null, outcome, false, 42, millis(99))
+        then:
+            appender.list.empty
+        where:
+            outcome << [VALID, INVALID_TOKEN, INVALID_RESPONSE]
+    }
+
+    def 'should log validation that took at least threshold'() {
+        when:
+            listener.tokenValidated('token', null, VALID, true, 42, millis(duration))
+        then:
+            appender.list.size() == 1
+            with (appender.list[0]) {
+                level == Level.WARN
+                formattedMessage == "Validation of token ${TokenFingerprint.of('token')} took ${duration} ms: " +
+                        "outcome=VALID, cached=true, contentLength=42"
+            }
+        where:
+            duration << [100, 5000]
+    }
+
+    def 'should log failed validation regardless of threshold'() {
+        when:
+            listener.tokenValidated('token', null, ERROR, false, -1, millis(1))
+        then:
+            appender.list.size() == 1
+            appender.list[0].formattedMessage.contains('outcome=ERROR')
+    }
+
+    def 'should never log the token itself'() {
+        when:
+            listener.tokenValidated('secret-token', null, ERROR, false, -1, millis(500))
+        then:
+            ! appender.list[0].formattedMessage.contains('secret-token')
+    }
+
+    def 'should use threshold of 200 ms by default'() {
+        setup:
+            listener = new SlowValidationLogger()
+        when:
+            listener.tokenValidated('token', null, VALID, false, 42, millis(199))
+        then:
+            appender.list.empty
+        when:
+            listener.tokenValidated('token', null, VALID, false, 42, millis(200))
+        then:
+            appender.list.size() == 1
+    }
+
+
+    def millis(long value) {
+        TimeUnit.MILLISECONDS.toNanos(value)
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import spock.lang.Specification
+
+class TokenFingerprintTest extends Specification {
+
+    def 'should create fingerprint from first 8 bytes of SHA-256 in lowercase hex'() {
+        expect:
+            TokenFingerprint.of(token) == expected
+        where:
+            token | expected
+            'abc' | 'ba7816bf8f01cfea'
+            ''    | 'e3b0c44298fc1c14'
+    }
+
+    def 'should create fingerprint of 16 hex characters'() {
+        expect:
+            TokenFingerprint.of(token) ==~ /[0-9a-f]{16}/
+        where:
+            token << ['f8c3de3d-1fea-4d7c-a8b0-29f63c4c3454', 'zuul.token', 'token with spaces']
+    }
+
+    def 'should create same fingerprint for same token and distinct for different ones'() {
+        expect:
+            TokenFingerprint.of('token1') == TokenFingerprint.of('token1')
+            TokenFingerprint.of('token1') != TokenFingerprint.of('token2')
+    }
+
+    def 'should return null for null token'() {
+        expect:
+            TokenFingerprint.of(null) == null
+    }
+
+    def 'should return full SHA-256 digest'() {
+        when:
+            def digest = TokenFingerprint.digest('abc')
+        then:
+            digest.length == 32
+            digest.encodeHex().toString() == 'ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad'
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.security.oauth2.provider.OAuth2Authentication
+import spock.lang.Specification
+
+class TokenInfoAuthenticationConverterTest extends Specification {
+
+    def converter = new TokenInfoAuthenticationConverter()
+
+
+    def 'should convert token info with encoded scope'() {
+        setup:
+            converter.scopeDictionary = new ScopeDictionary()
+        when:
+            def auth = converter.convert(new TokenInfo(clientId: 'client123', scope: ['read', 'write'] as Set))
+        then:
+            auth.authorizationRequest.clientId == 'client123'
+            auth.authorizationRequest.scope instanceof ScopeSet
+            auth.authorizationRequest.scope == ['read', 'write'] as Set
+            auth.clientOnly
+    }
+
+    def 'should serialize and deserialize authentication with encoded scope'() {
+        setup:
+            converter.scopeDictionary = new ScopeDictionary()
+            def auth = converter.convert(new TokenInfo(clientId: 'client123', userId: 'tom',
+                    scope: ['read', 'write'] as Set))
+        when:
+            OAuth2Authentication result = roundTrip(auth)
+        then:
+            result.authorizationRequest.clientId == 'client123'
+            result.authorizationRequest.scope == ['read', 'write'] as Set
+            result.userAuthentication.name == 'tom'
+    }
+
+
+    def roundTrip(Object object) {
+        def bytes = new ByteArrayOutputStream()
+        new ObjectOutputStream(bytes).writeObject(object)
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject()
+    }
+}
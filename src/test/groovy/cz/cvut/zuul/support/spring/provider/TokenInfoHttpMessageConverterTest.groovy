@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.codehaus.jackson.map.ObjectMapper
+import org.springframework.http.converter.HttpMessageNotReadableException
+import org.springframework.mock.http.MockHttpInputMessage
+import org.springframework.mock.http.MockHttpOutputMessage
+import org.springframework.security.core.authority.SimpleGrantedAuthority
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class TokenInfoHttpMessageConverterTest extends Specification {
+
+    def converter = new TokenInfoHttpMessageConverter()
+
+
+    @Unroll
+    def 'should read the same TokenInfo as ObjectMapper: #json'() {
+        expect:
+            read(json) == new ObjectMapper().readValue(json, TokenInfo)
+        where:
+            json << [
+                '{"client_id":"client123","scope":["urn:a","urn:b"],"audience":["api"],"expires_in":3600}',
+                '{"client_id":"client123","scope":"urn:a,urn:b","user_id":"tomy","user_email":"tomy@example.org",' +
+                        '"user_authorities":["ROLE_USER"],"client_authorities":"ROLE_CLIENT"}',
+                '{"client_id":"client123","scope":"urn:a urn:b","audience":"api1 api2","client_authorities":"ROLE_A ROLE_B"}',
+                '{"client_id":"client123","unknown":{"nested":[1,2,{"x":null}]},"expires_in":"60"}',
+                '{}'
+            ]
+    }
+
+    def 'should split space-delimited scope and audience'() {
+        when:
+            def tokenInfo = read('{"scope":"urn:a  urn:b\\turn:c","audience":"api1 api2"}')
+        then:
+            tokenInfo.scope == ['urn:a', 'urn:b', 'urn:c'] as Set
+            tokenInfo.audience == ['api1', 'api2'] as Set
+    }
+
+    def 'should ignore null values'() {
+        expect:
+            read('{"client_id":null,"scope":null}') == new TokenInfo()
+    }
+
+    def 'should write TokenInfo that can be read back'() {
+        setup:
+            def tokenInfo = new TokenInfo(
+                    clientId: 'client123',
+                    scope: ['urn:a', 'urn:b'] as Set,
+                    audience: ['api'] as Set,
+                    expiresIn: 60,
+                    userId: 'tomy' )
+            tokenInfo.userAuthorities = [new SimpleGrantedAuthority('ROLE_USER')]
+            def output = new MockHttpOutputMessage()
+        when:
+            converter.write(tokenInfo, null, output)
+        then:
+            read(output.bodyAsString) == tokenInfo
+            new ObjectMapper().readValue(output.bodyAsBytes, TokenInfo) == tokenInfo
+    }
+
+    def 'should support only TokenInfo'() {
+        expect:
+            converter.canRead(TokenInfo, null)
+            ! converter.canRead(Map, null)
+    }
+
+    def 'should throw HttpMessageNotReadableException for malformed input'() {
+        when:
+            read('[1, 2]')
+        then:
+            thrown HttpMessageNotReadableException
+    }
+
+
+    def read(String json) {
+        converter.read(TokenInfo, new MockHttpInputMessage(json.getBytes('UTF-8')))
+    }
+}
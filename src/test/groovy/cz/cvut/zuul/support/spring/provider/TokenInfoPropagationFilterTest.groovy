@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import spock.lang.Specification
+
+import javax.servlet.FilterChain
+
+class TokenInfoPropagationFilterTest extends Specification {
+
+    def filter = new TokenInfoPropagationFilter()
+    def request = new MockHttpServletRequest()
+    def response = new MockHttpServletResponse()
+
+
+    def 'should begin propagation with the incoming header and end it after the request'() {
+        setup:
+            request.addHeader(TokenInfoPropagation.HEADER_NAME, 'signed')
+            def incoming = null
+        when:
+            filter.doFilter(request, response, { req, res -> incoming = TokenInfoPropagation.incoming } as FilterChain)
+        then:
+            incoming == 'signed'
+            ! TokenInfoPropagation.active
+    }
+
+    def 'should restore values of the request on its redispatch'() {
+        setup:
+            def outgoing = null
+        when: 'the first pass, the token is validated on another thread'
+            filter.doFilter(request, response, { req, res ->
+                def values = TokenInfoPropagation.current()
+                Thread.start {
+                    TokenInfoPropagation.bind(values)
+                    TokenInfoPropagation.outgoing = 'encoded'
+                }.join()
+            } as FilterChain)
+        and: 'the async dispatch'
+            filter.doFilter(request, response, { req, res -> outgoing = TokenInfoPropagation.outgoing } as FilterChain)
+        then:
+            outgoing == 'encoded'
+            ! TokenInfoPropagation.active
+    }
+}
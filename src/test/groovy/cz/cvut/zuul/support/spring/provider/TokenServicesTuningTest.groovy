@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.http.HttpHeaders
+import org.springframework.test.web.client.MockRestServiceServer
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+import static org.springframework.http.MediaType.APPLICATION_JSON
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess
+
+class TokenServicesTuningTest extends Specification {
+
+    static TOKEN_INFO = '{"client_id":"client123","scope":["urn:a"],"expires_in":3600}'
+
+    def restTemplate = new RestTemplate()
+    def services = new RemoteResourceTokenServicesBuilder()
+            .tokenInfoEndpointUri( 'http://oaas.dev/api/v1/tokeninfo' )
+            .restTemplate( restTemplate )
+            .build()
+    def tuning = services.tuning
+    def mockServer = MockRestServiceServer.createServer(restTemplate)
+
+
+    def 'should keep cached responses when cache is resized'() {
+        setup:
+            expectTokenInfoRequest()
+        when:
+            services.loadAuthentication('meh')
+            tuning.resizeCache(16)
+            services.loadAuthentication('meh')
+        then:
+            mockServer.verify()
+    }
+
+    def 'should keep cached responses when cache is replaced by a weighed one'() {
+        setup:
+            expectTokenInfoRequest()
+        when:
+            services.loadAuthentication('meh')
+            tuning.resizeCacheBytes(100000)
+            services.loadAuthentication('meh')
+        then:
+            mockServer.verify()
+    }
+
+    def 'should keep cached responses when weighed cache is resized in place'() {
+        setup:
+            tuning.resizeCacheBytes(100000)
+            expectTokenInfoRequest()
+        when:
+            services.loadAuthentication('meh')
+            tuning.resizeCacheBytes(200000)
+            services.loadAuthentication('meh')
+        then:
+            mockServer.verify()
+    }
+
+    def 'should bypass cache when switched'() {
+        setup:
+            tuning.cacheBypassed = true
+            2.times { expectTokenInfoRequest() }
+        when:
+            2.times { services.loadAuthentication('meh') }
+        then:
+            mockServer.verify()
+    }
+
+    def 'should use changed endpoint URL'() {
+        setup:
+            tuning.tokenInfoEndpointUrl = 'http://oaas2.dev/tokeninfo'
+            mockServer.expect( requestTo('http://oaas2.dev/tokeninfo?token=meh') )
+                    .andRespond( withSuccess(TOKEN_INFO, APPLICATION_JSON) )
+        when:
+            services.loadAuthentication('meh')
+        then:
+            mockServer.verify()
+    }
+
+    def 'should fail when connection pool is not configured'() {
+        when:
+            tuning.setMaxConnections(10)
+        then:
+            thrown IllegalStateException
+    }
+
+
+    def expectTokenInfoRequest() {
+        def headers = new HttpHeaders(date: System.currentTimeMillis(), cacheControl: 'max-age=60')
+
+        mockServer.expect( requestTo('http://oaas.dev/api/v1/tokeninfo?token=meh') )
+                .andRespond( withSuccess(TOKEN_INFO, APPLICATION_JSON).headers(headers) )
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import spock.lang.Specification
+
+import static cz.cvut.zuul.support.spring.provider.TokenValidationListener.Outcome.*
+
+class ValidationAuditLogTest extends Specification {
+
+    def records = [].asSynchronized()
+    def sink = { batch -> records.addAll(batch) } as AuditSink
+
+
+    def 'should write fingerprinted records to the sink'() {
+        setup:
+            def log = new ValidationAuditLog(sink, 16, 4)
+            log.afterPropertiesSet()
+        when:
+            log.tokenValidated('token1', new TokenInfo(clientId: 'client123', userId: 'tomy'), VALID, true, 42, 5000)
+            log.tokenValidated('token2', null, ERROR, false, -1, 1000)
+            log.destroy()
+        then:
+            records.size() == 2
+            with (records[0]) {
+                tokenFingerprint == TokenFingerprint.of('token1')
+                clientId == 'client123'
+                userId == 'tomy'
+                outcome == VALID
+                cached
+                latency == 5
+            }
+            records[1].clientId == null
+            records[1].outcome == ERROR
+    }
+
+    def 'should drop records when the buffer is full'() {
+        setup:
+            def blocked = true
+            def blockingSink = { batch -> while (blocked) { sleep(1) } } as AuditSink
+            def log = new ValidationAuditLog(blockingSink, 4, 1)
+            log.afterPropertiesSet()
+        when:
+            20.times { log.tokenValidated('token', null, VALID, false, -1, 0) }
+        then:
+            log.droppedCount > 0
+        cleanup:
+            blocked = false
+            log.destroy()
+    }
+
+    def 'should not write records until started'() {
+        setup:
+            def log = new ValidationAuditLog(sink, 16, 4)
+        when:
+            log.tokenValidated('token1', null, VALID, false, -1, 0)
+            sleep(50)
+        then:
+            records.empty
+        when:
+            log.afterPropertiesSet()
+            log.destroy()
+        then:
+            records.size() == 1
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import org.springframework.http.HttpStatus
+import org.springframework.mock.web.MockFilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.test.web.client.MockRestServiceServer
+import org.springframework.web.client.RestTemplate
+import spock.lang.Specification
+
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.anything
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus
+
+class WarmUpGateFilterTest extends Specification {
+
+    def restTemplate = new RestTemplate()
+    def mockServer = MockRestServiceServer.createServer(restTemplate)
+    def tokenServices = new RemoteResourceTokenServices(
+            restTemplate: restTemplate, tokenInfoEndpointUrl: 'http://oauth-server.dev/tokeninfo', probeToken: 'probe')
+    def filter = new WarmUpGateFilter(tokenServices)
+
+
+    def setup() {
+        tokenServices.afterPropertiesSet()
+    }
+
+
+    def 'should reject requests until token services are ready'() {
+        setup:
+            mockServer.expect( anything() )
+                    .andRespond( withStatus(HttpStatus.INTERNAL_SERVER_ERROR) )
+            tokenServices.warmUp()
+        when:
+            def response = doFilter()
+        then:
+            response.status == 503
+            response.getHeader('Retry-After') == '5'
+            response.contentAsString == '{"error":"temporarily_unavailable"}'
+    }
+
+    def 'should pass requests when token services are ready'() {
+        setup:
+            mockServer.expect( anything() )
+                    .andRespond( withStatus(HttpStatus.CONFLICT) )
+            tokenServices.warmUp()
+        expect:
+            doFilter().status == 200
+    }
+
+
+    def doFilter() {
+        def response = new MockHttpServletResponse()
+        filter.doFilter(new MockHttpServletRequest(), response, new MockFilterChain())
+        response
+    }
+}
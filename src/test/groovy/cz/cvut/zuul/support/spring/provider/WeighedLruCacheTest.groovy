@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.provider
+
+import cz.jirutka.spring.http.client.cache.internal.CacheEntry
+import org.springframework.mock.http.client.MockClientHttpResponse
+import spock.lang.Specification
+
+import static org.springframework.http.HttpStatus.OK
+import static org.springframework.http.MediaType.APPLICATION_JSON
+
+class WeighedLruCacheTest extends Specification {
+
+    def 'should evict least recently used entries over capacity in bytes'() {
+        setup:
+            def cache = new WeighedLruCache('test', 100)
+        when:
+            cache.put('a', new byte[40])
+            cache.put('b', new byte[40])
+            cache.get('a')
+            cache.put('c', new byte[40])
+        then:
+            cache.get('a') != null
+            cache.get('b') == null
+            cache.get('c') != null
+            cache.usedBytes == 80
+    }
+
+    def 'should not store entry bigger than capacity'() {
+        setup:
+            def cache = new WeighedLruCache('test', 100)
+        when:
+            cache.put('a', new byte[101])
+        then:
+            cache.get('a') == null
+            cache.usedBytes == 0
+    }
+
+    def 'should weigh cached responses by their body'() {
+        setup:
+            def cache = new WeighedLruCache('test', 3000)
+        when:
+            cache.put('a', cacheEntry(1000))
+            cache.put('b', cacheEntry(1000))
+            cache.put('c', cacheEntry(1000))
+        then:
+            cache.get('a') == null
+            cache.get('b') != null
+            cache.get('c') != null
+            cache.usedBytes > 2000
+            cache.usedBytes <= 3000
+    }
+
+    def 'should cache value that cannot be serialized'() {
+        setup:
+            def cache = new WeighedLruCache('test', 2000)
+        when:
+            cache.put('a', new Object())
+        then:
+            cache.get('a') != null
+            cache.usedBytes == HttpCacheWeigher.DEFAULT_WEIGHT
+    }
+
+    def 'should weigh values with given weigher'() {
+        setup:
+            def weigher = Mock(WeighedLruCache.Weigher)
+            def cache = new WeighedLruCache('test', 100, weigher)
+        when:
+            cache.put('a', 'value')
+        then:
+            1 * weigher.weigh('value') >> 42
+            cache.usedBytes == 42
+    }
+
+    def 'should grow capacity when evicted entries are requested again'() {
+        setup:
+            def cache = new WeighedLruCache('test', 100, 50, 1000)
+        when:
+            WeighedLruCache.TUNING_PERIOD.times { i ->
+                def key = "key${i % 5}"
+                if (cache.get(key) == null) {
+                    cache.put(key, new byte[40])
+                }
+            }
+        then:
+            cache.maxBytes > 100
+            cache.maxBytes <= 1000
+    }
+
+    def 'should shrink capacity when there are no ghost hits'() {
+        setup:
+            def cache = new WeighedLruCache('test', 100, 50, 1000)
+            cache.put('a', new byte[10])
+        when:
+            WeighedLruCache.TUNING_PERIOD.times { cache.get('a') }
+        then:
+            cache.maxBytes == 95
+    }
+
+    def 'should evict entries when resized below used bytes'() {
+        setup:
+            def cache = new WeighedLruCache('test', 100)
+            cache.put('a', new byte[40])
+            cache.put('b', new byte[40])
+        when:
+            cache.maxBytes = 50
+        then:
+            cache.get('a') == null
+            cache.get('b') != null
+            cache.usedBytes == 40
+    }
+
+    def 'should keep resized capacity within tuning limits'() {
+        setup:
+            def cache = new WeighedLruCache('test', 100, 50, 1000)
+        when:
+            cache.maxBytes = 5000
+        then:
+            cache.maxBytes == 1000
+    }
+
+
+    def cacheEntry(int bodySize) {
+        def response = new MockClientHttpResponse(new byte[bodySize], OK)
+        response.headers.contentType = APPLICATION_JSON
+        new CacheEntry(response, new Date(), new Date(System.currentTimeMillis() + 60000))
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.tools
+
+import cz.cvut.zuul.support.spring.provider.PathTrieSecurityMetadataSource
+import org.springframework.http.HttpMethod
+import org.springframework.mock.web.MockFilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.security.access.SecurityConfig
+import org.springframework.security.web.FilterInvocation
+import org.springframework.security.web.access.intercept.DefaultFilterInvocationSecurityMetadataSource
+import org.springframework.security.web.access.intercept.FilterInvocationSecurityMetadataSource
+import org.springframework.security.web.util.AntPathRequestMatcher
+
+import static java.lang.Integer.getInteger
+
+/**
+ * Micro-benchmark of lookup of the access rule for a request: the
+ * {@link PathTrieSecurityMetadataSource} against the linear
+ * {@link DefaultFilterInvocationSecurityMetadataSource} with
+ * {@link AntPathRequestMatcher}s, i.e. what the <tt>antMatchers</tt> of
+ * {@code UrlAuthorizationConfigurer} build.
+ *
+ * <p>For each number of rules, there are a GET rule with a variable and a
+ * rule with <tt>**</tt> for each resource, and a catch-all rule at the
+ * end. The requested resources have Zipf popularity. Each source is warmed
+ * up and then measured in rounds; the median time per lookup is reported.</p>
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) -Dbench.rules=10,100,1000 \
+ *     cz.cvut.zuul.support.spring.tools.AccessRulesBenchmark
+ * </pre>
+ *
+ * <p>Properties (with defaults): <tt>bench.rules</tt> (10,100,1000),
+ * <tt>bench.rounds</tt> (20), <tt>bench.lookups</tt> (100000) per round
+ * and <tt>bench.zipf</tt> (1.0).</p>
+ */
+class AccessRulesBenchmark {
+
+    static void main(String[] args) {
+        def rulesCounts = System.getProperty('bench.rules', '10,100,1000').split(',').collect { it.trim() as int }
+        def rounds = getInteger('bench.rounds', 20)
+        def lookups = getInteger('bench.lookups', 100000)
+        def exponent = Double.parseDouble(System.getProperty('bench.zipf', '1.0'))
+
+        printf('%6s | %12s | %12s%n', 'rules', 'trie', 'linear')
+
+        for (rulesCount in rulesCounts) {
+            def resources = Math.max(1, (rulesCount - 1).intdiv(2))
+            def zipf = new ZipfGenerator(resources, exponent)
+            def invocations = (0..<4096).collect {
+                invocation(it % 4 == 0 ? 'POST' : 'GET', "/api/v1/res${zipf.next()}/${it}")
+            } as FilterInvocation[]
+
+            def trie = new PathTrieSecurityMetadataSource()
+            def linear = new LinkedHashMap()
+
+            (0..<resources).each { k ->
+                trie.rule(HttpMethod.GET, "/api/v1/res${k}/{id}", "SCOPE_res${k}.read")
+                trie.rule("/api/v1/res${k}/**", "SCOPE_res${k}.write")
+                linear[new AntPathRequestMatcher("/api/v1/res${k}/{id}", 'GET')] = SecurityConfig.createList("SCOPE_res${k}.read")
+                linear[new AntPathRequestMatcher("/api/v1/res${k}/**")] = SecurityConfig.createList("SCOPE_res${k}.write")
+            }
+            trie.rule('/**', 'IS_AUTHENTICATED_FULLY')
+            linear[new AntPathRequestMatcher('/**')] = SecurityConfig.createList('IS_AUTHENTICATED_FULLY')
+
+            printf('%6d | %9.0f ns | %9.0f ns%n', resources * 2 + 1,
+                    measure(trie, invocations, rounds, lookups),
+                    measure(new DefaultFilterInvocationSecurityMetadataSource(linear), invocations, rounds, lookups))
+        }
+    }
+
+    /**
+     * @return The median time of a lookup in nanoseconds.
+     */
+    static double measure(FilterInvocationSecurityMetadataSource source, FilterInvocation[] invocations,
+                          int rounds, int lookups) {
+        def times = []
+        long blackhole = 0
+
+        // the first rounds are the warm-up
+        for (int round = 0; round < rounds * 2; round++) {
+            long start = System.nanoTime()
+            for (int i = 0; i < lookups; i++) {
+                blackhole += source.getAttributes(invocations[i % invocations.length]).size()
+            }
+            if (round >= rounds) {
+                times << (System.nanoTime() - start) / lookups
+            }
+        }
+        if (blackhole == 0) {
+            println 'No rule matched'
+        }
+        times.sort()[rounds.intdiv(2)]
+    }
+
+    static FilterInvocation invocation(String method, String path) {
+        def request = new MockHttpServletRequest(method, path)
+        request.servletPath = path
+
+        new FilterInvocation(request, new MockHttpServletResponse(), new MockFilterChain())
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.tools
+
+import cz.cvut.zuul.support.spring.provider.OAuth2ResourceServerConfigurer
+import cz.cvut.zuul.support.spring.provider.RemoteResourceTokenServices
+import cz.cvut.zuul.support.spring.provider.TokenValidationListener
+import org.springframework.context.annotation.Configuration
+import org.springframework.mock.web.MockFilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.mock.web.MockServletContext
+import org.springframework.security.config.annotation.web.builders.HttpSecurity
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext
+
+import javax.servlet.DispatcherType
+import javax.servlet.Filter
+import java.util.concurrent.atomic.AtomicLong
+
+import static java.lang.Integer.getInteger
+
+/**
+ * Measures the cost of ASYNC dispatches of requests to asynchronous
+ * endpoints, with and without {@link OAuth2ResourceServerConfigurer#reuseAuthentication(boolean)
+ * reuseAuthentication}, in the filter chain of {@link LoadHarnessConfig}.
+ *
+ * <p>Each request passes the chain once as a REQUEST and then the given
+ * number of times as an ASYNC dispatch: one for a <tt>DeferredResult</tt>
+ * or <tt>Callable</tt>, more for a streaming endpoint that is resumed for
+ * each chunk. A few tokens that are all cached are used, so the stub's
+ * latency is excluded. The median time per request and the number of
+ * token validations per request are reported.</p>
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) -Dbench.dispatches=1,10 \
+ *     cz.cvut.zuul.support.spring.tools.AsyncDispatchBenchmark
+ * </pre>
+ *
+ * <p>Properties (with defaults): <tt>bench.dispatches</tt> (1,10),
+ * <tt>bench.rounds</tt> (20), <tt>bench.requests</tt> (10000) per round,
+ * and properties of {@link LoadHarnessConfig}.</p>
+ */
+class AsyncDispatchBenchmark {
+
+    static void main(String[] args) {
+        def dispatchesCounts = System.getProperty('bench.dispatches', '1,10').split(',').collect { it.trim() as int }
+        def rounds = getInteger('bench.rounds', 20)
+        def requests = getInteger('bench.requests', 10000)
+        def tokens = (0..<16).collect { UUID.randomUUID().toString() }
+
+        printf('%-8s | %10s | %12s | %s%n', 'reuse', 'dispatches', 'time', 'validations')
+
+        for (reuse in [false, true]) {
+            System.setProperty('bench.reuse', reuse as String)
+
+            def context = new AnnotationConfigWebApplicationContext()
+            context.servletContext = new MockServletContext()
+            context.register(Config)
+            context.refresh()
+
+            def filterChain = context.getBean('springSecurityFilterChain', Filter)
+            def validations = new AtomicLong()
+            context.getBean(RemoteResourceTokenServices).validationListener = { Object[] ignored ->
+                validations.incrementAndGet()
+            } as TokenValidationListener
+
+            for (dispatches in dispatchesCounts) {
+                def times = []
+
+                // the first rounds are the warm-up
+                for (int round = 0; round < rounds * 2; round++) {
+                    validations.set(0)
+                    long start = System.nanoTime()
+                    for (int i = 0; i < requests; i++) {
+                        doRequest(filterChain, tokens[i % tokens.size()], dispatches)
+                    }
+                    if (round >= rounds) {
+                        times << (System.nanoTime() - start) / requests / 1000
+                    }
+                }
+                printf('%-8s | %10d | %7.2f µs | %.2f per request%n', reuse, dispatches,
+                        times.sort()[rounds.intdiv(2)], validations.get() / requests)
+            }
+            context.close()
+        }
+    }
+
+    static void doRequest(Filter filterChain, String token, int dispatches) {
+        def request = new MockHttpServletRequest('GET', '/api/v1/sample')
+        request.addHeader('Authorization', "Bearer ${token}")
+        def response = new MockHttpServletResponse()
+
+        // the handler starts async processing, e.g. returns a DeferredResult
+        filterChain.doFilter(request, response, new MockFilterChain())
+
+        // the result (or each chunk) is then processed on an ASYNC dispatch
+        request.dispatcherType = DispatcherType.ASYNC
+        dispatches.times {
+            filterChain.doFilter(request, response, new MockFilterChain())
+        }
+    }
+
+
+    @Configuration
+    @EnableWebSecurity
+    static class Config extends LoadHarnessConfig {
+
+        protected void configure(HttpSecurity http) {
+            http.getConfigurer(OAuth2ResourceServerConfigurer)
+                    .reuseAuthentication(Boolean.getBoolean('bench.reuse'))
+        }
+    }
+}
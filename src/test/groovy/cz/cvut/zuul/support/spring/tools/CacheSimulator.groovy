@@ -0,0 +1,233 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.tools
+
+import cz.cvut.zuul.support.spring.provider.WeighedLruCache
+import cz.jirutka.spring.http.client.cache.SoftReferenceSynchronizedLruCache
+import groovy.transform.Immutable
+import org.springframework.cache.Cache
+
+import java.util.concurrent.ThreadLocalRandom
+
+import static java.lang.Integer.getInteger
+
+/**
+ * Offline simulator of the token validation cache. It replays a trace of
+ * validations through the cache implementations used by
+ * {@link cz.cvut.zuul.support.spring.provider.RemoteResourceTokenServicesBuilder.CachingBuilder CachingBuilder}
+ * and reports hit ratio, rate of calls to the authorization server and
+ * memory of each configuration.
+ *
+ * <p>The trace is a text file with one validation per line and
+ * whitespace-separated columns: timestamp in milliseconds, token
+ * fingerprint and <tt>expires_in</tt> in seconds. Files written by
+ * {@link cz.cvut.zuul.support.spring.provider.RollingFileAuditSink} are
+ * accepted as well; they don't contain <tt>expires_in</tt>, so
+ * <tt>sim.expiresIn</tt> is used, and only valid tokens are cached. When
+ * no trace is given, a synthetic one with Zipf popularity of tokens is
+ * generated.</p>
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) -Dsim.trace=audit.log \
+ *     -Dsim.configs=lru:64,lru:1024,bytes:262144,bytes:262144:4194304 -Dsim.maxAges=60,300 \
+ *     cz.cvut.zuul.support.spring.tools.CacheSimulator
+ * </pre>
+ *
+ * <p>A configuration is <tt>lru:&lt;capacity&gt;</tt> (the default
+ * cache with the given {@code capacity}), <tt>bytes:&lt;maxBytes&gt;</tt>
+ * or <tt>bytes:&lt;maxBytes&gt;:&lt;maxBytesLimit&gt;</tt> ({@link WeighedLruCache}).
+ * Each one is simulated with every <tt>max-age</tt> (in seconds) of the
+ * TokenInfo responses from <tt>sim.maxAges</tt>; a cached response is used
+ * while it's younger than both its max-age and <tt>expires_in</tt>.</p>
+ *
+ * <p>Other properties (with defaults): <tt>sim.responseSize</tt> (400 B),
+ * <tt>sim.expiresIn</tt> (3600 s), and of the synthetic trace
+ * <tt>sim.tokens</tt> (10000), <tt>sim.zipf</tt> (1.0), <tt>sim.rate</tt>
+ * (500 req/s) and <tt>sim.duration</tt> (600 s).</p>
+ */
+class CacheSimulator {
+
+    static void main(String[] args) {
+        def tracePath = System.getProperty('sim.trace')
+        def responseSize = getInteger('sim.responseSize', 400)
+        def configs = System.getProperty('sim.configs', 'lru:64,lru:1024,lru:16384').split(',')*.trim()
+        def maxAges = System.getProperty('sim.maxAges', '60,300').split(',').collect { it.trim() as int }
+
+        def trace = tracePath ? readTrace(new File(tracePath), getInteger('sim.expiresIn', 3600))
+                              : generateTrace()
+        if (trace.empty) {
+            println 'The trace is empty'
+            return
+        }
+        def span = (trace.last().timestamp - trace.first().timestamp) / 1000d
+
+        printf('%,d validations of %,d tokens in %,.0f s%n%n', trace.size(),
+                trace*.fingerprint.toSet().size(), span)
+        printf('%-28s %8s %10s %12s %12s%n', 'configuration', 'max-age', 'hit ratio', 'calls/s', 'memory')
+
+        for (config in configs) {
+            for (maxAge in maxAges) {
+                def result = new Simulation(createCache(config), maxAge, responseSize).replay(trace)
+
+                printf('%-28s %8d %9.2f%% %12.2f %,10d kB%n', config, maxAge,
+                        result.hits * 100d / trace.size(), span > 0 ? result.calls / span : 0d,
+                        result.memory >> 10)
+            }
+        }
+    }
+
+
+    static Cache createCache(String config) {
+        def parts = config.split(':')
+        switch (parts[0]) {
+            case 'lru':
+                return new SoftReferenceSynchronizedLruCache('simulation', parts[1] as int)
+            case 'bytes':
+                long maxBytes = parts[1] as long
+                long limit = parts.length > 2 ? parts[2] as long : maxBytes
+                return limit > maxBytes
+                        ? new WeighedLruCache('simulation', maxBytes, Math.max(maxBytes.intdiv(4), 1), limit)
+                        : new WeighedLruCache('simulation', maxBytes)
+            default:
+                throw new IllegalArgumentException("Unknown configuration: ${config}")
+        }
+    }
+
+    static List<Validation> readTrace(File file, int defaultExpiresIn) {
+        def trace = []
+        file.eachLine('UTF-8') { line ->
+            def columns = line.trim().split(/\s+/)
+            if (columns.length < 2 || !columns[0].isLong()) {
+                return
+            }
+            if (columns.length >= 7) {
+                // audit log: timestamp, fingerprint, client, user, outcome, cached, latency
+                trace << new Validation(columns[0] as long, columns[1], defaultExpiresIn, columns[4] == 'VALID')
+            } else {
+                int expiresIn = columns.length > 2 && columns[2].isInteger() ? columns[2] as int : defaultExpiresIn
+                trace << new Validation(columns[0] as long, columns[1], expiresIn, true)
+            }
+        }
+        trace.sort { it.timestamp }
+    }
+
+    static List<Validation> generateTrace() {
+        def tokensCount = getInteger('sim.tokens', 10000)
+        def rate = getInteger('sim.rate', 500)
+        def count = rate * getInteger('sim.duration', 600)
+        def maxExpiresIn = getInteger('sim.expiresIn', 3600)
+
+        def zipf = new ZipfGenerator(tokensCount, Double.parseDouble(System.getProperty('sim.zipf', '1.0')))
+        def random = ThreadLocalRandom.current()
+        def expiresAt = new long[tokensCount]
+
+        (0..<count).collect { i ->
+            long timestamp = (i * 1000L).intdiv(rate)
+            int token = zipf.next()
+
+            // a token is replaced by a new one after it expires
+            if (expiresAt[token] <= timestamp) {
+                expiresAt[token] = timestamp + random.nextInt(maxExpiresIn.intdiv(2), maxExpiresIn + 1) * 1000L
+            }
+            new Validation(timestamp, "${token}-${expiresAt[token]}".toString(), (expiresAt[token] - timestamp).intdiv(1000) as int, true)
+        }
+    }
+
+
+    @Immutable
+    static class Validation {
+        long timestamp
+        String fingerprint
+        int expiresIn
+        boolean valid
+    }
+
+    static class Result {
+        long hits
+        long calls
+        long memory
+    }
+
+    static class Simulation {
+
+        final Cache cache
+        final int maxAge
+        final int responseSize
+        final Set<String> stored = new HashSet<>()
+
+        Simulation(Cache cache, int maxAge, int responseSize) {
+            this.cache = cache
+            this.maxAge = maxAge
+            this.responseSize = responseSize
+        }
+
+        Result replay(List<Validation> trace) {
+            def result = new Result()
+
+            for (validation in trace) {
+                def cached = cache.get(validation.fingerprint)?.get() as Entry
+
+                if (cached != null && validation.timestamp < cached.freshUntil) {
+                    result.hits++
+                    continue
+                }
+                result.calls++
+
+                if (validation.valid) {
+                    long ttl = Math.min(maxAge, validation.expiresIn) * 1000L
+                    cache.put(validation.fingerprint, new Entry(validation.timestamp + ttl, new byte[responseSize]))
+                    stored << validation.fingerprint
+                }
+            }
+            result.memory = cache instanceof WeighedLruCache
+                    ? cache.usedBytes
+                    : residentCount() * Entry.weigh(responseSize)
+            result
+        }
+
+        private int residentCount() {
+            stored.count { cache.get(it) != null } as int
+        }
+    }
+
+    static class Entry implements Serializable {
+
+        final long freshUntil
+        final byte[] body
+
+        Entry(long freshUntil, byte[] body) {
+            this.freshUntil = freshUntil
+            this.body = body
+        }
+
+        /**
+         * @return Size of the serialized entry, as weighed by {@link WeighedLruCache}.
+         */
+        static long weigh(int responseSize) {
+            def bytes = new ByteArrayOutputStream()
+            bytes.withObjectOutputStream { it.writeObject(new Entry(0, new byte[responseSize])) }
+            bytes.size()
+        }
+    }
+}
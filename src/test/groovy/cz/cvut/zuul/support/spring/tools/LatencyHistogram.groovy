@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.tools
+
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Lock-free latency histogram with buckets of 10 µs up to 1 ms and of 1 ms
+ * up to 10 s; longer latencies fall into the last bucket.
+ */
+class LatencyHistogram {
+
+    private static final int FINE_BUCKETS = 100
+    private static final int COARSE_BUCKETS = 10000
+
+    private final AtomicLongArray buckets = new AtomicLongArray(FINE_BUCKETS + COARSE_BUCKETS)
+
+
+    void record(long nanos) {
+        long micros = nanos.intdiv(1000)
+        int index = micros < 1000 ? micros.intdiv(10) : FINE_BUCKETS + Math.min(micros.intdiv(1000), COARSE_BUCKETS - 1)
+        buckets.incrementAndGet(index)
+    }
+
+    long count() {
+        (0..<buckets.length()).sum { buckets.get(it) } as long
+    }
+
+    /**
+     * @return Latency in milliseconds at the given percentile (0-100).
+     */
+    double percentile(double percentile) {
+        def total = count()
+        if (total == 0) {
+            return 0
+        }
+        long threshold = Math.ceil(total * percentile / 100)
+        long seen = 0
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i)
+            if (seen >= threshold) {
+                return i < FINE_BUCKETS ? (i + 1) * 0.01 : (i - FINE_BUCKETS + 1)
+            }
+        }
+        COARSE_BUCKETS
+    }
+
+    /**
+     * @return A snapshot of this histogram and resets it.
+     */
+    LatencyHistogram drain() {
+        def snapshot = new LatencyHistogram()
+        for (int i = 0; i < buckets.length(); i++) {
+            snapshot.buckets.set(i, buckets.getAndSet(i, 0))
+        }
+        snapshot
+    }
+}
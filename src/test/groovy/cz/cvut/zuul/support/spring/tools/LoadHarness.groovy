@@ -0,0 +1,205 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.tools
+
+import org.springframework.mock.web.MockFilterChain
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import org.springframework.mock.web.MockServletContext
+import org.springframework.security.web.FilterChainProxy
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext
+
+import javax.servlet.Filter
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+
+import static java.lang.Integer.getInteger
+
+/**
+ * Load and soak test harness. It drives the real security filter chain
+ * (see {@link LoadHarnessConfig}) at a fixed arrival rate with access
+ * tokens of Zipf popularity, against the in-process {@link StubAuthorizationServer},
+ * and periodically reports throughput, latency percentiles, amplification
+ * of calls to the authorization server and heap usage.
+ *
+ * <p>Latency is measured from the intended start of each request, so
+ * queueing in an overloaded system is not hidden. It's not a test, run it
+ * with the test classpath, e.g.:</p>
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) -Dload.rate=2000 -Dload.duration=3600 \
+ *     cz.cvut.zuul.support.spring.tools.LoadHarness
+ * </pre>
+ *
+ * <p>With <tt>-Dload.compareLean=true</tt>, it instead measures the
+ * overhead of the filter chain itself in the full and the lean mode of
+ * {@link cz.cvut.zuul.support.spring.provider.OAuth2ResourceServerConfigurerAdapter
+ * OAuth2ResourceServerConfigurerAdapter}: requests with a few tokens that
+ * are all cached are sent sequentially, so the stub's latency is excluded,
+ * and the median time per request is reported for each mode.</p>
+ *
+ * <p>Properties (with defaults): <tt>load.rate</tt> (1000 req/s),
+ * <tt>load.duration</tt> (60 s), <tt>load.reportInterval</tt> (10 s),
+ * <tt>load.tokens</tt> (10000), <tt>load.zipf</tt> (1.0),
+ * <tt>load.threads</tt> (64), and properties of the stub and token
+ * services read by {@link LoadHarnessConfig}.</p>
+ */
+class LoadHarness {
+
+    static void main(String[] args) {
+        if (Boolean.getBoolean('load.compareLean')) {
+            compareLean(getInteger('load.rounds', 20), getInteger('load.requests', 10000))
+            return
+        }
+        def rate = getInteger('load.rate', 1000)
+        def duration = TimeUnit.SECONDS.toNanos(getInteger('load.duration', 60))
+        def reportInterval = TimeUnit.SECONDS.toNanos(getInteger('load.reportInterval', 10))
+        def tokensCount = getInteger('load.tokens', 10000)
+        def zipf = new ZipfGenerator(tokensCount, Double.parseDouble(System.getProperty('load.zipf', '1.0')))
+
+        def context = createContext()
+        def filterChain = context.getBean('springSecurityFilterChain', Filter)
+        def stub = context.getBean(StubAuthorizationServer)
+        def tokens = (0..<tokensCount).collect { UUID.randomUUID().toString() }
+
+        def workers = Executors.newFixedThreadPool(getInteger('load.threads', 64))
+        def histogram = new LatencyHistogram()
+        def statuses = new ConcurrentHashMap<Integer, AtomicLong>()
+        def report = new Report(stub: stub, histogram: histogram, statuses: statuses)
+
+        long interval = TimeUnit.SECONDS.toNanos(1).intdiv(rate)
+        long start = System.nanoTime()
+        long next = start
+        long lastReport = start
+
+        while (next - start < duration) {
+            long now = System.nanoTime()
+            if (next > now) {
+                LockSupport.parkNanos(next - now)
+            }
+            final long intended = next
+            workers.execute {
+                def response = doFilter(filterChain, tokens[zipf.next()])
+
+                histogram.record(System.nanoTime() - intended)
+                def counter = statuses.get(response.status)
+                if (counter == null) {
+                    statuses.putIfAbsent(response.status, new AtomicLong())
+                    counter = statuses.get(response.status)
+                }
+                counter.incrementAndGet()
+            }
+            next += interval
+
+            if (now - lastReport >= reportInterval) {
+                report.print(now - lastReport)
+                lastReport = now
+            }
+        }
+        workers.shutdown()
+        workers.awaitTermination(1, TimeUnit.MINUTES)
+        report.print(System.nanoTime() - lastReport)
+
+        context.close()
+    }
+
+    /**
+     * Measures time of the filter chain per request in the full and the
+     * lean mode, with the cache of validated tokens warmed up.
+     */
+    static void compareLean(int rounds, int requests) {
+        def tokens = (0..<16).collect { UUID.randomUUID().toString() }
+
+        for (lean in [false, true]) {
+            System.setProperty('load.lean', lean as String)
+            def context = createContext()
+            def filterChain = context.getBean('springSecurityFilterChain', FilterChainProxy)
+            def times = []
+
+            // the first rounds are the warm-up
+            for (int round = 0; round < rounds * 2; round++) {
+                long start = System.nanoTime()
+                for (int i = 0; i < requests; i++) {
+                    doFilter(filterChain, tokens[i % tokens.size()])
+                }
+                if (round >= rounds) {
+                    times << (System.nanoTime() - start) / requests / 1000
+                }
+            }
+            printf('%-4s mode | %2d filters | %7.2f µs/request%n', lean ? 'lean' : 'full',
+                    filterChain.filterChains[0].filters.size(), times.sort()[rounds.intdiv(2)])
+
+            context.close()
+        }
+    }
+
+    static AnnotationConfigWebApplicationContext createContext() {
+        def context = new AnnotationConfigWebApplicationContext()
+        context.servletContext = new MockServletContext()
+        context.register(LoadHarnessConfig)
+        context.refresh()
+        context
+    }
+
+    static MockHttpServletResponse doFilter(Filter filterChain, String token) {
+        def request = new MockHttpServletRequest('GET', '/api/v1/sample')
+        request.addHeader('Authorization', "Bearer ${token}")
+        def response = new MockHttpServletResponse()
+
+        filterChain.doFilter(request, response, new MockFilterChain())
+        response
+    }
+
+
+    static class Report {
+
+        StubAuthorizationServer stub
+        LatencyHistogram histogram
+        Map<Integer, AtomicLong> statuses
+        long lastCalls = 0
+
+        void print(long elapsed) {
+            def snapshot = histogram.drain()
+            def requests = snapshot.count()
+            def calls = stub.tokenInfoCalls.get()
+            def heap = ManagementFactory.memoryMXBean.heapMemoryUsage
+            def gcCount = ManagementFactory.garbageCollectorMXBeans.sum { it.collectionCount } ?: 0
+            def gcTime = ManagementFactory.garbageCollectorMXBeans.sum { it.collectionTime } ?: 0
+
+            printf('%,8.0f req/s | p50 %7.2f ms | p90 %7.2f ms | p99 %7.2f ms | p99.9 %7.2f ms | ' +
+                    'amplification %5.3f | heap %,6d MB | gc %d (%d ms) | statuses %s%n',
+                    requests / (elapsed / 1e9), snapshot.percentile(50), snapshot.percentile(90),
+                    snapshot.percentile(99), snapshot.percentile(99.9),
+                    requests > 0 ? (calls - lastCalls) / requests : 0d,
+                    heap.used >> 20, gcCount, gcTime, statuses.collectEntries { k, v -> [k, v.get()] })
+
+            lastCalls = calls
+        }
+    }
+}
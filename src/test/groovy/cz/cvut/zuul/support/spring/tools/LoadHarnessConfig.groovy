@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.tools
+
+import cz.cvut.zuul.support.spring.provider.OAuth2ResourceServerConfigurerAdapter
+import cz.cvut.zuul.support.spring.provider.RemoteResourceTokenServicesBuilder
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Configuration
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices
+
+import static java.lang.Double.parseDouble
+import static java.lang.Integer.getInteger
+
+/**
+ * Configuration of the filter chain driven by {@link LoadHarness}. It uses
+ * the lean mode of {@link OAuth2ResourceServerConfigurerAdapter} and
+ * {@link cz.cvut.zuul.support.spring.provider.RemoteResourceTokenServices}
+ * connected to {@link StubAuthorizationServer}.
+ */
+@Configuration
+@EnableWebSecurity
+class LoadHarnessConfig extends OAuth2ResourceServerConfigurerAdapter {
+
+    LoadHarnessConfig() {
+        super(false, Boolean.parseBoolean(System.getProperty('load.lean', 'true')))
+    }
+
+
+    @Bean
+    StubAuthorizationServer authorizationServer() {
+        new StubAuthorizationServer(
+                latencyMedian: parseDouble(System.getProperty('load.latency', '5')),
+                latencySigma: parseDouble(System.getProperty('load.latencySigma', '0.5')),
+                errorRate: parseDouble(System.getProperty('load.errorRate', '0')),
+                invalidRate: parseDouble(System.getProperty('load.invalidRate', '0')),
+                ageRate: parseDouble(System.getProperty('load.ageRate', '0')),
+                maxAge: getInteger('load.maxAge', 60)
+        )
+    }
+
+    @Bean
+    ResourceServerTokenServices tokenServices() {
+        new RemoteResourceTokenServicesBuilder()
+                .tokenInfoEndpointUri( 'http://oaas.stub/api/v1/tokeninfo' )
+                .requestFactory( authorizationServer() )
+                .secured()
+                    .clientId( 'load' )
+                    .clientSecret( 'secret' )
+                    .accessTokenUri( 'http://oaas.stub/oauth/token' )
+                .and()
+                .httpCache()
+                    .capacity( getInteger('load.cacheCapacity', 64) )
+                .build()
+    }
+}
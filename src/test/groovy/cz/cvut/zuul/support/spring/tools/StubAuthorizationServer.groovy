@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.tools
+
+import org.springframework.http.HttpMethod
+import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
+import org.springframework.http.client.ClientHttpRequest
+import org.springframework.http.client.ClientHttpRequestFactory
+import org.springframework.http.client.ClientHttpResponse
+import org.springframework.mock.http.client.MockClientHttpRequest
+import org.springframework.mock.http.client.MockClientHttpResponse
+
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * In-process stub of an authorization server with the TokenInfo and token
+ * endpoints. It's plugged into RestTemplates as a {@link ClientHttpRequestFactory},
+ * so no sockets are involved. The latency of each response is drawn from
+ * a log-normal distribution.
+ *
+ * <p>Tokens starting with <tt>invalid</tt> are always rejected with 409,
+ * other tokens are rejected with probability of {@link #invalidRate}.</p>
+ */
+class StubAuthorizationServer implements ClientHttpRequestFactory {
+
+    /** Median latency in milliseconds. */
+    double latencyMedian = 5
+
+    /** Sigma of the log-normal latency distribution. */
+    double latencySigma = 0.5
+
+    /** Probability of a 500 response. */
+    double errorRate = 0
+
+    /** Probability of a 409 (invalid token) response. */
+    double invalidRate = 0
+
+    /** Probability that a response has an Age header, i.e. comes from a proxy cache. */
+    double ageRate = 0
+
+    /** Value of expires_in in TokenInfo responses. */
+    int expiresIn = 3600
+
+    /** Value of max-age in Cache-Control of TokenInfo responses. */
+    int maxAge = 60
+
+    final AtomicLong tokenInfoCalls = new AtomicLong()
+    final AtomicLong tokenCalls = new AtomicLong()
+
+
+    ClientHttpRequest createRequest(URI uri, HttpMethod method) {
+        new MockClientHttpRequest(method, uri) {
+            @Override
+            ClientHttpResponse execute() {
+                sleep(sampleLatency())
+                respond(uri)
+            }
+        }
+    }
+
+
+    private respond(URI uri) {
+        def random = ThreadLocalRandom.current()
+
+        if (uri.path.endsWith('/token')) {
+            tokenCalls.incrementAndGet()
+            return json('{"access_token":"stub","token_type":"bearer","expires_in":3600}')
+        }
+        tokenInfoCalls.incrementAndGet()
+
+        if (random.nextDouble() < errorRate) {
+            return new MockClientHttpResponse(new byte[0], HttpStatus.INTERNAL_SERVER_ERROR)
+        }
+        def token = uri.query?.find(/token=([^&]*)/) { all, value -> value }
+
+        if (token == null || token.startsWith('invalid') || random.nextDouble() < invalidRate) {
+            return new MockClientHttpResponse(new byte[0], HttpStatus.CONFLICT)
+        }
+        def response = json("""{"client_id":"client-${(token.hashCode() & 0x7fffffff) % 100}","scope":["urn:zuul:oauth:sample.read"],
+                "audience":["sample"],"expires_in":${expiresIn},"user_id":"user-${token}"}""")
+
+        response.headers.setCacheControl("max-age=${maxAge}")
+        if (random.nextDouble() < ageRate) {
+            response.headers.set('Age', String.valueOf(random.nextInt(maxAge)))
+        }
+        response
+    }
+
+    private json(String body) {
+        def response = new MockClientHttpResponse(body.getBytes('UTF-8'), HttpStatus.OK)
+        response.headers.setContentType(MediaType.APPLICATION_JSON)
+        response
+    }
+
+    private long sampleLatency() {
+        def gaussian = ThreadLocalRandom.current().nextGaussian()
+        Math.round(latencyMedian * Math.exp(latencySigma * gaussian))
+    }
+}
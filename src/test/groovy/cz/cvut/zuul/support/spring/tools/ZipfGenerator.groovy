@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2013-2014 Czech Technical University in Prague.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package cz.cvut.zuul.support.spring.tools
+
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * Generates ranks <tt>0..n-1</tt> with Zipf distribution, i.e. rank
+ * <i>k</i> is drawn with probability proportional to <tt>1 / (k+1)^s</tt>.
+ */
+class ZipfGenerator {
+
+    private final double[] cdf
+
+
+    ZipfGenerator(int n, double exponent) {
+        cdf = new double[n]
+        double sum = 0
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, exponent)
+            cdf[k] = sum
+        }
+        for (int k = 0; k < n; k++) {
+            cdf[k] /= sum
+        }
+    }
+
+
+    int next() {
+        def index = Arrays.binarySearch(cdf, ThreadLocalRandom.current().nextDouble())
+        index >= 0 ? index : Math.min(-index - 1, cdf.length - 1)
+    }
+}